@@ -1,5 +1,6 @@
 package au.org.intersect.samifier;
 
+import au.org.intersect.samifier.parser.SequenceValidation;
 import au.org.intersect.samifier.runner.ProteinGeneratorRunner;
 import java.io.File;
 import java.io.FileWriter;
@@ -27,7 +28,7 @@ public class ProteinGenerator implements Version {
         OptionBuilder.hasArg();
         OptionBuilder.withArgName("Translation Table File");
         OptionBuilder
-                .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI.");
+                .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI, or the number of a built-in NCBI genetic code.");
         Option translationTableOpt = OptionBuilder.create("t");
         OptionBuilder.withArgName("Split Interval");
         OptionBuilder.hasArg();
@@ -38,6 +39,13 @@ public class ProteinGenerator implements Version {
         OptionBuilder.withArgName("Glimmer File");
         OptionBuilder.withDescription("Glimmer txt file. Can't be used with the -i option.");
         Option glimmerFileOpt = OptionBuilder.create("g");
+        OptionBuilder.withArgName("Minimum ORF Length");
+        OptionBuilder.hasArg();
+        OptionBuilder.withType(Number.class);
+        OptionBuilder.withDescription("Generate every open reading frame (stop codon to stop codon, in all six frames) of at least this many codons. Can't be used with the -i or -g options.");
+        Option orfLengthOpt = OptionBuilder.create("r");
+        OptionBuilder.withDescription("Trim open reading frames to their first start codon, dropping those without one. Only used with the -r option.");
+        Option orfStartOpt = OptionBuilder.create("s");
         OptionBuilder.hasArg();
         OptionBuilder.withDescription("Genome file in FASTA format");
         OptionBuilder.withArgName("Genome File");
@@ -63,15 +71,22 @@ public class ProteinGenerator implements Version {
         OptionBuilder.withArgName("Accession File");
         OptionBuilder.isRequired(false);
         Option accessionFileOpt = OptionBuilder.create("q");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("How to handle characters of the genome that are not nucleotides: ignore, warn (default) or strict.");
+        OptionBuilder.withArgName("Sequence Validation");
+        Option validationOpt = OptionBuilder.create("n");
         Options options = new Options();
         options.addOption(translationTableOpt);
         options.addOption(splitIntervalOpt);
         options.addOption(glimmerFileOpt);
+        options.addOption(orfLengthOpt);
+        options.addOption(orfStartOpt);
         options.addOption(genomeFileOpt);
         options.addOption(databaseNameOpt);
         options.addOption(outputFileOpt);
         options.addOption(gffFileOpt);
         options.addOption(accessionFileOpt);
+        options.addOption(validationOpt);
 
         CommandLineParser parser = new GnuParser();
         try {
@@ -80,6 +95,7 @@ public class ProteinGenerator implements Version {
             File genomeFile = new File(line.getOptionValue("f"));
             String glimmerFilePath = line.getOptionValue("g");
             String interval = line.getOptionValue("i");
+            String orfLength = line.getOptionValue("r");
             String databaseName = line.getOptionValue("d");
             File outfile = new File(line.getOptionValue("o"));
             Writer outputWriter = new FileWriter(outfile);
@@ -100,10 +116,11 @@ public class ProteinGenerator implements Version {
                 accessionWriter = new FileWriter(accessionFile);
             }
 
-            if ((glimmerFilePath == null && interval == null)
-                    || (glimmerFilePath != null && interval != null)) {
+            int modes = (glimmerFilePath != null ? 1 : 0) + (interval != null ? 1 : 0)
+                    + (orfLength != null ? 1 : 0);
+            if (modes != 1) {
                 outputWriter.close();
-                throw new ParseException("Only one of -i or -g permitted");
+                throw new ParseException("Only one of -i, -g or -r permitted");
             }
             if (interval != null) {
                 int intInterval = Integer.parseInt(interval);
@@ -112,13 +129,37 @@ public class ProteinGenerator implements Version {
                     throw new ParseException("Interval must be greater than  1");
                 }
             }
+            if (line.hasOption("s") && orfLength == null) {
+                outputWriter.close();
+                throw new ParseException("-s can only be used with -r");
+            }
+            int minimumOrfLength = 0;
+            if (orfLength != null) {
+                try {
+                    minimumOrfLength = Integer.parseInt(orfLength);
+                } catch (NumberFormatException e) {
+                    outputWriter.close();
+                    throw new ParseException("Minimum ORF length must be a number");
+                }
+                if (minimumOrfLength < 1) {
+                    outputWriter.close();
+                    throw new ParseException("Minimum ORF length must be at least 1");
+                }
+            }
             ProteinGeneratorRunner runner = new ProteinGeneratorRunner(
                     glimmerFilePath, genomeFile, interval, databaseName,
                     outputWriter, translationTableFile, gffWriter,
                     accessionWriter);
+            if (line.hasOption("n")) {
+                runner.setSequenceValidation(SequenceValidation.parse(line.getOptionValue("n")));
+            }
+            if (orfLength != null) {
+                runner.setOpenReadingFrames(minimumOrfLength, line.hasOption("s"));
+            }
             runner.run();
         } catch (ParseException pe) {
             System.err.println("Version = " + VERSION);
+            System.err.println(pe.getMessage());
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp("protein_generator", options, true);
         } catch (Exception e) {
@@ -71,7 +71,7 @@ public class ResultsAnalyser implements Version {
         if (DebuggingFlag.get_sbi_debug_flag() == 1) {
             OptionBuilder.hasArg();
             OptionBuilder
-                    .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI.");
+                    .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI, or the number of a built-in NCBI genetic code.");
             OptionBuilder.withArgName("Translation Table File");
             OptionBuilder.isRequired();
             Option translationTableOpt = OptionBuilder.create("t");
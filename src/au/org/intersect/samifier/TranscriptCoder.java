@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -18,6 +19,8 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
 
+import au.org.intersect.samifier.parser.SequenceValidation;
+import au.org.intersect.samifier.parser.TranscriptomeFilter;
 import au.org.intersect.samifier.runner.TranscriptCoderRunner;
 
 public class TranscriptCoder {
@@ -36,7 +39,7 @@ public class TranscriptCoder {
         Option targetFileOpt = OptionBuilder.create("q");
         OptionBuilder.hasArg();
         OptionBuilder.withArgName("Translation Table File");
-        OptionBuilder.withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI.");
+        OptionBuilder.withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI, or the number of a built-in NCBI genetic code.");
         OptionBuilder.isRequired();
         Option translationTableOpt = OptionBuilder.create("t");
         OptionBuilder.hasArg();
@@ -73,6 +76,43 @@ public class TranscriptCoder {
         OptionBuilder.withArgName("Accession File");
         OptionBuilder.isRequired(false);
         Option accessionFileOpt = OptionBuilder.create("m");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("How to handle characters of the genome that are not nucleotides: ignore, warn (default) or strict.");
+        OptionBuilder.withArgName("Sequence Validation");
+        OptionBuilder.isRequired(false);
+        Option validationOpt = OptionBuilder.create("n");
+
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("Directory to keep the snapshot of the subject/reference transcript file in. Defaults to the directory of the transcript file.");
+        OptionBuilder.withArgName("Snapshot Directory");
+        OptionBuilder.isRequired(false);
+        Option snapshotDirOpt = OptionBuilder.create("r");
+
+        // Optional Reference Filters
+        OptionBuilder.withDescription("Only load protein coding transcripts of the subject/reference transcript file, by their transcript_biotype or transcript_type attribute.");
+        Option codingOnlyOpt = OptionBuilder.create("k");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("Comma separated biotypes of the subject/reference transcripts to load, by their transcript_biotype or transcript_type attribute.");
+        OptionBuilder.withArgName("Biotypes");
+        OptionBuilder.isRequired(false);
+        Option biotypesOpt = OptionBuilder.create("b");
+
+        // Optional Target Filters
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("Drop query/target transcripts with an FPKM attribute below this value.");
+        OptionBuilder.withArgName("Minimum FPKM");
+        OptionBuilder.isRequired(false);
+        Option minFpkmOpt = OptionBuilder.create("f");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("Drop query/target transcripts with a TPM attribute below this value.");
+        OptionBuilder.withArgName("Minimum TPM");
+        OptionBuilder.isRequired(false);
+        Option minTpmOpt = OptionBuilder.create("e");
+        OptionBuilder.hasArg();
+        OptionBuilder.withDescription("Drop query/target transcripts with a cov (read coverage) attribute below this value.");
+        OptionBuilder.withArgName("Minimum Coverage");
+        OptionBuilder.isRequired(false);
+        Option minCoverageOpt = OptionBuilder.create("v");
 
         Options options = new Options();
         options.addOption(translationTableOpt);
@@ -84,6 +124,13 @@ public class TranscriptCoder {
         options.addOption(referenceFileOpt);
         options.addOption(targetFileOpt);
         options.addOption(logFileOpt);
+        options.addOption(validationOpt);
+        options.addOption(snapshotDirOpt);
+        options.addOption(codingOnlyOpt);
+        options.addOption(biotypesOpt);
+        options.addOption(minFpkmOpt);
+        options.addOption(minTpmOpt);
+        options.addOption(minCoverageOpt);
 
         CommandLineParser parser = new GnuParser();
         try {
@@ -111,6 +158,27 @@ public class TranscriptCoder {
                     translationTableFile, chromosomeDir,
                     databaseName, databaseWriter, 
                     gffWriter, accessionWriter);
+            if (line.hasOption("n")) {
+                runner.setSequenceValidation(SequenceValidation.parse(line.getOptionValue("n")));
+            }
+            if (line.hasOption("r")) {
+                runner.setSnapshotDirectory(new File(line.getOptionValue("r")));
+            }
+            if (line.hasOption("k") || line.hasOption("b")) {
+                TranscriptomeFilter referenceFilter = new TranscriptomeFilter();
+                referenceFilter.setCodingOnly(line.hasOption("k"));
+                if (line.hasOption("b")) {
+                    referenceFilter.setBiotypes(Arrays.asList(line.getOptionValue("b").split(",")));
+                }
+                runner.setReferenceFilter(referenceFilter);
+            }
+            if (line.hasOption("f") || line.hasOption("e") || line.hasOption("v")) {
+                TranscriptomeFilter targetFilter = new TranscriptomeFilter();
+                targetFilter.setMinimumFpkm(parseThreshold(line, "f"));
+                targetFilter.setMinimumTpm(parseThreshold(line, "e"));
+                targetFilter.setMinimumCoverage(parseThreshold(line, "v"));
+                runner.setTargetFilter(targetFilter);
+            }
 
             runner.run();
 
@@ -129,6 +197,21 @@ public class TranscriptCoder {
         }
     }
 
+    private static double parseThreshold(CommandLine line, String option) throws ParseException {
+        if (!line.hasOption(option)) {
+            return 0;
+        }
+        try {
+            double threshold = Double.parseDouble(line.getOptionValue(option));
+            if (threshold >= 0) {
+                return threshold;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new ParseException("-" + option + " must be a number of at least 0");
+    }
+
     private static Writer setWriterFile(String fileName) throws IOException {
         Writer writer = null;
         if (fileName != null) {
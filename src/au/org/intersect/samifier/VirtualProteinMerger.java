@@ -32,7 +32,7 @@ public class VirtualProteinMerger implements Version {
         OptionBuilder.hasArg();
         OptionBuilder.withArgName("Translation Table File");
         OptionBuilder
-                .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI.");
+                .withDescription("File containing a mapping of codons to amino acids, in the format used by NCBI, or the number of a built-in NCBI genetic code.");
         Option translationTableOpt = OptionBuilder.create("t");
 
         OptionBuilder.hasArg();
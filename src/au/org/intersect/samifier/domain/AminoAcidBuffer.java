@@ -0,0 +1,17 @@
+package au.org.intersect.samifier.domain;
+
+/**
+ * Growable buffer that proteins are translated into before being written,
+ * shared by the outputters of one generator so each protein does not
+ * allocate its own. Not thread safe.
+ */
+final class AminoAcidBuffer {
+    private char[] chars = new char[ProteinOutputter.FASTA_LINE_LENGTH * 64];
+
+    char[] ensureCapacity(int capacity) {
+        if (chars.length < capacity) {
+            chars = new char[Math.max(capacity, chars.length * 2)];
+        }
+        return chars;
+    }
+}
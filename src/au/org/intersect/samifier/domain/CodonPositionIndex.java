@@ -0,0 +1,117 @@
+package au.org.intersect.samifier.domain;
+
+import java.util.BitSet;
+
+/**
+ * Positions of the start and stop codons of a chromosome, for both strands
+ * and all three frames, found in a single pass over the sequence. Searching
+ * for the nearest start or stop codon from a position is then a bit scan
+ * instead of a walk over the genome codon by codon.
+ *
+ * Positions are 0-based and follow GenomeNucleotides.codonAt: on the
+ * forward strand the codon at p is read from p, p + 1 and p + 2, on the
+ * reverse strand from the complements of p, p - 1 and p - 2. Codons are
+ * matched case sensitively, as by CodonTranslationTable.isStopCodon and
+ * isStartCodon.
+ */
+public final class CodonPositionIndex {
+    public static final int NOT_FOUND = -1;
+
+    private static final int FORWARD = 0;
+    private static final int REVERSE = 1;
+
+    private final int length;
+    // Indexed by strand and frame (position % 3); bit k is position 3k + frame
+    private final BitSet[][] stops = new BitSet[2][GenomeConstant.BASES_PER_CODON];
+    private final BitSet[][] starts = new BitSet[2][GenomeConstant.BASES_PER_CODON];
+
+    public CodonPositionIndex(CharSequence genome, CodonTranslationTable translationTable) {
+        this.length = genome.length();
+        for (int strand = FORWARD; strand <= REVERSE; strand++) {
+            for (int frame = 0; frame < GenomeConstant.BASES_PER_CODON; frame++) {
+                stops[strand][frame] = new BitSet();
+                starts[strand][frame] = new BitSet();
+            }
+        }
+        // Forward codon at p and reverse codon at p + 2 cover the same bases
+        char base1 = length > 0 ? genome.charAt(0) : 0;
+        char base2 = length > 1 ? genome.charAt(1) : 0;
+        for (int p = 0; p + 2 < length; p++) {
+            char base3 = genome.charAt(p + 2);
+            int codon = p / GenomeConstant.BASES_PER_CODON;
+            int frame = p % GenomeConstant.BASES_PER_CODON;
+            if (translationTable.isStopCodon(base1, base2, base3)) {
+                stops[FORWARD][frame].set(codon);
+            } else if (translationTable.isStartCodon(base1, base2, base3)) {
+                starts[FORWARD][frame].set(codon);
+            }
+            char reverse1 = NucleotideKernels.complement(base3);
+            char reverse2 = NucleotideKernels.complement(base2);
+            char reverse3 = NucleotideKernels.complement(base1);
+            int reversePosition = p + 2;
+            codon = reversePosition / GenomeConstant.BASES_PER_CODON;
+            frame = reversePosition % GenomeConstant.BASES_PER_CODON;
+            if (translationTable.isStopCodon(reverse1, reverse2, reverse3)) {
+                stops[REVERSE][frame].set(codon);
+            } else if (translationTable.isStartCodon(reverse1, reverse2, reverse3)) {
+                starts[REVERSE][frame].set(codon);
+            }
+            base1 = base2;
+            base2 = base3;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isStop(int position, int direction) {
+        return isSet(stops, position, direction);
+    }
+
+    public boolean isStart(int position, int direction) {
+        return isSet(starts, position, direction);
+    }
+
+    /**
+     * Nearest position p = position + 3k (k >= 1, or k <= -1 when
+     * searchDirection is negative) holding a stop codon read in the given
+     * direction, or NOT_FOUND.
+     */
+    public int findNextStop(int position, int direction, int searchDirection) {
+        return findNext(stops, position, direction, searchDirection);
+    }
+
+    /**
+     * Nearest start codon from position, as with findNextStop.
+     */
+    public int findNextStart(int position, int direction, int searchDirection) {
+        return findNext(starts, position, direction, searchDirection);
+    }
+
+    private boolean isSet(BitSet[][] codons, int position, int direction) {
+        if (position < 0 || position >= length) {
+            return false;
+        }
+        BitSet bits = codons[strand(direction)][position % GenomeConstant.BASES_PER_CODON];
+        return bits.get(position / GenomeConstant.BASES_PER_CODON);
+    }
+
+    private int findNext(BitSet[][] codons, int position, int direction, int searchDirection) {
+        if (position < 0 || position >= length) {
+            return NOT_FOUND;
+        }
+        int frame = position % GenomeConstant.BASES_PER_CODON;
+        int codon = position / GenomeConstant.BASES_PER_CODON;
+        BitSet bits = codons[strand(direction)][frame];
+        int found = searchDirection > 0 ? bits.nextSetBit(codon + 1) : bits.previousSetBit(codon - 1);
+        if (found < 0) {
+            return NOT_FOUND;
+        }
+        return found * GenomeConstant.BASES_PER_CODON + frame;
+    }
+
+    private static int strand(int direction) {
+        return direction > 0 ? FORWARD : REVERSE;
+    }
+}
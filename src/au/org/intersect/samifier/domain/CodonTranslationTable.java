@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -15,13 +16,37 @@ public class CodonTranslationTable {
     public static final String UNKNOWN_AMINO_ACID = "X";
     public static final String START_AMINO_ACID = "M";
 
+    // Symbols of the dense codon table: A, C, G, T, one of the ambiguity
+    // codes that translate to X, and anything else
+    private static final int SYMBOLS = 6;
+    private static final int AMBIGUOUS_SYMBOL = 4;
+    private static final int OTHER_SYMBOL = 5;
+    private static final String AMBIGUOUS_BASES = "WSMNKRY";
+    private static final byte[] SYMBOL_OF = new byte[128];
+    static {
+        Arrays.fill(SYMBOL_OF, (byte) OTHER_SYMBOL);
+        SYMBOL_OF['A'] = 0;
+        SYMBOL_OF['C'] = 1;
+        SYMBOL_OF['G'] = 2;
+        SYMBOL_OF['T'] = 3;
+        for (char c : AMBIGUOUS_BASES.toCharArray()) {
+            SYMBOL_OF[c] = AMBIGUOUS_SYMBOL;
+        }
+    }
+    public static final char NO_AMINO_ACID = 0;
+
     private Map<String, String> codonMap;
     private Map<String, String> startCodonMap;
     private Set<String> stopCodons;
+    // Amino acid of every triplet of symbols, or NO_AMINO_ACID
+    private char[] denseTable;
 
+    /**
+     * Parses a table file. Use TranslationTableRegistry.getTable to parse
+     * each file only once.
+     */
     public static CodonTranslationTable parseTableFile(File f)
             throws IOException, TranslationTableParsingException {
-        CodonTranslationTable codonTable = new CodonTranslationTable();
         BufferedReader reader = null;
         reader = new BufferedReader(new FileReader(f));
 
@@ -51,6 +76,21 @@ public class CodonTranslationTable {
                     "Supplied translation table is not in the expected format");
         }
 
+        return fromRows(aminoAcids, startAminoAcids, base1, base2, base3);
+    }
+
+    /**
+     * Builds a table from the AAs, Starts and Base1-3 rows of an NCBI
+     * genetic code.
+     */
+    static CodonTranslationTable fromRows(String aminoAcids, String startAminoAcids,
+            String base1, String base2, String base3) throws TranslationTableParsingException {
+        if (startAminoAcids.length() != aminoAcids.length() || base1.length() != aminoAcids.length()
+                || base2.length() != aminoAcids.length() || base3.length() != aminoAcids.length()) {
+            throw new TranslationTableParsingException(
+                    "Supplied translation table is not in the expected format");
+        }
+        CodonTranslationTable codonTable = new CodonTranslationTable();
         codonTable.codonMap = new HashMap<String, String>();
         codonTable.startCodonMap = new HashMap<String, String>();
         codonTable.stopCodons = new HashSet<String>();
@@ -71,10 +111,59 @@ public class CodonTranslationTable {
                 codonTable.startCodonMap.put(codon, startAminoAcid);
             }
         }
+        codonTable.compile();
 
         return codonTable;
     }
 
+    /**
+     * Builds the dense table from the codon maps. Stop codons translate to
+     * '*', and any triplet with one of W, S, M, N, K, R or Y that is not
+     * otherwise mapped translates to X, as in toAminoAcid. Tables with
+     * codons outside of A, C, G and T keep using the maps.
+     */
+    private void compile() {
+        for (String codon : codonMap.keySet()) {
+            if (!StringUtils.containsOnly(codon, "ACGT") || codon.length() != GenomeConstant.BASES_PER_CODON) {
+                denseTable = null;
+                return;
+            }
+        }
+        for (String codon : stopCodons) {
+            if (!StringUtils.containsOnly(codon, "ACGT") || codon.length() != GenomeConstant.BASES_PER_CODON) {
+                denseTable = null;
+                return;
+            }
+        }
+        String bases = "ACGT" + AMBIGUOUS_BASES.charAt(0);
+        denseTable = new char[SYMBOLS * SYMBOLS * SYMBOLS];
+        for (int s1 = 0; s1 < SYMBOLS; s1++) {
+            for (int s2 = 0; s2 < SYMBOLS; s2++) {
+                for (int s3 = 0; s3 < SYMBOLS; s3++) {
+                    int index = (s1 * SYMBOLS + s2) * SYMBOLS + s3;
+                    if (s1 == AMBIGUOUS_SYMBOL || s2 == AMBIGUOUS_SYMBOL || s3 == AMBIGUOUS_SYMBOL) {
+                        denseTable[index] = UNKNOWN_AMINO_ACID.charAt(0);
+                    } else if (s1 != OTHER_SYMBOL && s2 != OTHER_SYMBOL && s3 != OTHER_SYMBOL) {
+                        String codon = "" + bases.charAt(s1) + bases.charAt(s2) + bases.charAt(s3);
+                        if (stopCodons.contains(codon)) {
+                            denseTable[index] = '*';
+                        } else if (codonMap.containsKey(codon)) {
+                            denseTable[index] = codonMap.get(codon).charAt(0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int symbolOf(char base) {
+        if (base >= SYMBOL_OF.length) {
+            base = Character.toUpperCase(base);
+            return base < SYMBOL_OF.length ? SYMBOL_OF[base] : OTHER_SYMBOL;
+        }
+        return SYMBOL_OF[NucleotideKernels.toUpperCase(base)];
+    }
+
     public String[] getCodons() {
         return codonMap.keySet().toArray(new String[0]);
     }
@@ -90,7 +179,7 @@ public class CodonTranslationTable {
     public String toAminoAcid(String codon) {
         if (codonMap.containsKey(codon)) {
             return codonMap.get(codon);
-        } else if (codon.matches(".*[WSMNKRY]+.*")) {
+        } else if (StringUtils.containsAny(codon, AMBIGUOUS_BASES)) {
             // TODO: log this event
             return UNKNOWN_AMINO_ACID;
         }
@@ -101,44 +190,77 @@ public class CodonTranslationTable {
         return startCodonMap.get(codon);
     }
 
-    public String proteinToAminoAcidSequence(String nucleotideSequence)
+    /**
+     * Translates a nucleotide sequence, read three bases at a time. Any
+     * CharSequence can be given, e.g. a SequenceView over the genome.
+     */
+    public String proteinToAminoAcidSequence(CharSequence nucleotideSequence)
             throws UnknownCodonException {
         int length = nucleotideSequence.length();
         if (length < GenomeConstant.BASES_PER_CODON) {
         	throw new UnknownCodonException(nucleotideSequence
                     + " is not a known codon");
         }
-        StringBuilder aminoAcidSequence = new StringBuilder();
-        String codon;
+        char[] aminoAcids = new char[length / GenomeConstant.BASES_PER_CODON];
+        translate(nucleotideSequence, 0, length, aminoAcids, 0);
+        return new String(aminoAcids);
+    }
+
+    /**
+     * Translates the bases [from, to) of source into out, starting at
+     * outOffset, and returns the number of amino acids written. Codons are
+     * looked up in the dense table, so nothing is allocated per codon.
+     * Throws UnknownCodonException for a codon that is not in the table or
+     * when the bases do not end on a whole codon.
+     */
+    public int translate(CharSequence source, int from, int to, char[] out, int outOffset)
+            throws UnknownCodonException {
         int codonCount = 0;
-        int startIndex = 0;
-
-        for (int i = startIndex; i < length; i += GenomeConstant.BASES_PER_CODON) {
-            if ((i + GenomeConstant.BASES_PER_CODON) > length) {
-                // TODO: log to error file about sequence length being
-                // non-multiple of 3 (i.e. this is not a full codon)
-                throw new UnknownCodonException(nucleotideSequence.substring(i,
-                        length)
-                        + " is not a known codon (at codon "
-                        + codonCount + ")");
-            }
-            codon = nucleotideSequence.substring(i, i + GenomeConstant.BASES_PER_CODON).toUpperCase();
+        int i = from;
+        for (; i + GenomeConstant.BASES_PER_CODON <= to; i += GenomeConstant.BASES_PER_CODON) {
             codonCount++;
-            if (stopCodons.contains(codon)) {
-                aminoAcidSequence.append("*");
-                continue;
-            }
-            String aminoAcid = toAminoAcid(codon);
-            if (aminoAcid == null) {
-                throw new UnknownCodonException(codon
+            char aminoAcid = translateCodon(source.charAt(i), source.charAt(i + 1), source.charAt(i + 2));
+            if (aminoAcid == NO_AMINO_ACID) {
+                throw new UnknownCodonException(upperCaseCodon(source, i)
                         + " is not a known codon (at codon #" + codonCount
                         + ")");
             }
+            out[outOffset++] = aminoAcid;
+        }
+        if (i < to) {
+            // TODO: log to error file about sequence length being
+            // non-multiple of 3 (i.e. this is not a full codon)
+            throw new UnknownCodonException(source.subSequence(i, to)
+                    + " is not a known codon (at codon "
+                    + codonCount + ")");
+        }
+        return codonCount;
+    }
 
-            aminoAcidSequence.append(aminoAcid);
+    /**
+     * Amino acid of a single codon, '*' for a stop codon, or NO_AMINO_ACID
+     * when the codon is not known.
+     */
+    public char translateCodon(char base1, char base2, char base3) {
+        if (denseTable != null) {
+            return denseTable[(symbolOf(base1) * SYMBOLS + symbolOf(base2)) * SYMBOLS + symbolOf(base3)];
         }
+        // Translation through the codon maps, for tables that can not be dense
+        String codon = new String(new char[] {NucleotideKernels.toUpperCase(base1),
+            NucleotideKernels.toUpperCase(base2), NucleotideKernels.toUpperCase(base3)});
+        if (stopCodons.contains(codon)) {
+            return '*';
+        }
+        String aminoAcid = toAminoAcid(codon);
+        return aminoAcid == null ? NO_AMINO_ACID : aminoAcid.charAt(0);
+    }
 
-        return aminoAcidSequence.toString();
+    private static String upperCaseCodon(CharSequence source, int position) {
+        char[] codonChars = new char[GenomeConstant.BASES_PER_CODON];
+        for (int j = 0; j < GenomeConstant.BASES_PER_CODON; j++) {
+            codonChars[j] = NucleotideKernels.toUpperCase(source.charAt(position + j));
+        }
+        return new String(codonChars);
     }
 
     private static String parseLine(String line) {
@@ -161,5 +283,26 @@ public class CodonTranslationTable {
     public boolean isStopCodon(String codon) {
         return stopCodons.contains(codon);
     }
+
+    /**
+     * Same as isStopCodon(String) for the codon of three bases, without
+     * building the String. Like the String form it is case sensitive.
+     */
+    public boolean isStopCodon(char base1, char base2, char base3) {
+        return isUpperCase(base1, base2, base3) && translateCodon(base1, base2, base3) == '*';
+    }
+
+    /**
+     * Same as isStartCodon(String) for the codon of three bases.
+     */
+    public boolean isStartCodon(char base1, char base2, char base3) {
+        return isUpperCase(base1, base2, base3)
+            && translateCodon(base1, base2, base3) == START_AMINO_ACID.charAt(0);
+    }
+
+    private static boolean isUpperCase(char base1, char base2, char base3) {
+        return NucleotideKernels.toUpperCase(base1) == base1 && NucleotideKernels.toUpperCase(base2) == base2
+            && NucleotideKernels.toUpperCase(base3) == base3;
+    }
    
 }
@@ -1,13 +1,11 @@
 package au.org.intersect.samifier.domain;
 
-import org.apache.commons.lang3.StringUtils;
-
 
 public class GenomeNucleotides {
-    private String genomeNucleotides;
+    private CharSequence genomeNucleotides;
 
 
-    public GenomeNucleotides(String genomeNucleotides) {
+    public GenomeNucleotides(CharSequence genomeNucleotides) {
         this.genomeNucleotides = genomeNucleotides;
     }
 
@@ -17,19 +15,16 @@ public class GenomeNucleotides {
 
     public String codonAt(int position, int direction) {
         int increment = direction;
-        StringBuilder codon = new StringBuilder();
-        codon.append(nucleotideAt(position));
-        codon.append(nucleotideAt(position + increment));
-        codon.append(nucleotideAt(position + 2 * increment));
-        return direction  > 0 ? codon.toString() : invertNucleotideSequence(codon.toString());
+        char[] codon = new char[GenomeConstant.BASES_PER_CODON];
+        for (int i = 0; i < codon.length; i++) {
+            char base = nucleotideAt(position + i * increment);
+            codon[i] = direction > 0 ? base : SequenceView.complement(base);
+        }
+        return new String(codon);
     }
 
 
     public int getSize() {
         return genomeNucleotides.length();
     }
-
-    private String invertNucleotideSequence(String sequence) {
-        return StringUtils.replaceChars(sequence, "ACGT", "TGCA");
-    }
 }
@@ -0,0 +1,204 @@
+package au.org.intersect.samifier.domain;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bulk operations on nucleotide arrays: complementing, changing case,
+ * finding runs of A, C, G and T, and packing to and unpacking from 2-bit
+ * codes. Every operation works on a whole array range or a whole 64-bit word
+ * through lookup tables, so the per-base cost is a table read rather than
+ * a String helper call or a chain of comparisons.
+ *
+ * The array range operations run on the jdk.incubator.vector API when the
+ * JVM is started with --add-modules jdk.incubator.vector, and on the scalar
+ * loops of ScalarKernels otherwise. "ant benchmark" measures both.
+ *
+ * Only upper case A, C, G and T are complemented, as with
+ * StringUtils.replaceChars(sequence, "ACGT", "TGCA").
+ */
+public final class NucleotideKernels {
+    private static Logger LOG = Logger.getLogger(NucleotideKernels.class);
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNELS = "au.org.intersect.samifier.domain.VectorNucleotideKernels";
+
+    private static final char[] COMPLEMENT = new char[128];
+    private static final char[] UPPER_CASE = new char[128];
+    private static final char[] LOWER_CASE = new char[128];
+    static {
+        for (char c = 0; c < COMPLEMENT.length; c++) {
+            COMPLEMENT[c] = c;
+            UPPER_CASE[c] = Character.toUpperCase(c);
+            LOWER_CASE[c] = Character.toLowerCase(c);
+        }
+        COMPLEMENT['A'] = 'T';
+        COMPLEMENT['C'] = 'G';
+        COMPLEMENT['G'] = 'C';
+        COMPLEMENT['T'] = 'A';
+    }
+
+    // Kind of each byte: not a base, upper case base or lower case base
+    private static final byte NOT_ACGT = 0;
+    private static final byte UPPER_ACGT = 1;
+    private static final byte LOWER_ACGT = 2;
+    private static final byte[] KINDS = new byte[256];
+    static {
+        for (char c : "ACGT".toCharArray()) {
+            KINDS[c] = UPPER_ACGT;
+            KINDS[Character.toLowerCase(c)] = LOWER_ACGT;
+        }
+    }
+
+    static final BulkKernels SCALAR = new ScalarKernels();
+    static final BulkKernels KERNELS = loadKernels();
+
+    private NucleotideKernels() {
+    }
+
+    // The vector kernels are only loaded when the module is in the boot
+    // layer, as their class can not be linked without it
+    private static BulkKernels loadKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                BulkKernels kernels = (BulkKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+                LOG.info("Using " + VECTOR_MODULE + " nucleotide kernels");
+                return kernels;
+            } catch (Exception e) {
+                LOG.warn("Could not load vector nucleotide kernels: " + e);
+            } catch (LinkageError e) {
+                LOG.warn("Could not load vector nucleotide kernels: " + e);
+            }
+        }
+        LOG.info("Using scalar nucleotide kernels, run java with --add-modules " + VECTOR_MODULE + " to use vector kernels");
+        return SCALAR;
+    }
+
+    /**
+     * Whether the jdk.incubator.vector kernels are in use.
+     */
+    public static boolean isVectorized() {
+        return KERNELS != SCALAR;
+    }
+
+    public static char complement(char base) {
+        return base < COMPLEMENT.length ? COMPLEMENT[base] : base;
+    }
+
+    public static void complement(char[] chars, int from, int to) {
+        KERNELS.complement(chars, from, to);
+    }
+
+    /**
+     * Reverses chars[from, to) in place, complementing every base.
+     */
+    public static void reverseComplement(char[] chars, int from, int to) {
+        KERNELS.reverseComplement(chars, from, to);
+    }
+
+    public static char toUpperCase(char c) {
+        return c < UPPER_CASE.length ? UPPER_CASE[c] : Character.toUpperCase(c);
+    }
+
+    public static char toLowerCase(char c) {
+        return c < LOWER_CASE.length ? LOWER_CASE[c] : Character.toLowerCase(c);
+    }
+
+    public static void toUpperCase(char[] chars, int from, int to) {
+        KERNELS.toUpperCase(chars, from, to);
+    }
+
+    public static void toLowerCase(char[] chars, int from, int to) {
+        KERNELS.toLowerCase(chars, from, to);
+    }
+
+    /**
+     * Returns the end of the run of A, C, G and T starting at from, where
+     * every base is upper case (or lower case when lowerCase is true).
+     */
+    public static int acgtRun(byte[] bases, int from, int to, boolean lowerCase) {
+        return KERNELS.acgtRun(bases, from, to, lowerCase);
+    }
+
+    /**
+     * Packs up to 32 bases (A, C, G or T in either case) into the low bits
+     * of a word, the first base in the lowest two bits.
+     */
+    public static long pack(byte[] bases, int offset, int count) {
+        long word = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            word = (word << 2) | PackedNucleotides.CODES[bases[offset + i] & 0xff];
+        }
+        return word;
+    }
+
+    /**
+     * Decodes the bases [from, to) of a packed word into dst.
+     */
+    public static void unpack(long word, int from, int to, char[] dst, int dstBegin) {
+        long bits = word >>> (from << 1);
+        for (int i = from; i < to; i++) {
+            dst[dstBegin++] = PackedNucleotides.BASES[(int) bits & 3];
+            bits >>>= 2;
+        }
+    }
+
+    /**
+     * The array range operations, with the same contracts as the static
+     * methods of NucleotideKernels.
+     */
+    interface BulkKernels {
+        void complement(char[] chars, int from, int to);
+
+        void reverseComplement(char[] chars, int from, int to);
+
+        void toUpperCase(char[] chars, int from, int to);
+
+        void toLowerCase(char[] chars, int from, int to);
+
+        int acgtRun(byte[] bases, int from, int to, boolean lowerCase);
+    }
+
+    private static final class ScalarKernels implements BulkKernels {
+        @Override
+        public void complement(char[] chars, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = chars[i];
+                if (c < COMPLEMENT.length) {
+                    chars[i] = COMPLEMENT[c];
+                }
+            }
+        }
+
+        @Override
+        public void reverseComplement(char[] chars, int from, int to) {
+            for (int i = from, j = to - 1; i <= j; i++, j--) {
+                char c = chars[i];
+                chars[i] = NucleotideKernels.complement(chars[j]);
+                chars[j] = NucleotideKernels.complement(c);
+            }
+        }
+
+        @Override
+        public void toUpperCase(char[] chars, int from, int to) {
+            for (int i = from; i < to; i++) {
+                chars[i] = NucleotideKernels.toUpperCase(chars[i]);
+            }
+        }
+
+        @Override
+        public void toLowerCase(char[] chars, int from, int to) {
+            for (int i = from; i < to; i++) {
+                chars[i] = NucleotideKernels.toLowerCase(chars[i]);
+            }
+        }
+
+        @Override
+        public int acgtRun(byte[] bases, int from, int to, boolean lowerCase) {
+            byte kind = lowerCase ? LOWER_ACGT : UPPER_ACGT;
+            int i = from;
+            while (i < to && KINDS[bases[i] & 0xff] == kind) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package au.org.intersect.samifier.domain;
+
+import java.util.Arrays;
+
+/**
+ * Chromosome sequence stored at 2 bits per base.
+ *
+ * A, C, G and T are packed 32 to a long. Anything else (N runs, IUPAC codes,
+ * gaps) is kept in a sparse table of runs, and soft-masked (lower case)
+ * stretches are kept as a second run table, so the sequence reads back
+ * exactly as it appeared in the FASTA file.
+ *
+ * The packed words are held in segments of 32M bases rather than a single
+ * array, so loading a chromosome of a large (e.g. plant) genome never needs
+ * one huge contiguous allocation or a copy of the whole sequence when the
+ * builder grows. A sequence can be up to MAX_LENGTH bases long.
+ */
+public final class PackedNucleotides implements CharSequence {
+
+    public static final int BASES_PER_WORD = 32;
+    private static final int WORD_SHIFT = 5;
+    private static final int WORD_MASK = BASES_PER_WORD - 1;
+    private static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_WORDS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_WORDS - 1;
+
+    /**
+     * Longest supported sequence, 2^31 - 1 bases (about 2.1 Gbp). Positions
+     * are ints all along the sequence path, from the GTF coordinates of
+     * transcripts and exons to CharSequence indexes, so longer sequences
+     * are not supported: they are rejected when they are read, never
+     * truncated.
+     */
+    public static final int MAX_LENGTH = Integer.MAX_VALUE;
+
+    public static final int CODE_A = 0;
+    public static final int CODE_C = 1;
+    public static final int CODE_G = 2;
+    public static final int CODE_T = 3;
+    public static final int NO_CODE = -1;
+
+    static final char[] BASES = {'A', 'C', 'G', 'T'};
+    static final byte[] CODES = new byte[256];
+    static {
+        Arrays.fill(CODES, (byte) NO_CODE);
+        CODES['A'] = CODE_A; CODES['a'] = CODE_A;
+        CODES['C'] = CODE_C; CODES['c'] = CODE_C;
+        CODES['G'] = CODE_G; CODES['g'] = CODE_G;
+        CODES['T'] = CODE_T; CODES['t'] = CODE_T;
+    }
+
+    // Classes of the characters found in a FASTA sequence
+    public static final int CLASS_BASE = 0;
+    public static final int CLASS_UNKNOWN = 1;
+    public static final int CLASS_AMBIGUOUS = 2;
+    public static final int CLASS_GAP = 3;
+    public static final int CLASS_INVALID = 4;
+    private static final byte[] CLASSES = new byte[256];
+    static {
+        Arrays.fill(CLASSES, (byte) CLASS_INVALID);
+        for (char c : "ACGTacgt".toCharArray()) {
+            CLASSES[c] = CLASS_BASE;
+        }
+        CLASSES['N'] = CLASS_UNKNOWN;
+        CLASSES['n'] = CLASS_UNKNOWN;
+        for (char c : "RYSWKMBDHVryswkmbdhv".toCharArray()) {
+            CLASSES[c] = CLASS_AMBIGUOUS;
+        }
+        CLASSES['-'] = CLASS_GAP;
+    }
+
+    private final int length;
+    private final long[][] segments;
+
+    // Runs of bases that are not A, C, G or T (e.g. N)
+    private final int[] exceptionStarts;
+    private final int[] exceptionEnds;
+    private final char[] exceptionChars;
+    private final long[] exceptionWords;
+
+    // Runs of soft-masked (lower case) bases
+    private final int[] lowerStarts;
+    private final int[] lowerEnds;
+    private final long[] lowerWords;
+
+    private PackedNucleotides(Builder builder) {
+        this.length          = builder.length;
+        this.segments        = builder.trimmedSegments();
+        this.exceptionStarts = Arrays.copyOf(builder.exceptionStarts, builder.exceptionCount);
+        this.exceptionEnds   = Arrays.copyOf(builder.exceptionEnds, builder.exceptionCount);
+        this.exceptionChars  = Arrays.copyOf(builder.exceptionChars, builder.exceptionCount);
+        this.lowerStarts     = Arrays.copyOf(builder.lowerStarts, builder.lowerCount);
+        this.lowerEnds       = Arrays.copyOf(builder.lowerEnds, builder.lowerCount);
+        this.exceptionWords  = flagWords(exceptionStarts, exceptionEnds, length);
+        this.lowerWords      = flagWords(lowerStarts, lowerEnds, length);
+    }
+
+    public static PackedNucleotides valueOf(CharSequence sequence) {
+        Builder builder = new Builder(sequence.length());
+        for (int i = 0; i < sequence.length(); i++) {
+            builder.append(sequence.charAt(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the 2-bit code of a base (A=0, C=1, G=2, T=3), or NO_CODE if
+     * the character is not one of A, C, G or T.
+     */
+    public static int encode(char base) {
+        return base < CODES.length ? CODES[base] : NO_CODE;
+    }
+
+    /**
+     * Returns the class of a character: CLASS_BASE for A, C, G and T,
+     * CLASS_UNKNOWN for N, CLASS_AMBIGUOUS for the other IUPAC codes,
+     * CLASS_GAP for '-' and CLASS_INVALID for anything else.
+     */
+    public static int classify(char c) {
+        return c < CLASSES.length ? CLASSES[c] : CLASS_INVALID;
+    }
+
+    public static char decode(int code) {
+        return BASES[code];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        int word = index >>> WORD_SHIFT;
+        char base = BASES[(int) (word(word) >>> ((index & WORD_MASK) << 1)) & 3];
+        if (isFlagged(exceptionWords, word)) {
+            int run = findRun(exceptionStarts, exceptionEnds, index);
+            if (run >= 0) {
+                base = exceptionChars[run];
+            }
+        }
+        if (isFlagged(lowerWords, word) && findRun(lowerStarts, lowerEnds, index) >= 0) {
+            base = Character.toLowerCase(base);
+        }
+        return base;
+    }
+
+    /**
+     * Returns the 2-bit code at the given position, or NO_CODE if the base
+     * there is not one of A, C, G or T. Soft-masking is ignored.
+     */
+    public int codeAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        int word = index >>> WORD_SHIFT;
+        if (isFlagged(exceptionWords, word) && findRun(exceptionStarts, exceptionEnds, index) >= 0) {
+            return NO_CODE;
+        }
+        return (int) (word(word) >>> ((index & WORD_MASK) << 1)) & 3;
+    }
+
+    /**
+     * Copies the bases in [srcBegin, srcEnd) into dst, in the same way as
+     * String.getChars.
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        checkRange(srcBegin, srcEnd);
+        // Decode a word at a time
+        for (int i = srcBegin; i < srcEnd; ) {
+            int from = i & WORD_MASK;
+            int to   = Math.min(BASES_PER_WORD, from + srcEnd - i);
+            NucleotideKernels.unpack(word(i >>> WORD_SHIFT), from, to, dst, dstBegin + i - srcBegin);
+            i += to - from;
+        }
+        int run = firstRunEndingAfter(exceptionEnds, srcBegin);
+        for (; run < exceptionStarts.length && exceptionStarts[run] < srcEnd; run++) {
+            int from = Math.max(srcBegin, exceptionStarts[run]);
+            int to   = Math.min(srcEnd, exceptionEnds[run]);
+            Arrays.fill(dst, dstBegin + from - srcBegin, dstBegin + to - srcBegin, exceptionChars[run]);
+        }
+        run = firstRunEndingAfter(lowerEnds, srcBegin);
+        for (; run < lowerStarts.length && lowerStarts[run] < srcEnd; run++) {
+            int from = Math.max(srcBegin, lowerStarts[run]);
+            int to   = Math.min(srcEnd, lowerEnds[run]);
+            NucleotideKernels.toLowerCase(dst, dstBegin + from - srcBegin, dstBegin + to - srcBegin);
+        }
+    }
+
+    public String substring(int start, int end) {
+        checkRange(start, end);
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * Counts the bases of each class. Only the exception and soft-masked
+     * runs are walked, so this is cheap even for whole chromosomes.
+     */
+    public BaseCounts getBaseCounts() {
+        BaseCounts counts = new BaseCounts();
+        counts.length = length;
+        for (int run = 0; run < exceptionStarts.length; run++) {
+            int runLength = exceptionEnds[run] - exceptionStarts[run];
+            switch (classify(exceptionChars[run])) {
+            case CLASS_UNKNOWN:
+                counts.unknown += runLength;
+                break;
+            case CLASS_AMBIGUOUS:
+                counts.ambiguous += runLength;
+                break;
+            case CLASS_GAP:
+                counts.gaps += runLength;
+                break;
+            default:
+                if (counts.invalid == 0) {
+                    counts.firstInvalidPosition = exceptionStarts[run];
+                    counts.firstInvalidChar = exceptionChars[run];
+                }
+                counts.invalid += runLength;
+                break;
+            }
+        }
+        for (int run = 0; run < lowerStarts.length; run++) {
+            counts.softMasked += lowerEnds[run] - lowerStarts[run];
+        }
+        return counts;
+    }
+
+    /**
+     * Approximate heap footprint of this sequence, in bytes.
+     */
+    public long getSizeInBytes() {
+        return 8L * (wordCount(length) + exceptionWords.length + lowerWords.length)
+            + 10L * exceptionStarts.length + 8L * lowerStarts.length;
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length);
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        }
+    }
+
+    private long word(int word) {
+        return segments[word >>> SEGMENT_SHIFT][word & SEGMENT_MASK];
+    }
+
+    private static boolean isFlagged(long[] flags, int word) {
+        return flags.length > 0 && (flags[word >>> 6] & (1L << word)) != 0;
+    }
+
+    private static int findRun(int[] starts, int[] ends, int index) {
+        int run = firstRunEndingAfter(ends, index);
+        if (run < starts.length && starts[run] <= index) {
+            return run;
+        }
+        return -1;
+    }
+
+    // Index of the first run whose (exclusive) end is after position
+    private static int firstRunEndingAfter(int[] ends, int position) {
+        int low  = 0;
+        int high = ends.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long[] flagWords(int[] starts, int[] ends, int length) {
+        if (starts.length == 0) {
+            return new long[0];
+        }
+        long[] flags = new long[(wordCount(length) + 63) >>> 6];
+        for (int run = 0; run < starts.length; run++) {
+            int last = (ends[run] - 1) >>> WORD_SHIFT;
+            for (int word = starts[run] >>> WORD_SHIFT; word <= last; word++) {
+                flags[word >>> 6] |= 1L << word;
+            }
+        }
+        return flags;
+    }
+
+    private static int wordCount(int length) {
+        return (length + WORD_MASK) >>> WORD_SHIFT;
+    }
+
+    /**
+     * Number of bases of each class in a sequence.
+     */
+    public static final class BaseCounts {
+        private long length;
+        private long unknown;
+        private long softMasked;
+        private long ambiguous;
+        private long gaps;
+        private long invalid;
+        private int firstInvalidPosition = -1;
+        private char firstInvalidChar;
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getUnknown() {
+            return unknown;
+        }
+
+        public long getSoftMasked() {
+            return softMasked;
+        }
+
+        public long getAmbiguous() {
+            return ambiguous;
+        }
+
+        public long getGaps() {
+            return gaps;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * 0-based position of the first invalid character, or -1.
+         */
+        public int getFirstInvalidPosition() {
+            return firstInvalidPosition;
+        }
+
+        public char getFirstInvalidChar() {
+            return firstInvalidChar;
+        }
+
+        @Override
+        public String toString() {
+            return length + " bases, " + unknown + " N, " + softMasked + " soft-masked, "
+                + ambiguous + " ambiguous, " + gaps + " gaps, " + invalid + " invalid";
+        }
+    }
+
+    /**
+     * Accumulates bases one at a time; used by the FASTA loaders so the
+     * sequence never exists as a String. A builder must not be reused after
+     * build() is called.
+     */
+    public static final class Builder {
+        private int length;
+        private long[][] segments = new long[4][];
+        private int segmentCount;
+        // Number of words allocated over all segments
+        private int capacity;
+
+        private int exceptionCount;
+        private int[] exceptionStarts = new int[16];
+        private int[] exceptionEnds = new int[16];
+        private char[] exceptionChars = new char[16];
+
+        private int lowerCount;
+        private int[] lowerStarts = new int[16];
+        private int[] lowerEnds = new int[16];
+
+        public Builder() {
+            this(1024);
+        }
+
+        public Builder(int expectedLength) {
+            ensureCapacity(Math.max(1, wordCount(expectedLength)));
+        }
+
+        public Builder append(char base) {
+            if (length == MAX_LENGTH) {
+                throw new IllegalStateException("Sequence longer than " + MAX_LENGTH + " bases");
+            }
+            int word = length >>> WORD_SHIFT;
+            ensureCapacity(word + 1);
+            int code = encode(base);
+            if (code == NO_CODE) {
+                addException(base);
+            } else {
+                segments[word >>> SEGMENT_SHIFT][word & SEGMENT_MASK] |= ((long) code) << ((length & WORD_MASK) << 1);
+            }
+            if (Character.isLowerCase(base)) {
+                addLower(1);
+            }
+            length++;
+            return this;
+        }
+
+        /**
+         * Appends count bases from an array of ASCII bytes, e.g. a buffer
+         * read straight from a FASTA file with the line breaks removed.
+         */
+        public Builder append(byte[] bases, int offset, int count) {
+            if (count > MAX_LENGTH - length) {
+                throw new IllegalStateException("Sequence longer than " + MAX_LENGTH + " bases");
+            }
+            ensureCapacity(wordCount(length + count));
+            int end = offset + count;
+            for (int i = offset; i < end; ) {
+                int b = bases[i] & 0xff;
+                if (CODES[b] == NO_CODE) {
+                    addException((char) b);
+                    if (b >= 'a' && Character.isLowerCase((char) b)) {
+                        addLower(1);
+                    }
+                    length++;
+                    i++;
+                    continue;
+                }
+                // Pack the whole run of bases of the same case at once
+                boolean lowerCase = b >= 'a';
+                int runEnd = NucleotideKernels.acgtRun(bases, i, end, lowerCase);
+                packRun(bases, i, runEnd - i);
+                if (lowerCase) {
+                    addLower(runEnd - i);
+                }
+                length += runEnd - i;
+                i = runEnd;
+            }
+            return this;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public PackedNucleotides build() {
+            return new PackedNucleotides(this);
+        }
+
+        /**
+         * Makes room for at least the given number of words. Only the last
+         * segment is ever copied when growing, and it is never larger than
+         * SEGMENT_WORDS.
+         */
+        private void ensureCapacity(int words) {
+            while (capacity < words) {
+                int last = segmentCount - 1;
+                if (last >= 0 && segments[last].length < SEGMENT_WORDS) {
+                    long[] segment = segments[last];
+                    int grown = Math.min(SEGMENT_WORDS, Math.max(2 * segment.length, words - (last << SEGMENT_SHIFT)));
+                    segments[last] = Arrays.copyOf(segment, grown);
+                    capacity += grown - segment.length;
+                } else {
+                    if (segmentCount == segments.length) {
+                        segments = Arrays.copyOf(segments, 2 * segmentCount);
+                    }
+                    int size = Math.min(SEGMENT_WORDS, words - capacity);
+                    segments[segmentCount++] = new long[size];
+                    capacity += size;
+                }
+            }
+        }
+
+        // Segments holding exactly the words of the sequence
+        private long[][] trimmedSegments() {
+            int words = wordCount(length);
+            long[][] trimmed = new long[(words + SEGMENT_MASK) >>> SEGMENT_SHIFT][];
+            for (int i = 0; i < trimmed.length; i++) {
+                int size = Math.min(SEGMENT_WORDS, words - (i << SEGMENT_SHIFT));
+                trimmed[i] = segments[i].length == size ? segments[i] : Arrays.copyOf(segments[i], size);
+            }
+            return trimmed;
+        }
+
+        private void addException(char base) {
+            int last = exceptionCount - 1;
+            if (last >= 0 && exceptionEnds[last] == length && exceptionChars[last] == base) {
+                exceptionEnds[last]++;
+                return;
+            }
+            if (exceptionCount == exceptionStarts.length) {
+                exceptionStarts = Arrays.copyOf(exceptionStarts, exceptionCount * 2);
+                exceptionEnds   = Arrays.copyOf(exceptionEnds, exceptionCount * 2);
+                exceptionChars  = Arrays.copyOf(exceptionChars, exceptionCount * 2);
+            }
+            exceptionStarts[exceptionCount] = length;
+            exceptionEnds[exceptionCount]   = length + 1;
+            exceptionChars[exceptionCount]  = base;
+            exceptionCount++;
+        }
+
+        // Packs count bases from position length onwards, a word at a time
+        private void packRun(byte[] bases, int offset, int count) {
+            for (int done = 0; done < count; ) {
+                int position = length + done;
+                int word  = position >>> WORD_SHIFT;
+                int shift = position & WORD_MASK;
+                int n = Math.min(count - done, BASES_PER_WORD - shift);
+                segments[word >>> SEGMENT_SHIFT][word & SEGMENT_MASK] |= NucleotideKernels.pack(bases, offset + done, n) << (shift << 1);
+                done += n;
+            }
+        }
+
+        private void addLower(int count) {
+            int last = lowerCount - 1;
+            if (last >= 0 && lowerEnds[last] == length) {
+                lowerEnds[last] += count;
+                return;
+            }
+            if (lowerCount == lowerStarts.length) {
+                lowerStarts = Arrays.copyOf(lowerStarts, lowerCount * 2);
+                lowerEnds   = Arrays.copyOf(lowerEnds, lowerCount * 2);
+            }
+            lowerStarts[lowerCount] = length;
+            lowerEnds[lowerCount]   = length + count;
+            lowerCount++;
+        }
+    }
+}
@@ -1,74 +1,98 @@
 package au.org.intersect.samifier.domain;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
-public class ProteinOutputter implements Outputter {
+public class ProteinOutputter implements StreamingOutputter, StreamingTranscriptOutputter {
 
     public static final int FASTA_LINE_LENGTH = 60;
     private static Logger LOG = Logger.getLogger(ProteinOutputter.class);
 
-    private String fastaHeader;
+    private String databaseName;
+    private String fastaName;
     private ProteinLocation proteinLocation;
-    private StringBuilder genomeString;
+    private CharSequence genomeString;
     private CodonTranslationTable translationTable;
+    private SixFrameTranslation sixFrameTranslation;
+    private AminoAcidBuffer aminoAcidBuffer;
 
     public ProteinOutputter(ProteinLocation proteinLocation,
-        String databaseName, StringBuilder genomeString,
+        String databaseName, CharSequence genomeString,
         CodonTranslationTable translationTable) {
-        this.fastaHeader      = ">gn1|" + databaseName + "|" + proteinLocation.getName();
-        this.proteinLocation  = proteinLocation;
-        this.genomeString     = genomeString;
-        this.translationTable = translationTable;
+        this(proteinLocation, databaseName, genomeString, translationTable, null);
+    }
+
+    /**
+     * When sixFrameTranslation is given, the protein is sliced from it
+     * rather than translated from the genome.
+     */
+    public ProteinOutputter(ProteinLocation proteinLocation,
+        String databaseName, CharSequence genomeString,
+        CodonTranslationTable translationTable, SixFrameTranslation sixFrameTranslation) {
+        this(proteinLocation, databaseName, genomeString, translationTable, sixFrameTranslation,
+            new AminoAcidBuffer());
+    }
+
+    ProteinOutputter(ProteinLocation proteinLocation,
+        String databaseName, CharSequence genomeString,
+        CodonTranslationTable translationTable, SixFrameTranslation sixFrameTranslation,
+        AminoAcidBuffer aminoAcidBuffer) {
+        this.databaseName        = databaseName;
+        this.fastaName           = proteinLocation.getName();
+        this.proteinLocation     = proteinLocation;
+        this.genomeString        = genomeString;
+        this.translationTable    = translationTable;
+        this.sixFrameTranslation = sixFrameTranslation;
+        this.aminoAcidBuffer     = aminoAcidBuffer;
     }
 
     @Override
     public String getOutput() throws OutputException {
-        String lineFeed = System.getProperty("line.separator");
-
-        StringBuilder buffer = new StringBuilder();
-        buffer.append(fastaHeader);
-        buffer.append(lineFeed);
+        StringWriter writer = new StringWriter();
+        try {
+            writeOutput(writer);
+        } catch (IOException e) {
+            throw new OutputException(e.toString());
+        }
+        return writer.toString();
+    }
 
+    /**
+     * Translates the protein into the shared buffer and writes it with its
+     * line breaks, without building a String for it. Nothing is written if
+     * the protein can't be translated.
+     */
+    @Override
+    public void writeOutput(Writer writer) throws OutputException, IOException {
         int startIndex = proteinLocation.getStartIndex() - 1;
         int stopIndex = startIndex + proteinLocation.getLength();
-        String sequence = genomeString.substring(startIndex, stopIndex);
-
-        String aminoAcidSequence = null;
-        if (proteinLocation.getDirection().equals(GenomeConstant.REVERSE_FLAG)) {
-            StringBuilder invertedReversedSequence = new StringBuilder(
-                    invertNucleotideSequence(sequence.toString())).reverse();
-            aminoAcidSequence = translationTable
-                    .proteinToAminoAcidSequence(invertedReversedSequence
-                            .toString());
-        } else {
-            aminoAcidSequence = translationTable
-                    .proteinToAminoAcidSequence(sequence.toString());
+        boolean reverse = proteinLocation.getDirection().equals(GenomeConstant.REVERSE_FLAG);
+        int length = stopIndex - startIndex;
+        if (length < GenomeConstant.BASES_PER_CODON) {
+            // Throws the same exception as translating the whole protein
+            translationTable.proteinToAminoAcidSequence(SequenceView.of(genomeString, startIndex, stopIndex, reverse));
         }
-        int sequenceLength = aminoAcidSequence.length();
-        int wholeParts = sequenceLength / FASTA_LINE_LENGTH;
-        int sequenceCursor = 0;
-        for (int i = 0; i < wholeParts; i++) {
-            buffer.append(aminoAcidSequence.substring(sequenceCursor,
-                    sequenceCursor + FASTA_LINE_LENGTH));
-            buffer.append(lineFeed);
-            sequenceCursor += FASTA_LINE_LENGTH;
-        }
-        if (sequenceCursor < sequenceLength) {
-            buffer.append(aminoAcidSequence.substring(sequenceCursor,
-                    sequenceLength));
-            buffer.append(lineFeed);
+        char[] aminoAcids = aminoAcidBuffer.ensureCapacity(length / GenomeConstant.BASES_PER_CODON);
+        int sequenceLength;
+        if (sixFrameTranslation != null) {
+            sequenceLength = sixFrameTranslation.translate(startIndex, stopIndex, reverse, aminoAcids, 0);
+        } else {
+            SequenceView sequence = SequenceView.of(genomeString, startIndex, stopIndex, reverse);
+            sequenceLength = translationTable.translate(sequence, 0, length, aminoAcids, 0);
         }
-        return buffer.toString();
+        writeFasta(writer, aminoAcids, sequenceLength);
     }
 
     public static String invertNucleotideSequence(String sequence) {
-        return StringUtils.replaceChars(sequence, "ACGT", "TGCA");
+        char[] bases = sequence.toCharArray();
+        NucleotideKernels.complement(bases, 0, bases.length);
+        return new String(bases);
     }
 
     // For generating the protein sequence of a transcript isoform
@@ -76,18 +100,39 @@ public class ProteinOutputter implements Outputter {
     private TranscriptInfo transcript;
 
     public ProteinOutputter(TranscriptInfo transcript,
-            String databaseName, StringBuilder genomeString,
+            String databaseName, CharSequence genomeString,
             CodonTranslationTable translationTable) {
 
-        this.fastaHeader = ">gn1|" + databaseName + "|" + transcript.getId();
+        this.databaseName = databaseName;
+        this.fastaName = transcript.getId();
         this.transcript = transcript;
         this.genomeString = genomeString;
         this.translationTable = translationTable;
+        this.aminoAcidBuffer = new AminoAcidBuffer();
+    }
+
+    ProteinOutputter(TranscriptInfo transcript,
+            String databaseName, CharSequence genomeString,
+            CodonTranslationTable translationTable, AminoAcidBuffer aminoAcidBuffer) {
+        this(transcript, databaseName, genomeString, translationTable);
+        this.aminoAcidBuffer = aminoAcidBuffer;
     }
 
     // Functions
     public String getTranscriptOutput()
             throws OutputException {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTranscriptOutput(writer);
+        } catch (IOException e) {
+            throw new OutputException(e.toString());
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public void writeTranscriptOutput(Writer writer)
+            throws OutputException, IOException {
 
         try {
             String startEId    = transcript.getStartCodon().getExonId();
@@ -98,23 +143,25 @@ public class ProteinOutputter implements Outputter {
             ExonInfo stopExon = transcript.getExon(stopEId);
             int stopExonIdx   = transcript.getAllExons().indexOf(stopExon) + 1;
             
-            List<String> exonSequences = transcript.getExonSequences(genomeString);
-            exonSequences = exonSequences.subList(startExonIdx, stopExonIdx);
-            String nucleotideSequence = String.join("", exonSequences);
-            String aminoAcidSequence  = translationTable.proteinToAminoAcidSequence(nucleotideSequence);
+            SequenceView nucleotideSequence = transcript.getSplicedSequence(genomeString, startExonIdx, stopExonIdx);
+            int length = nucleotideSequence.length();
+            if (length < GenomeConstant.BASES_PER_CODON) {
+                translationTable.proteinToAminoAcidSequence(nucleotideSequence);
+            }
+            char[] aminoAcids = aminoAcidBuffer.ensureCapacity(length / GenomeConstant.BASES_PER_CODON);
+            int sequenceLength = translationTable.translate(nucleotideSequence, 0, length, aminoAcids, 0);
 
-            if (!aminoAcidSequence.startsWith("M")) {
+            if (aminoAcids[0] != 'M') {
                 LOG.warn("Amino acid sequence of Transcript " + transcript.getId()
                     + " does not start with M.");
             }
 
-            if (!aminoAcidSequence.endsWith("*")) {
+            if (aminoAcids[sequenceLength - 1] != '*') {
                 LOG.warn("Amino acid sequence of Transcript " + transcript.getId()
                     + " does not end with \\*.");
             }
 
-            String fastaSequence = getFastaSequence(aminoAcidSequence);
-            return fastaSequence;
+            writeFasta(writer, aminoAcids, sequenceLength);
 
         } catch (UnknownCodonException e) {
             String line1 = "Failed translation of Transcript " + transcript.getId() + ".";
@@ -124,29 +171,17 @@ public class ProteinOutputter implements Outputter {
         }
     }
 
-    private String getFastaSequence(String aminoAcidSequence) {
-        String lineFeed      = System.getProperty("line.separator");
-        int sequenceLength   = aminoAcidSequence.length();
-        int wholeParts       = sequenceLength / FASTA_LINE_LENGTH;
-        int sequenceCursor   = 0;
-
-        StringBuilder buffer = new StringBuilder();
-        buffer.append(fastaHeader);
-        buffer.append(lineFeed);
-
-        for (int i = 0; i < wholeParts; i++) {
-            buffer.append(aminoAcidSequence.substring(sequenceCursor,
-                    sequenceCursor + FASTA_LINE_LENGTH));
-            buffer.append(lineFeed);
-            sequenceCursor += FASTA_LINE_LENGTH;
-        }
-        if (sequenceCursor < sequenceLength) {
-            buffer.append(aminoAcidSequence.substring(sequenceCursor,
-                    sequenceLength));
-            buffer.append(lineFeed);
+    private void writeFasta(Writer writer, char[] aminoAcids, int sequenceLength) throws IOException {
+        String lineFeed = System.getProperty("line.separator");
+        writer.write(">gn1|");
+        writer.write(String.valueOf(databaseName));
+        writer.write('|');
+        writer.write(String.valueOf(fastaName));
+        writer.write(lineFeed);
+        for (int sequenceCursor = 0; sequenceCursor < sequenceLength; sequenceCursor += FASTA_LINE_LENGTH) {
+            writer.write(aminoAcids, sequenceCursor, Math.min(FASTA_LINE_LENGTH, sequenceLength - sequenceCursor));
+            writer.write(lineFeed);
         }
-
-        return buffer.toString();
     }
 
 }
@@ -4,21 +4,31 @@ package au.org.intersect.samifier.domain;
 public class ProteinOutputterGenerator implements
         ProteinLocationBasedOutputterGenerator {
     private String databaseName;
-    private StringBuilder genomeString;
+    private CharSequence genomeString;
     private CodonTranslationTable translationTable;
+    private SixFrameTranslation sixFrameTranslation;
+    // Reused by the outputters, which are written one at a time
+    private AminoAcidBuffer aminoAcidBuffer = new AminoAcidBuffer();
 
     public ProteinOutputterGenerator(String databaseName,
-            StringBuilder genomeString, CodonTranslationTable translationTable) {
+            CharSequence genomeString, CodonTranslationTable translationTable) {
+        this(databaseName, genomeString, translationTable, null);
+    }
+
+    public ProteinOutputterGenerator(String databaseName,
+            CharSequence genomeString, CodonTranslationTable translationTable,
+            SixFrameTranslation sixFrameTranslation) {
         this.databaseName = databaseName;
         this.genomeString = genomeString;
         this.translationTable = translationTable;
+        this.sixFrameTranslation = sixFrameTranslation;
     }
    
     public ProteinOutputter getOutputterFor(ProteinLocation proteinLocation) {
         // String databaseName, StringBuffer genomeString, CodonTranslationTable
         // translationTable
         return new ProteinOutputter(proteinLocation, databaseName,
-                genomeString, translationTable);
+                genomeString, translationTable, sixFrameTranslation, aminoAcidBuffer);
     }
     
     // For generating the protein sequence of a transcript isoform
@@ -26,6 +36,6 @@ public class ProteinOutputterGenerator implements
         // String databaseName, StringBuffer genomeString, CodonTranslationTable
         // translationTable
         return new ProteinOutputter(transcriptinfo, databaseName, 
-        		genomeString, translationTable);
+        		genomeString, translationTable, aminoAcidBuffer);
     }
 }
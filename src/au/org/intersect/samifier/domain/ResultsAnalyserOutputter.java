@@ -1,6 +1,5 @@
 package au.org.intersect.samifier.domain;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 public class ResultsAnalyserOutputter {
@@ -98,12 +97,9 @@ public class ResultsAnalyserOutputter {
             String mascotPeptideString = peptideSearchResult.getPeptideSequence();
             String predictedAminoAcidSequence = new String("");
             if (direction != 1) {
-                StringBuilder invertedReversedSequence = new StringBuilder(
-                        StringUtils.replaceChars(nucleotideString, "ACGT", "TGCA"))
-                        .reverse();
                 predictedAminoAcidSequence = translationTable
-                        .proteinToAminoAcidSequence(invertedReversedSequence
-                                .toString());
+                        .proteinToAminoAcidSequence(SequenceView
+                                .reverseComplement(nucleotideString));
             } else {
                 predictedAminoAcidSequence = translationTable
                         .proteinToAminoAcidSequence(nucleotideString);
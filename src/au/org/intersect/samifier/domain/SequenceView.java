@@ -0,0 +1,149 @@
+package au.org.intersect.samifier.domain;
+
+/**
+ * Read-only view of one or more regions of a sequence (usually a
+ * chromosome), joined in the given order. On the reverse strand each region
+ * is reverse complemented. Nothing is copied until toString() is called, so
+ * translation can read exons straight from the genome.
+ *
+ * As with StringUtils.replaceChars(sequence, "ACGT", "TGCA"), only upper
+ * case A, C, G and T are complemented; other characters are kept as they
+ * are.
+ */
+public final class SequenceView implements CharSequence {
+
+    private final CharSequence source;
+    private final int[] starts;
+    private final int[] ends;
+    // Position of each region in the joined sequence
+    private final int[] offsets;
+    private final boolean reverse;
+    // Window of the joined sequence seen by this view
+    private final int offset;
+    private final int length;
+
+    /**
+     * Joins the regions [starts[i], ends[i]) (0-based) of source, reverse
+     * complementing each of them when reverse is true.
+     */
+    public SequenceView(CharSequence source, int[] starts, int[] ends, boolean reverse) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("Region starts and ends do not match");
+        }
+        this.source  = source;
+        this.starts  = starts;
+        this.ends    = ends;
+        this.reverse = reverse;
+        this.offsets = new int[starts.length + 1];
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] < 0 || ends[i] > source.length() || starts[i] > ends[i]) {
+                throw new StringIndexOutOfBoundsException("begin " + starts[i] + ", end " + ends[i]
+                    + ", length " + source.length());
+            }
+            offsets[i + 1] = offsets[i] + ends[i] - starts[i];
+        }
+        this.offset = 0;
+        this.length = offsets[starts.length];
+    }
+
+    private SequenceView(SequenceView view, int start, int end) {
+        this.source  = view.source;
+        this.starts  = view.starts;
+        this.ends    = view.ends;
+        this.offsets = view.offsets;
+        this.reverse = view.reverse;
+        this.offset  = view.offset + start;
+        this.length  = end - start;
+    }
+
+    public static SequenceView of(CharSequence source, int start, int end, boolean reverse) {
+        return new SequenceView(source, new int[] {start}, new int[] {end}, reverse);
+    }
+
+    public static SequenceView reverseComplement(CharSequence sequence) {
+        return of(sequence, 0, sequence.length(), true);
+    }
+
+    public static char complement(char base) {
+        return NucleotideKernels.complement(base);
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        int position = offset + index;
+        int region = findRegion(position);
+        int inRegion = position - offsets[region];
+        if (reverse) {
+            return complement(source.charAt(ends[region] - 1 - inRegion));
+        }
+        return source.charAt(starts[region] + inRegion);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new StringIndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+        }
+        return new SequenceView(this, start, end);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        int from = offset;
+        int to   = offset + length;
+        int written = 0;
+        for (int region = findRegion(from); written < length; region++) {
+            int regionFrom = Math.max(from, offsets[region]) - offsets[region];
+            int regionTo   = Math.min(to, offsets[region + 1]) - offsets[region];
+            int count      = regionTo - regionFrom;
+            if (reverse) {
+                copy(ends[region] - regionTo, ends[region] - regionFrom, chars, written);
+                NucleotideKernels.reverseComplement(chars, written, written + count);
+            } else {
+                copy(starts[region] + regionFrom, starts[region] + regionTo, chars, written);
+            }
+            written += count;
+        }
+        return new String(chars);
+    }
+
+    private void copy(int from, int to, char[] dst, int dstBegin) {
+        if (source instanceof PackedNucleotides) {
+            ((PackedNucleotides) source).getChars(from, to, dst, dstBegin);
+        } else if (source instanceof String) {
+            ((String) source).getChars(from, to, dst, dstBegin);
+        } else {
+            for (int i = from; i < to; i++) {
+                dst[dstBegin++] = source.charAt(i);
+            }
+        }
+    }
+
+    // Last region starting at or before position (empty regions are skipped)
+    private int findRegion(int position) {
+        int low  = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,174 @@
+package au.org.intersect.samifier.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Translation of a whole chromosome in all six reading frames. Proteins of
+ * any region are sliced out of the frames instead of translating the region
+ * again, which is what makes interval based protein generation read each
+ * base only once.
+ *
+ * The chromosome is translated a window of WINDOW_CODONS codons at a time,
+ * the first time a protein needs it, and only the MAX_WINDOWS most recently
+ * used windows are kept, so the frames never take more than a few
+ * megabytes however long the chromosome is.
+ *
+ * The codon at position p (0-based) is stored at index (p % WINDOW_SIZE) / 3
+ * of frame p % 3 of its window. On the reverse strand it is the reverse
+ * complement of the same three bases, so a reverse strand protein is read
+ * from its frame backwards. Amino acids are kept as ASCII bytes, with
+ * CodonTranslationTable.NO_AMINO_ACID for unknown codons.
+ *
+ * Not safe for use by more than one thread.
+ */
+public final class SixFrameTranslation {
+    private static final int WINDOW_CODONS = 1 << 16;
+    private static final int WINDOW_SIZE = WINDOW_CODONS * GenomeConstant.BASES_PER_CODON;
+    private static final int MAX_WINDOWS = 8;
+
+    private final CharSequence genome;
+    private final CodonTranslationTable translationTable;
+    private final Map<Integer, Window> windows = new LinkedHashMap<Integer, Window>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, Window> eldest) {
+            return size() > MAX_WINDOWS;
+        }
+    };
+    private Window lastWindow;
+    private char[] chunk;
+
+    public SixFrameTranslation(CharSequence genome, CodonTranslationTable translationTable) {
+        this.genome = genome;
+        this.translationTable = translationTable;
+    }
+
+    public int length() {
+        return genome.length();
+    }
+
+    /**
+     * Amino acid of the codon starting at position (0-based), reverse
+     * complemented on the reverse strand.
+     */
+    public char codonAt(int position, boolean reverse) {
+        if (position < 0 || position + GenomeConstant.BASES_PER_CODON > genome.length()) {
+            throw new IndexOutOfBoundsException("No codon at " + position);
+        }
+        return (char) aminoAcidAt(position, reverse);
+    }
+
+    /**
+     * Protein of the region [start, stop) (0-based), the same as
+     * translating SequenceView.of(genome, start, stop, reverse). Regions that
+     * do not hold whole, known codons are translated through the table so
+     * the same UnknownCodonException is raised.
+     */
+    public String translate(int start, int stop, boolean reverse) throws UnknownCodonException {
+        int length = stop - start;
+        if (length < GenomeConstant.BASES_PER_CODON) {
+            return translationTable.proteinToAminoAcidSequence(SequenceView.of(genome, start, stop, reverse));
+        }
+        char[] aminoAcids = new char[length / GenomeConstant.BASES_PER_CODON];
+        translate(start, stop, reverse, aminoAcids, 0);
+        return new String(aminoAcids);
+    }
+
+    /**
+     * Writes the protein of the region [start, stop) to out, as
+     * CodonTranslationTable.translate does, and returns the number of amino
+     * acids written.
+     */
+    public int translate(int start, int stop, boolean reverse, char[] out, int outOffset)
+            throws UnknownCodonException {
+        int length = stop - start;
+        if (length % GenomeConstant.BASES_PER_CODON != 0) {
+            return translationTable.translate(SequenceView.of(genome, start, stop, reverse), 0, length,
+                out, outOffset);
+        }
+        int count = length / GenomeConstant.BASES_PER_CODON;
+        for (int i = 0; i < count; i++) {
+            int codon = reverse ? count - 1 - i : i;
+            byte aminoAcid = aminoAcidAt(start + codon * GenomeConstant.BASES_PER_CODON, reverse);
+            if (aminoAcid == CodonTranslationTable.NO_AMINO_ACID) {
+                return translationTable.translate(SequenceView.of(genome, start, stop, reverse), 0, length,
+                    out, outOffset);
+            }
+            out[outOffset + i] = (char) aminoAcid;
+        }
+        return count;
+    }
+
+    private byte aminoAcidAt(int position, boolean reverse) {
+        Window window = getWindow(position / WINDOW_SIZE);
+        int offset = position - window.start;
+        byte[][] frames = reverse ? window.reverseFrames : window.forwardFrames;
+        return frames[offset % GenomeConstant.BASES_PER_CODON][offset / GenomeConstant.BASES_PER_CODON];
+    }
+
+    private Window getWindow(int index) {
+        if (lastWindow != null && lastWindow.index == index) {
+            return lastWindow;
+        }
+        Window window = windows.get(index);
+        if (window == null) {
+            window = translateWindow(index);
+            windows.put(index, window);
+        }
+        lastWindow = window;
+        return window;
+    }
+
+    // Translates the codons starting in one window, reading the two bases
+    // after it for the last codons
+    private Window translateWindow(int index) {
+        Window window = new Window(index);
+        int chunkEnd = (int) Math.min(genome.length(), (long) window.start + WINDOW_SIZE + 2);
+        int bases = chunkEnd - window.start;
+        if (chunk == null) {
+            chunk = new char[WINDOW_SIZE + 2];
+        }
+        copy(window.start, chunkEnd, chunk);
+        int codonStarts = Math.min(bases - 2, WINDOW_SIZE);
+        for (int frame = 0; frame < GenomeConstant.BASES_PER_CODON; frame++) {
+            int codons = Math.max(0, (codonStarts - frame + 2) / GenomeConstant.BASES_PER_CODON);
+            window.forwardFrames[frame] = new byte[codons];
+            window.reverseFrames[frame] = new byte[codons];
+        }
+        for (int i = 0; i < codonStarts; i++) {
+            int frame = i % GenomeConstant.BASES_PER_CODON;
+            int codon = i / GenomeConstant.BASES_PER_CODON;
+            char base1 = chunk[i];
+            char base2 = chunk[i + 1];
+            char base3 = chunk[i + 2];
+            window.forwardFrames[frame][codon] = (byte) translationTable.translateCodon(base1, base2, base3);
+            window.reverseFrames[frame][codon] = (byte) translationTable.translateCodon(
+                NucleotideKernels.complement(base3), NucleotideKernels.complement(base2),
+                NucleotideKernels.complement(base1));
+        }
+        return window;
+    }
+
+    private void copy(int from, int to, char[] dst) {
+        if (genome instanceof PackedNucleotides) {
+            ((PackedNucleotides) genome).getChars(from, to, dst, 0);
+        } else if (genome instanceof String) {
+            ((String) genome).getChars(from, to, dst, 0);
+        } else {
+            for (int i = from; i < to; i++) {
+                dst[i - from] = genome.charAt(i);
+            }
+        }
+    }
+
+    private static final class Window {
+        private final int index;
+        private final int start;
+        private final byte[][] forwardFrames = new byte[GenomeConstant.BASES_PER_CODON][];
+        private final byte[][] reverseFrames = new byte[GenomeConstant.BASES_PER_CODON][];
+
+        private Window(int index) {
+            this.index = index;
+            this.start = index * WINDOW_SIZE;
+        }
+    }
+}
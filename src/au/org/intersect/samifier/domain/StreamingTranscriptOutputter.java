@@ -0,0 +1,12 @@
+package au.org.intersect.samifier.domain;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An outputter that can write its transcript output straight to a writer
+ * instead of building it as a String first.
+ */
+public interface StreamingTranscriptOutputter extends Outputter {
+    void writeTranscriptOutput(Writer writer) throws OutputException, IOException;
+}
@@ -17,6 +17,7 @@ public class TranscriptInfo {
     private int start;              // Start position of the transcript (WRT Genome)
     private int stop;               // End position of the transcript   (WRT Genome)
     private int direction;
+    private String biotype;         // transcript_biotype or transcript_type, if given
 
     // Exon Table
     // ExonNumber|Chromosome|Strand|Start|End|Phase
@@ -57,6 +58,7 @@ public class TranscriptInfo {
     public TranscriptInfo(TranscriptInfo t) {
         this(t.getId(), t.getChromosome(), t.getOrigin(),
             t.getStart(), t.getStop(), t.getDirection());
+        this.biotype = t.getBiotype();
 
         this.exonMap = new HashMap<String, ExonInfo>();
         for (ExonInfo oldE : t.getAllExons()) {
@@ -78,6 +80,10 @@ public class TranscriptInfo {
         return origin;
     }
 
+    public String getBiotype() {
+        return biotype;
+    }
+
     public int getStart() {
         return start;
     }
@@ -140,19 +146,31 @@ public class TranscriptInfo {
         return codons.get(codons.size() - 1);
     }
 
-    public List<String> getExonSequences(StringBuilder genomeString) {
+    public List<String> getExonSequences(CharSequence genomeString) {
         List<String> nucleotideSequences = new ArrayList<String>();
         for (ExonInfo e : getAllExons()) {
-            String currNucleotideSequence = genomeString.substring(e.getStart() - 1, e.getStop());
-            if (!isForward()) {
-                String invertedSequence = ProteinOutputter.invertNucleotideSequence(currNucleotideSequence.toString()); 
-                currNucleotideSequence  = new StringBuilder(invertedSequence).reverse().toString();
-            }
-            nucleotideSequences.add(currNucleotideSequence);
+            SequenceView exonSequence = SequenceView.of(genomeString, e.getStart() - 1, e.getStop(), !isForward());
+            nucleotideSequences.add(exonSequence.toString());
         }
         return nucleotideSequences;
     }
 
+    /**
+     * Returns the spliced sequence of exons [fromExonIdx, toExonIdx) of
+     * getAllExons(), read on the strand of the transcript. The sequence is
+     * a view over genomeString, so nothing is copied.
+     */
+    public SequenceView getSplicedSequence(CharSequence genomeString, int fromExonIdx, int toExonIdx) {
+        List<ExonInfo> exons = getAllExons().subList(fromExonIdx, toExonIdx);
+        int[] starts = new int[exons.size()];
+        int[] ends   = new int[exons.size()];
+        for (int i = 0; i < exons.size(); i++) {
+            starts[i] = exons.get(i).getStart() - 1;
+            ends[i]   = exons.get(i).getStop();
+        }
+        return new SequenceView(genomeString, starts, ends, !isForward());
+    }
+
     // Add Functions
     public void addExon(ExonInfo exon) {
         exonMap.put(exon.getId(), exon);
@@ -215,6 +233,10 @@ public class TranscriptInfo {
     }
 
     // Set Functions
+    public void setBiotype(String biotype) {
+        this.biotype = biotype;
+    }
+
     public void setId(String transcriptId) {
         this.transcriptId = transcriptId;
     }
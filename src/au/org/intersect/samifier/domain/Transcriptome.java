@@ -2,11 +2,15 @@ package au.org.intersect.samifier.domain;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 
@@ -22,6 +26,17 @@ public class Transcriptome {
     // TranscriptId|Chromosome|Strand|Start|End
     // ENST1       |1         |+     |1    |4
     // ENST2       |2         |-     |5    |10
+    private static final int VERIFY_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MIN_VERIFY_BATCH = 256;
+    private static final ExecutorService VERIFIERS = Executors.newFixedThreadPool(
+        VERIFY_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "transcript-verifier");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
     private Map<String, TranscriptInfo> transcriptMap;
 
     public Transcriptome() {
@@ -59,19 +74,61 @@ public class Transcriptome {
         return transcriptMap.containsKey(transcriptId);
     }
 
+    /**
+     * Removes the transcripts that are missing a codon and updates the
+     * others. Transcripts are checked and updated on a worker pool, as they
+     * are independent of each other; removals, warnings and the first error
+     * follow the order of the transcript map.
+     */
     public void verify()
             throws TranscriptomeFileParsingException {
 
-        Iterator<String> iter = transcriptMap.keySet().iterator();
-        while (iter.hasNext()) {
-            TranscriptInfo t = getTranscript(iter.next());
+        final List<TranscriptInfo> transcripts = new ArrayList<TranscriptInfo>(transcriptMap.values());
+        final Exception[] failures = new Exception[transcripts.size()];
+        final boolean[] valid = new boolean[transcripts.size()];
+        int batchSize = Math.max(MIN_VERIFY_BATCH, transcripts.size() / (VERIFY_THREADS * 4) + 1);
+        List<Future<?>> batches = new ArrayList<Future<?>>();
+        for (int batchStart = 0; batchStart < transcripts.size(); batchStart += batchSize) {
+            final int from = batchStart;
+            final int to = Math.min(transcripts.size(), batchStart + batchSize);
+            batches.add(VERIFIERS.submit(new Runnable() {
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        TranscriptInfo t = transcripts.get(i);
+                        try {
+                            valid[i] = t.isValid();
+                            if (valid[i]) {
+                                t.update();
+                            }
+                        } catch (Exception e) {
+                            failures[i] = e;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> batch : batches) {
+            try {
+                batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TranscriptomeFileParsingException("Interrupted while verifying transcripts");
+            } catch (ExecutionException e) {
+                throw new TranscriptomeFileParsingException("Could not verify transcripts: " + e.getCause());
+            }
+        }
+
+        for (int i = 0; i < transcripts.size(); i++) {
+            TranscriptInfo t = transcripts.get(i);
+            if (failures[i] instanceof TranscriptomeFileParsingException) {
+                throw (TranscriptomeFileParsingException) failures[i];
+            } else if (failures[i] != null) {
+                throw (RuntimeException) failures[i];
+            }
             // Transcripts that are missing a codon will be removed
-            if (!t.isValid()) {
+            if (!valid[i]) {
                 LOG.warn("Transcript " + t.getId() + " has a missing codon (either start or stop). Removing transcript.");
-                iter.remove();
-
-            } else {
-                t.update();
+                transcriptMap.remove(t.getId());
             }
         }
     }
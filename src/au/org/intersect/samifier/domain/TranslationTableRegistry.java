@@ -0,0 +1,146 @@
+package au.org.intersect.samifier.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Translation tables shared by the whole process. Each table file is parsed
+ * and compiled once, and the NCBI genetic codes are built in, so they can
+ * be given by number (e.g. "11" for bacteria) instead of a file. Tables are
+ * never changed once built, so they can be used from any thread.
+ */
+public final class TranslationTableRegistry {
+    private static Logger LOG = Logger.getLogger(TranslationTableRegistry.class);
+
+    private static final String BASE1 = "TTTTTTTTTTTTTTTTCCCCCCCCCCCCCCCCAAAAAAAAAAAAAAAAGGGGGGGGGGGGGGGG";
+    private static final String BASE2 = "TTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGG";
+    private static final String BASE3 = "TCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAG";
+
+    // AAs and Starts rows of the NCBI genetic codes, by transl_table number
+    private static final Map<Integer, String[]> NCBI_CODES;
+    static {
+        Map<Integer, String[]> codes = new TreeMap<Integer, String[]>();
+        codes.put(1, new String[] {"Standard",
+            "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "---M---------------M---------------M----------------------------"});
+        codes.put(2, new String[] {"Vertebrate Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSS**VVVVAAAADDEEGGGG",
+            "--------------------------------MMMM---------------M------------"});
+        codes.put(3, new String[] {"Yeast Mitochondrial",
+            "FFLLSSSSYY**CCWWTTTTPPPPHHQQRRRRIIMMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "----------------------------------MM---------------M------------"});
+        codes.put(4, new String[] {"Mold, Protozoan, and Coelenterate Mitochondrial and Mycoplasma/Spiroplasma",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "--MM---------------M------------MMMM---------------M------------"});
+        codes.put(5, new String[] {"Invertebrate Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSSSSVVVVAAAADDEEGGGG",
+            "---M----------------------------MMMM---------------M------------"});
+        codes.put(6, new String[] {"Ciliate, Dasycladacean and Hexamita Nuclear",
+            "FFLLSSSSYYQQCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "-----------------------------------M----------------------------"});
+        codes.put(9, new String[] {"Echinoderm and Flatworm Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNNKSSSSVVVVAAAADDEEGGGG",
+            "-----------------------------------M---------------M------------"});
+        codes.put(10, new String[] {"Euplotid Nuclear",
+            "FFLLSSSSYY**CCCWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "-----------------------------------M----------------------------"});
+        codes.put(11, new String[] {"Bacterial, Archaeal and Plant Plastid",
+            "FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "---M---------------M------------MMMM---------------M------------"});
+        codes.put(12, new String[] {"Alternative Yeast Nuclear",
+            "FFLLSSSSYY**CC*WLLLSPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "-------------------M---------------M----------------------------"});
+        codes.put(13, new String[] {"Ascidian Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNKKSSGGVVVVAAAADDEEGGGG",
+            "---M------------------------------MM---------------M------------"});
+        codes.put(14, new String[] {"Alternative Flatworm Mitochondrial",
+            "FFLLSSSSYYY*CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNNKSSSSVVVVAAAADDEEGGGG",
+            "-----------------------------------M----------------------------"});
+        codes.put(16, new String[] {"Chlorophycean Mitochondrial",
+            "FFLLSSSSYY*LCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "-----------------------------------M----------------------------"});
+        codes.put(21, new String[] {"Trematode Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIMMTTTTNNNKSSSSVVVVAAAADDEEGGGG",
+            "-----------------------------------M---------------M------------"});
+        codes.put(22, new String[] {"Scenedesmus obliquus Mitochondrial",
+            "FFLLSS*SYY*LCC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "-----------------------------------M----------------------------"});
+        codes.put(23, new String[] {"Thraustochytrium Mitochondrial",
+            "FF*LSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "--------------------------------M--M---------------M------------"});
+        codes.put(24, new String[] {"Rhabdopleuridae Mitochondrial",
+            "FFLLSSSSYY**CCWWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSSKVVVVAAAADDEEGGGG",
+            "---M---------------M---------------M---------------M------------"});
+        codes.put(25, new String[] {"Candidate Division SR1 and Gracilibacteria",
+            "FFLLSSSSYY**CCGWLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG",
+            "---M-------------------------------M---------------M------------"});
+        NCBI_CODES = Collections.unmodifiableMap(codes);
+    }
+
+    private static final ConcurrentMap<Integer, CodonTranslationTable> STANDARD_TABLES =
+        new ConcurrentHashMap<Integer, CodonTranslationTable>();
+    private static final ConcurrentMap<String, CodonTranslationTable> FILE_TABLES =
+        new ConcurrentHashMap<String, CodonTranslationTable>();
+
+    private TranslationTableRegistry() {
+    }
+
+    /**
+     * Returns the table of a file, parsing it on first use. A name that is
+     * not an existing file but is the number of an NCBI genetic code
+     * returns that built-in code.
+     */
+    public static CodonTranslationTable getTable(File tableFile)
+            throws IOException, TranslationTableParsingException {
+        String key = tableFile.getAbsolutePath();
+        CodonTranslationTable table = FILE_TABLES.get(key);
+        if (table != null) {
+            return table;
+        }
+        if (!tableFile.exists() && tableFile.getName().matches("\\d+")
+                && NCBI_CODES.containsKey(Integer.valueOf(tableFile.getName()))) {
+            table = getStandardTable(Integer.parseInt(tableFile.getName()));
+        } else {
+            LOG.debug("Parsing translation table " + key);
+            table = CodonTranslationTable.parseTableFile(tableFile);
+        }
+        CodonTranslationTable parsed = FILE_TABLES.putIfAbsent(key, table);
+        return parsed != null ? parsed : table;
+    }
+
+    /**
+     * Returns an NCBI genetic code by its transl_table number.
+     */
+    public static CodonTranslationTable getStandardTable(int number) throws TranslationTableParsingException {
+        CodonTranslationTable table = STANDARD_TABLES.get(number);
+        if (table != null) {
+            return table;
+        }
+        String[] code = NCBI_CODES.get(number);
+        if (code == null) {
+            throw new TranslationTableParsingException("Unknown NCBI genetic code: " + number
+                + ", expected one of " + NCBI_CODES.keySet());
+        }
+        table = CodonTranslationTable.fromRows(code[1], code[2], BASE1, BASE2, BASE3);
+        CodonTranslationTable built = STANDARD_TABLES.putIfAbsent(number, table);
+        return built != null ? built : table;
+    }
+
+    /**
+     * Names of the built-in genetic codes, by number.
+     */
+    public static Map<Integer, String> getStandardTableNames() {
+        Map<Integer, String> names = new TreeMap<Integer, String>();
+        for (Map.Entry<Integer, String[]> code : NCBI_CODES.entrySet()) {
+            names.put(code.getKey(), code.getValue()[0]);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,112 @@
+package au.org.intersect.samifier.domain;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * NucleotideKernels on the jdk.incubator.vector API, a vector of chars (as
+ * shorts) or bytes at a time. The ends of ranges shorter than a vector go
+ * through the scalar kernels, as do vectors holding chars outside of ASCII
+ * when changing case.
+ *
+ * Built with --add-modules jdk.incubator.vector and only ever loaded by
+ * NucleotideKernels, reflectively, when the module is available.
+ */
+final class VectorNucleotideKernels implements NucleotideKernels.BulkKernels {
+    private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorShuffle<Short> REVERSE = VectorShuffle.iota(CHARS, CHARS.length() - 1, -1, true);
+    private static final short NOT_ASCII = (short) 0xff80;
+    private static final short CASE_BIT = 0x20;
+
+    private final NucleotideKernels.BulkKernels scalar = NucleotideKernels.SCALAR;
+
+    @Override
+    public void complement(char[] chars, int from, int to) {
+        int i = from;
+        for (int bound = to - CHARS.length(); i <= bound; i += CHARS.length()) {
+            complement(ShortVector.fromCharArray(CHARS, chars, i)).intoCharArray(chars, i);
+        }
+        scalar.complement(chars, i, to);
+    }
+
+    @Override
+    public void reverseComplement(char[] chars, int from, int to) {
+        int i = from;
+        int j = to;
+        // Swaps a vector from each end until less than two vectors are left
+        while (j - i >= 2 * CHARS.length()) {
+            ShortVector left = ShortVector.fromCharArray(CHARS, chars, i);
+            ShortVector right = ShortVector.fromCharArray(CHARS, chars, j - CHARS.length());
+            complement(right.rearrange(REVERSE)).intoCharArray(chars, i);
+            complement(left.rearrange(REVERSE)).intoCharArray(chars, j - CHARS.length());
+            i += CHARS.length();
+            j -= CHARS.length();
+        }
+        scalar.reverseComplement(chars, i, j);
+    }
+
+    private static ShortVector complement(ShortVector bases) {
+        return bases
+            .blend((short) 'T', bases.eq((short) 'A'))
+            .blend((short) 'G', bases.eq((short) 'C'))
+            .blend((short) 'C', bases.eq((short) 'G'))
+            .blend((short) 'A', bases.eq((short) 'T'));
+    }
+
+    @Override
+    public void toUpperCase(char[] chars, int from, int to) {
+        changeCase(chars, from, to, true);
+    }
+
+    @Override
+    public void toLowerCase(char[] chars, int from, int to) {
+        changeCase(chars, from, to, false);
+    }
+
+    // Flips the case bit of the ASCII letters of the other case
+    private void changeCase(char[] chars, int from, int to, boolean upperCase) {
+        short first = (short) (upperCase ? 'a' : 'A');
+        short last = (short) (upperCase ? 'z' : 'Z');
+        int i = from;
+        for (int bound = to - CHARS.length(); i <= bound; i += CHARS.length()) {
+            ShortVector v = ShortVector.fromCharArray(CHARS, chars, i);
+            if (v.and(NOT_ASCII).compare(VectorOperators.NE, 0).anyTrue()) {
+                if (upperCase) {
+                    scalar.toUpperCase(chars, i, i + CHARS.length());
+                } else {
+                    scalar.toLowerCase(chars, i, i + CHARS.length());
+                }
+                continue;
+            }
+            VectorMask<Short> letters = v.compare(VectorOperators.GE, first).and(v.compare(VectorOperators.LE, last));
+            v.lanewise(VectorOperators.XOR, CASE_BIT, letters).intoCharArray(chars, i);
+        }
+        if (upperCase) {
+            scalar.toUpperCase(chars, i, to);
+        } else {
+            scalar.toLowerCase(chars, i, to);
+        }
+    }
+
+    @Override
+    public int acgtRun(byte[] bases, int from, int to, boolean lowerCase) {
+        byte a = (byte) (lowerCase ? 'a' : 'A');
+        byte c = (byte) (lowerCase ? 'c' : 'C');
+        byte g = (byte) (lowerCase ? 'g' : 'G');
+        byte t = (byte) (lowerCase ? 't' : 'T');
+        int i = from;
+        for (int bound = to - BYTES.length(); i <= bound; i += BYTES.length()) {
+            ByteVector v = ByteVector.fromArray(BYTES, bases, i);
+            VectorMask<Byte> acgt = v.eq(a).or(v.eq(c)).or(v.eq(g)).or(v.eq(t));
+            if (!acgt.allTrue()) {
+                return i + acgt.not().firstTrue();
+            }
+        }
+        return scalar.acgtRun(bases, i, to, lowerCase);
+    }
+}
@@ -0,0 +1,151 @@
+package au.org.intersect.samifier.generator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import au.org.intersect.samifier.domain.CodonPositionIndex;
+import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.GenomeConstant;
+import au.org.intersect.samifier.domain.PackedNucleotides;
+import au.org.intersect.samifier.domain.ProteinLocation;
+import au.org.intersect.samifier.parser.ChromosomePrefetcher;
+import au.org.intersect.samifier.parser.FastaParser;
+import au.org.intersect.samifier.parser.FastaParserException;
+
+/**
+ * Generates a location for every open reading frame of the genome: the
+ * codons between two stop codons of the same frame, in all six frames. The
+ * stop codons themselves are left out. Reading frames that run off the end
+ * of a chromosome are kept, as they can belong to a protein that spans it.
+ * When trimming to the start codon, each reading frame begins at its first
+ * start codon and frames without one are dropped.
+ */
+public class OrfLocationGenerator implements LocationGenerator {
+    private static Logger LOG = Logger.getLogger(OrfLocationGenerator.class);
+
+    private static final int FORWARD = 1;
+    private static final int REVERSE = -1;
+
+    private FastaParser fastaParser;
+    private CodonTranslationTable translationTable;
+    private int minimumCodons;
+    private boolean trimToStart;
+
+    public OrfLocationGenerator(FastaParser fastaParser, CodonTranslationTable translationTable,
+            int minimumCodons, boolean trimToStart) {
+        this.fastaParser = fastaParser;
+        this.translationTable = translationTable;
+        this.minimumCodons = minimumCodons;
+        this.trimToStart = trimToStart;
+    }
+
+    @Override
+    public List<ProteinLocation> generateLocations()
+            throws LocationGeneratorException {
+        try {
+            List<String> allChromosomes = fastaParser.scanForChromosomes();
+            ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, allChromosomes);
+            List<ProteinLocation> locations = new ArrayList<ProteinLocation>();
+            for (String chromosome : allChromosomes) {
+                PackedNucleotides genome = prefetcher.get(chromosome);
+                int found = locations.size();
+                locations.addAll(createLocations(new CodonPositionIndex(genome, translationTable), chromosome));
+                LOG.debug(chromosome + ": " + (locations.size() - found) + " open reading frames");
+            }
+            Collections.sort(locations);
+            return locations;
+        } catch (IOException e) {
+            throw new LocationGeneratorException(
+                    "Could not generate locations of open reading frames", e);
+        } catch (FastaParserException ex) {
+            throw new LocationGeneratorException(
+                    "Could not generate locations of open reading frames", ex);
+        }
+    }
+
+    public List<ProteinLocation> createLocations(CodonPositionIndex codons, String chromosome) {
+        List<ProteinLocation> locations = new ArrayList<ProteinLocation>();
+        int length = codons.length();
+        for (int frame = 0; frame < GenomeConstant.BASES_PER_CODON; frame++) {
+            addForwardLocations(locations, codons, frame, length, chromosome);
+            addReverseLocations(locations, codons, frame, length, chromosome);
+        }
+        return locations;
+    }
+
+    // Forward codons of the frame start at frame, frame + 3, ...; an open
+    // reading frame covers the bases [from, to)
+    private void addForwardLocations(List<ProteinLocation> locations, CodonPositionIndex codons,
+            int frame, int length, String chromosome) {
+        int lastCodon = length - GenomeConstant.BASES_PER_CODON;
+        if (frame > lastCodon) {
+            return;
+        }
+        int from = frame;
+        int stop = codons.isStop(frame, FORWARD) ? frame : codons.findNextStop(frame, FORWARD, FORWARD);
+        while (true) {
+            int to = stop == CodonPositionIndex.NOT_FOUND
+                ? lastCodon - (lastCodon - frame) % GenomeConstant.BASES_PER_CODON + GenomeConstant.BASES_PER_CODON
+                : stop;
+            if (trimToStart && from < to) {
+                int start = codons.isStart(from, FORWARD) ? from : codons.findNextStart(from, FORWARD, FORWARD);
+                from = start == CodonPositionIndex.NOT_FOUND ? to : Math.min(start, to);
+            }
+            addLocation(locations, from, to, GenomeConstant.FORWARD_FLAG, frame, chromosome);
+            if (stop == CodonPositionIndex.NOT_FOUND) {
+                return;
+            }
+            from = stop + GenomeConstant.BASES_PER_CODON;
+            stop = codons.findNextStop(stop, FORWARD, FORWARD);
+        }
+    }
+
+    // Reverse codons of the frame are read from the complements of p, p - 1
+    // and p - 2, for the p of the frame from the highest down; an open
+    // reading frame covers the bases [from, to)
+    private void addReverseLocations(List<ProteinLocation> locations, CodonPositionIndex codons,
+            int frame, int length, String chromosome) {
+        if (length < GenomeConstant.BASES_PER_CODON) {
+            return;
+        }
+        int firstCodon = frame < GenomeConstant.BASES_PER_CODON - 1 ? frame + GenomeConstant.BASES_PER_CODON : frame;
+        int lastCodon = length - 1 - (length - 1 - frame) % GenomeConstant.BASES_PER_CODON;
+        if (lastCodon < firstCodon) {
+            return;
+        }
+        int to = lastCodon + 1;
+        int stop = codons.isStop(lastCodon, REVERSE) ? lastCodon : codons.findNextStop(lastCodon, REVERSE, REVERSE);
+        while (true) {
+            int from = stop == CodonPositionIndex.NOT_FOUND ? firstCodon - 2 : stop + 1;
+            if (trimToStart && from < to) {
+                int top = to - 1;
+                int start = codons.isStart(top, REVERSE) ? top : codons.findNextStart(top, REVERSE, REVERSE);
+                to = start == CodonPositionIndex.NOT_FOUND ? from : Math.max(start + 1, from);
+            }
+            addLocation(locations, from, to, GenomeConstant.REVERSE_FLAG, (length - to) % GenomeConstant.BASES_PER_CODON,
+                chromosome);
+            if (stop == CodonPositionIndex.NOT_FOUND) {
+                return;
+            }
+            to = stop - 2;
+            stop = codons.findNextStop(stop, REVERSE, REVERSE);
+        }
+    }
+
+    private void addLocation(List<ProteinLocation> locations, int from, int to, String direction,
+            int frame, String chromosome) {
+        int length = to - from;
+        if (length <= 0 || length / GenomeConstant.BASES_PER_CODON < minimumCodons) {
+            return;
+        }
+        String name = "orf" + (from + 1) + "." + direction + (frame + 1);
+        ProteinLocation location = new ProteinLocation(name, from + 1, length, direction,
+                Integer.toString(frame + 1), null, null, chromosome);
+        location.setOrigin("ORFGenerator");
+        locations.add(location);
+    }
+}
@@ -27,13 +27,19 @@ public class PeptideSequenceGeneratorImpl implements PeptideSequenceGenerator {
     private Genome genome;
     private ProteinToOLNMap proteinOLNMap;
     private File chromosomeDirectory;
-    private FastaParserImpl fastaParser;
+    private FastaParser fastaParser;
 
     public PeptideSequenceGeneratorImpl(Genome genome, ProteinToOLNMap proteinOLNMap, File chromosomeDirectory){ 
         this.genome = genome;
         this.proteinOLNMap = proteinOLNMap;
         this.chromosomeDirectory = chromosomeDirectory;
     }
+
+    public PeptideSequenceGeneratorImpl(Genome genome, ProteinToOLNMap proteinOLNMap, FastaParser fastaParser){ 
+        this.genome = genome;
+        this.proteinOLNMap = proteinOLNMap;
+        this.fastaParser = fastaParser;
+    }
     @Override
     public PeptideSequence getPeptideSequence(
             PeptideSearchResult peptideSearchResult)
@@ -187,14 +193,19 @@ public class PeptideSequenceGeneratorImpl implements PeptideSequenceGenerator {
     }
 
     protected List<NucleotideSequence> extractSequenceParts(GeneInfo gene) throws IOException, FastaParserException {
+        return getSharedFastaParser().extractSequenceParts(gene);
+    }
+
+    // Generators of the same genome share one parser, and its chromosomes
+    private synchronized FastaParser getSharedFastaParser() throws FastaParserException {
         if (fastaParser == null) {
-            fastaParser = new FastaParserImpl(chromosomeDirectory);
+            fastaParser = FastaParserImpl.getSharedParser(chromosomeDirectory);
         }
-        return fastaParser.extractSequenceParts(gene);
+        return fastaParser;
     }
 
     @Override
-    public FastaParser getFastaParser() {
+    public synchronized FastaParser getFastaParser() {
         return fastaParser;
     }
 
@@ -12,12 +12,13 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import au.org.intersect.samifier.domain.CodonPositionIndex;
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.EqualProteinOLNMap;
 import au.org.intersect.samifier.domain.GeneInfo;
 import au.org.intersect.samifier.domain.Genome;
 import au.org.intersect.samifier.domain.GenomeConstant;
-import au.org.intersect.samifier.domain.GenomeNucleotides;
 import au.org.intersect.samifier.domain.PeptideSearchResult;
 import au.org.intersect.samifier.domain.ProteinLocation;
 import au.org.intersect.samifier.domain.ProteinToOLNMap;
@@ -47,8 +48,8 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
 
     private Genome genome;
     private ProteinToOLNMap proteinToOLNMap;
-    private Map<String, GenomeNucleotides> genomeNucleotidesMap = new HashMap<String, GenomeNucleotides>();
     private CodonTranslationTable translationTable;
+    private Map<String, CodonPositionIndex> codonIndexes = new HashMap<String, CodonPositionIndex>();
 
     public VirtualProteinMascotLocationGenerator(String[] searchResultsPaths,
             File translationTableFile, File genomeFile, File chromosomeDir, BigDecimal confidenceScore) {
@@ -65,7 +66,7 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
     public List<ProteinLocation> generateLocations()
             throws LocationGeneratorException {
         try {
-            this.fastaParser = new FastaParserImpl(chromosomeDir);
+            this.fastaParser = FastaParserImpl.getSharedParser(chromosomeDir);
             List<ProteinLocation> locations = doGenerateLocations();
             locations = removeDuplicates(locations);
             locations = mergeProteins(locations);
@@ -127,8 +128,8 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
                 proteinToOLNMap);
         List<PeptideSearchResult> peptideSearchResults = peptideSearchResultsParser
                 .parseResults(searchResultsPaths);
-        translationTable = CodonTranslationTable
-                .parseTableFile(translationTableFile);
+        translationTable = TranslationTableRegistry
+                .getTable(translationTableFile);
 
         for (PeptideSearchResult peptideSearchResult : peptideSearchResults) {
             GeneInfo geneInfo = genome.getGene(peptideSearchResult
@@ -159,9 +160,9 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
                 peptideAbsoluteStop = virtualGeneStop - stopOffset;
             }
 
-            GenomeNucleotides genomeNucleotides = getGenomeNucleotides(geneInfo.getChromosome());
-            int startPosition = searchStart(peptideSearchResult, peptideAbsoluteStart, genomeNucleotides, geneInfo);
-            int stopPosition = searchStop(peptideSearchResult, peptideAbsoluteStop, genomeNucleotides, geneInfo, false);
+            CodonPositionIndex codonIndex = getCodonIndex(geneInfo.getChromosome());
+            int startPosition = searchStart(peptideSearchResult, peptideAbsoluteStart, codonIndex, geneInfo);
+            int stopPosition = searchStop(peptideSearchResult, peptideAbsoluteStop, codonIndex, geneInfo, false);
             if (startPosition == NOT_FOUND || stopPosition == NOT_FOUND) {
                 continue;
             }
@@ -210,72 +211,70 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
         return new ArrayList<ProteinLocation>(uniqueLocation.values());
     }
 
-    private int searchStop(PeptideSearchResult peptideSearchResult, int peptideAbsoluteStart, GenomeNucleotides genomeNucleotides, GeneInfo geneInfo, boolean reverse) {
-        boolean reachedStop = false;
+    private int searchStop(PeptideSearchResult peptideSearchResult, int peptideAbsoluteStart, CodonPositionIndex codonIndex, GeneInfo geneInfo, boolean reverse) {
         int endIterator = peptideAbsoluteStart;
-
         int searchDirection = reverse ? geneInfo.getDirection() * (-1) : geneInfo.getDirection();
-        boolean isStopCodon = translationTable.isStopCodon(genomeNucleotides
-                .codonAt(endIterator, geneInfo.getDirection()));
-
-        while (!reachedStop && !isStopCodon) {
-            endIterator += incrementPosition(searchDirection);
-            reachedStop = reachedEdge(endIterator, searchDirection, genomeNucleotides.getSize());
-            if (!reachedStop) {
-                isStopCodon = translationTable.isStopCodon(genomeNucleotides.codonAt(endIterator, geneInfo.getDirection()));
+        int step = incrementPosition(searchDirection);
+
+        if (!codonIndex.isStop(endIterator, geneInfo.getDirection())) {
+            int edge = firstEdge(endIterator, step, codonIndex.length());
+            int stop = codonIndex.findNextStop(endIterator, geneInfo.getDirection(), searchDirection);
+            if (stop == CodonPositionIndex.NOT_FOUND || (step > 0 ? stop >= edge : stop <= edge)) {
+                LOG.warn("Reached end of sequence without finding stop codon for peptide " + peptideSearchResult.getPeptideSequence());
+                return edge - step;
             }
+            endIterator = stop;
         }
 
-        if (reachedStop && !isStopCodon) {
-            LOG.warn("Reached end of sequence without finding stop codon for peptide " + peptideSearchResult.getPeptideSequence());
-            return endIterator -= incrementPosition(searchDirection);
-        } 
-        
-        if (isStopOnEdge(endIterator, genomeNucleotides)) {
+        if (isStopOnEdge(endIterator, codonIndex.length())) {
             return endIterator;
         }
 
-        return endIterator += incrementPosition(searchDirection);
+        return endIterator + step;
     }
 
-    private int searchStart(PeptideSearchResult peptideSearchResult, int peptideAbsoluteStart, GenomeNucleotides genomeNucleotides, GeneInfo geneInfo) {
+    private int searchStart(PeptideSearchResult peptideSearchResult, int peptideAbsoluteStart, CodonPositionIndex codonIndex, GeneInfo geneInfo) {
         //find last stop and search for start from there ..
-        int previousStop = searchStop(peptideSearchResult, peptideAbsoluteStart, genomeNucleotides, geneInfo, true);
-        boolean reachedStart = false;
-        int startIterator = previousStop;
+        int previousStop = searchStop(peptideSearchResult, peptideAbsoluteStart, codonIndex, geneInfo, true);
         int direction = geneInfo.getDirection();
-        boolean isStartCodon = translationTable.isStartCodon(genomeNucleotides.codonAt(startIterator, direction));
-
-        while (!reachedStart && !isStartCodon) {
-            startIterator += incrementPosition(geneInfo.getDirection());
-            reachedStart = reachedEdge(startIterator, geneInfo.getDirection(), genomeNucleotides.getSize()) || reachedPeptideStart(startIterator, peptideAbsoluteStart, geneInfo.getDirection());
-            if (!reachedStart) {
-                isStartCodon = translationTable.isStartCodon(genomeNucleotides.codonAt(startIterator, direction));
-            }
+        int step = incrementPosition(direction);
+        if (codonIndex.isStart(previousStop, direction)) {
+            return previousStop;
         }
 
-        if (reachedStart && !isStartCodon) {
-            LOG.error("Reached beginning of sequence without finding start codon for peptide "
-                    + peptideSearchResult.getPeptideSequence());
-            if (isStopOnEdge(previousStop, genomeNucleotides)) {
-                return previousStop;
-            } else {
-                return previousStop + (geneInfo.getDirection() * GenomeConstant.BASES_PER_CODON);
-            }
+        // The search ends at the sequence edge or once past the peptide
+        int edge = firstEdge(previousStop, step, codonIndex.length());
+        int pastPeptide = previousStop + step * (Math.max(0, (peptideAbsoluteStart - previousStop) * direction)
+            / GenomeConstant.BASES_PER_CODON + 1);
+        int limit = direction > 0 ? Math.min(edge, pastPeptide) : Math.max(edge, pastPeptide);
+        int start = codonIndex.findNextStart(previousStop, direction, direction);
+        if (start != CodonPositionIndex.NOT_FOUND && (direction > 0 ? start < limit : start > limit)) {
+            return start;
         }
 
-        return startIterator;
+        LOG.error("Reached beginning of sequence without finding start codon for peptide "
+                + peptideSearchResult.getPeptideSequence());
+        if (isStopOnEdge(previousStop, codonIndex.length())) {
+            return previousStop;
+        } else {
+            return previousStop + (geneInfo.getDirection() * GenomeConstant.BASES_PER_CODON);
+        }
     }
-    private boolean reachedPeptideStart(int startIterator, int peptideAbsoluteStart, int direction) {
-        if (direction > 0) {
-            return startIterator > peptideAbsoluteStart;
+
+    // First position + k * step (k >= 1) at which reachedEdge is true
+    private int firstEdge(int position, int step, int size) {
+        int first = position + step;
+        if (reachedEdge(first, step, size)) {
+            return first;
         }
-        return startIterator < peptideAbsoluteStart;
+        int distance = step > 0 ? size - GenomeConstant.BASES_PER_CODON - first : first - GenomeConstant.BASES_PER_CODON;
+        int steps = (distance + GenomeConstant.BASES_PER_CODON - 1) / GenomeConstant.BASES_PER_CODON;
+        return first + steps * step;
     }
 
-    private boolean isStopOnEdge(int previousStop, GenomeNucleotides genomeNucleotides) {
+    private boolean isStopOnEdge(int previousStop, int size) {
         //if (forward) {
-        return ((previousStop <= GenomeConstant.BASES_PER_CODON) || (previousStop >= (genomeNucleotides.getSize() - GenomeConstant.BASES_PER_CODON)));
+        return ((previousStop <= GenomeConstant.BASES_PER_CODON) || (previousStop >= (size - GenomeConstant.BASES_PER_CODON)));
     }
 
     private boolean reachedEdge(int position, int direction, int size) {
@@ -285,12 +284,16 @@ public class VirtualProteinMascotLocationGenerator implements LocationGenerator
         return false;
     }
 
-    private GenomeNucleotides getGenomeNucleotides(String gene)
+    // Built once per chromosome, the sequence itself is kept by the
+    // parser's chromosome cache
+    private CodonPositionIndex getCodonIndex(String chromosome)
             throws FastaParserException, IOException {
-        if (!genomeNucleotidesMap.containsKey(gene)) {
-            genomeNucleotidesMap.put(gene, new GenomeNucleotides(fastaParser.readCode(gene)));
+        CodonPositionIndex codonIndex = codonIndexes.get(chromosome);
+        if (codonIndex == null) {
+            codonIndex = new CodonPositionIndex(fastaParser.readNucleotides(chromosome), translationTable);
+            codonIndexes.put(chromosome, codonIndex);
         }
-        return genomeNucleotidesMap.get(gene);
+        return codonIndex;
     }
 
     private int incrementPosition(int direction) {
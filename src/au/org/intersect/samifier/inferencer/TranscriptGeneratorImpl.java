@@ -26,10 +26,10 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
 
     private static Logger LOG = Logger.getLogger(TranscriptGeneratorImpl.class);
 
-    private StringBuilder genomeString;
+    private CharSequence genomeString;
     private CodonTranslationTable translationTable;
 
-    public TranscriptGeneratorImpl(StringBuilder genomeString, 
+    public TranscriptGeneratorImpl(CharSequence genomeString, 
         CodonTranslationTable translationTable) {
 
         this.genomeString     = genomeString;
@@ -109,12 +109,12 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
         // Account for exons (if any) before and after the middle exon
         if (prevExonIdx > -1) {
             ExonInfo tempMiddleExon = currTranscript.getAllExons().get(prevExonIdx);
-            String startNucSequence = getStartNucSequence(currTranscript, tempMiddleExon);
+            CharSequence startNucSequence = getStartNucSequence(currTranscript, tempMiddleExon);
             startUtrLength = startUtrLength + startNucSequence.length();
         }
 
         if (nextExonIdx < prevTranscript.getAllExons().size()) {
-            String stopNucSequence = getStopNucSequence(prevTranscript, nextExonIdx);
+            CharSequence stopNucSequence = getStopNucSequence(prevTranscript, nextExonIdx);
             stopUtrLength = stopUtrLength + stopNucSequence.length();
         }
 
@@ -135,7 +135,7 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
 
             // Infer the start by translating the nucleotide sequence
             // and calculating the UTR
-            String startNucSequence = getStartNucSequence(currTranscript, middleExon); 
+            CharSequence startNucSequence = getStartNucSequence(currTranscript, middleExon);
             int startUtrLength      = getStartUtrLength(startNucSequence, codingFrame);
             // If we cannot find a start codon, then we
             // assume the translation frame is invalid
@@ -150,7 +150,7 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
 
             // Infer the stop by translating the nucleotide sequence
             // and calculating the UTR
-            String stopNucSequence = getStopNucSequence(currTranscript); 
+            CharSequence stopNucSequence = getStopNucSequence(currTranscript);
             int stopUtrLength      = getStopUtrLength(stopNucSequence);
 
             // Modify our new Transcript based
@@ -165,19 +165,15 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
         }
     }
 
-    private String getStartNucSequence(TranscriptInfo transcript, 
+    private CharSequence getStartNucSequence(TranscriptInfo transcript, 
         ExonInfo middleExon) {
 
         int startExonIdx  = 0;
         int middleExonIdx = transcript.getAllExons().indexOf(middleExon);
-
-        List<String> exonSequences      = transcript.getExonSequences(genomeString);
-        List<String> startExonSequences = exonSequences.subList(startExonIdx, middleExonIdx + 1);
-        String startNucSequence = String.join("", startExonSequences);
-        return startNucSequence;
+        return transcript.getSplicedSequence(genomeString, startExonIdx, middleExonIdx + 1);
     }
 
-    private int getStartUtrLength(String startNucSequence, int codingFrame) 
+    private int getStartUtrLength(CharSequence startNucSequence, int codingFrame) 
             throws TranscriptGeneratorException {
 
         try {
@@ -187,11 +183,11 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
              **********/
             // Remove bases from the end (according to the exon coding frame)
             int stopBases    = startNucSequence.length() - codingFrame;
-            startNucSequence = startNucSequence.substring(0, stopBases);
+            startNucSequence = startNucSequence.subSequence(0, stopBases);
 
             // Remove bases from the beginning (to fit translation)
             int startBases   = startNucSequence.length() % GenomeConstant.BASES_PER_CODON;
-            startNucSequence = startNucSequence.substring(startBases);
+            startNucSequence = startNucSequence.subSequence(startBases, startNucSequence.length());
 
             // Translate the nucleotide sequence
             String startAaSequence    = translationTable.proteinToAminoAcidSequence(startNucSequence);
@@ -310,31 +306,23 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
         return startCodon;
     }
 
-    private String getStopNucSequence(TranscriptInfo transcript) {
+    private CharSequence getStopNucSequence(TranscriptInfo transcript) {
         String startEId    = transcript.getStartCodon().getExonId();
         ExonInfo startExon = transcript.getExon(startEId);
 
         int startExonIdx  = transcript.getAllExons().indexOf(startExon);
         int stopExonIdx   = transcript.getAllExons().size();
-
-        List<String> exonSequences     = transcript.getExonSequences(genomeString);
-        List<String> stopExonSequences = exonSequences.subList(startExonIdx, stopExonIdx);
-        String stopNucSequence = String.join("", stopExonSequences);
-        return stopNucSequence;
+        return transcript.getSplicedSequence(genomeString, startExonIdx, stopExonIdx);
     }
 
-    private String getStopNucSequence(TranscriptInfo transcript,
+    private CharSequence getStopNucSequence(TranscriptInfo transcript,
         int startExonIdx) {
 
         int stopExonIdx = transcript.getAllExons().size();
-
-        List<String> exonSequences     = transcript.getExonSequences(genomeString);
-        List<String> stopExonSequences = exonSequences.subList(startExonIdx, stopExonIdx);
-        String stopNucSequence = String.join("", stopExonSequences);
-        return stopNucSequence;
+        return transcript.getSplicedSequence(genomeString, startExonIdx, stopExonIdx);
     }
 
-    private int getStopUtrLength(String stopNucSequence) 
+    private int getStopUtrLength(CharSequence stopNucSequence) 
             throws TranscriptGeneratorException {
 
         try {
@@ -344,7 +332,7 @@ public class TranscriptGeneratorImpl implements TranscriptGenerator {
              **********/
             // Remove bases from the end (according to the exon coding frame)
             int endBases    = (stopNucSequence.length() % GenomeConstant.BASES_PER_CODON);
-            stopNucSequence = stopNucSequence.substring(0, stopNucSequence.length() - endBases);
+            stopNucSequence = stopNucSequence.subSequence(0, stopNucSequence.length() - endBases);
 
             // Translate the nucleotide sequence
             String stopAaSequence    = translationTable.proteinToAminoAcidSequence(stopNucSequence);
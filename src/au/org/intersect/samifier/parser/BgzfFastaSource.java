@@ -0,0 +1,325 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+
+/**
+ * FASTA file compressed with bgzip (BGZF), read through its .gzi block
+ * index. Only the blocks covering the requested bytes are inflated; large
+ * reads, such as whole chromosome loads, inflate their blocks in parallel.
+ *
+ * The .gzi file is built and saved next to the FASTA file when it is
+ * missing, in the same format as bgzip -i / samtools faidx.
+ */
+public class BgzfFastaSource implements FastaSource {
+    private static Logger LOG = Logger.getLogger(BgzfFastaSource.class);
+    public static final String COMPRESSED_EXTENSION = ".gz";
+    public static final String BLOCK_INDEX_EXTENSION = ".gzi";
+
+    private static final int BLOCK_HEADER_SIZE = 12;
+    private static final int BLOCK_TRAILER_SIZE = 8;
+    private static final int MAX_BLOCK_SIZE = 1 << 16;
+    private static final int PARALLEL_BLOCKS = 4;
+    private static final ExecutorService INFLATERS = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bgzf-inflater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private File fastaFile;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    // Block i covers compressed bytes [compressedOffsets[i], compressedOffsets[i + 1])
+    // and uncompressed bytes [uncompressedOffsets[i], uncompressedOffsets[i + 1])
+    private long[] compressedOffsets;
+    private long[] uncompressedOffsets;
+
+    // Last block inflated for a small read, as region reads tend to hit
+    // the same block several times in a row
+    private int cachedBlock = -1;
+    private byte[] cachedBytes;
+
+    public BgzfFastaSource(File fastaFile) throws IOException {
+        this.fastaFile = fastaFile;
+        file = new RandomAccessFile(fastaFile, "r");
+        channel = file.getChannel();
+        try {
+            loadBlockIndex();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public static boolean isCompressed(File fastaFile) {
+        return fastaFile.getName().toLowerCase().endsWith(COMPRESSED_EXTENSION);
+    }
+
+    public static File getBlockIndexFile(File fastaFile) {
+        return new File(fastaFile.getPath() + BLOCK_INDEX_EXTENSION);
+    }
+
+    @Override
+    public long size() {
+        return uncompressedOffsets[uncompressedOffsets.length - 1];
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position >= size()) {
+            return -1;
+        }
+        long end = Math.min(size(), position + dst.remaining());
+        if (end <= position) {
+            return 0;
+        }
+        int first = findBlock(position);
+        int last  = findBlock(end - 1);
+        byte[][] blocks = inflateBlocks(first, last);
+        for (int block = first; block <= last; block++) {
+            int from = (int) (Math.max(position, uncompressedOffsets[block]) - uncompressedOffsets[block]);
+            int to   = (int) (Math.min(end, uncompressedOffsets[block + 1]) - uncompressedOffsets[block]);
+            dst.put(blocks[block - first], from, to - from);
+        }
+        return (int) (end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    // Index of the block holding the given uncompressed position
+    private int findBlock(long position) {
+        int low  = 0;
+        int high = uncompressedOffsets.length - 2;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (uncompressedOffsets[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private byte[][] inflateBlocks(final int first, int last) throws IOException {
+        final int count = last - first + 1;
+        byte[][] blocks = new byte[count][];
+        if (count == 1) {
+            blocks[0] = getCachedBlock(first);
+            if (blocks[0] != null) {
+                return blocks;
+            }
+        }
+        final byte[] compressed = new byte[(int) (compressedOffsets[last + 1] - compressedOffsets[first])];
+        FastaSequenceLoader.readFully(channel, compressedOffsets[first], compressed);
+        if (count < PARALLEL_BLOCKS) {
+            for (int i = 0; i < count; i++) {
+                blocks[i] = inflateBlock(first + i, compressed, (int) (compressedOffsets[first + i] - compressedOffsets[first]));
+            }
+        } else {
+            List<Future<byte[]>> inflated = new ArrayList<Future<byte[]>>(count);
+            for (int i = 0; i < count; i++) {
+                final int block = first + i;
+                inflated.add(INFLATERS.submit(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        return inflateBlock(block, compressed, (int) (compressedOffsets[block] - compressedOffsets[first]));
+                    }
+                }));
+            }
+            for (int i = 0; i < count; i++) {
+                blocks[i] = getInflated(inflated.get(i));
+            }
+        }
+        if (count == 1) {
+            setCachedBlock(first, blocks[0]);
+        }
+        return blocks;
+    }
+
+    private byte[] getInflated(Future<byte[]> inflated) throws IOException {
+        try {
+            return inflated.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + fastaFile);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not read " + fastaFile + ": " + e.getCause());
+        }
+    }
+
+    private synchronized byte[] getCachedBlock(int block) {
+        return block == cachedBlock ? cachedBytes : null;
+    }
+
+    private synchronized void setCachedBlock(int block, byte[] bytes) {
+        cachedBlock = block;
+        cachedBytes = bytes;
+    }
+
+    private byte[] inflateBlock(int block, byte[] compressed, int offset) throws IOException {
+        int blockSize = (int) (compressedOffsets[block + 1] - compressedOffsets[block]);
+        int dataStart = BLOCK_HEADER_SIZE + readShort(compressed, offset + 10);
+        byte[] bytes = new byte[(int) (uncompressedOffsets[block + 1] - uncompressedOffsets[block])];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed, offset + dataStart, blockSize - dataStart - BLOCK_TRAILER_SIZE);
+            int inflated = 0;
+            while (inflated < bytes.length && !inflater.finished()) {
+                int n = inflater.inflate(bytes, inflated, bytes.length - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != bytes.length) {
+                throw new IOException("Corrupt BGZF block at offset " + compressedOffsets[block] + " of " + fastaFile);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block at offset " + compressedOffsets[block] + " of " + fastaFile);
+        } finally {
+            inflater.end();
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the .gzi index, or builds it from the block headers if it is
+     * missing or older than the FASTA file. The blocks after the last
+     * indexed one are always scanned to find the uncompressed size.
+     */
+    private void loadBlockIndex() throws IOException {
+        List<long[]> blocks = new ArrayList<long[]>();
+        blocks.add(new long[] {0, 0});
+        File indexFile = getBlockIndexFile(fastaFile);
+        boolean indexed = indexFile.exists() && indexFile.lastModified() >= fastaFile.lastModified();
+        if (indexed) {
+            readBlockIndex(indexFile, blocks);
+        } else {
+            LOG.info("Indexing BGZF blocks of " + fastaFile.getName());
+        }
+        long[] lastBlock = blocks.remove(blocks.size() - 1);
+        long fileSize = channel.size();
+        long compressedOffset = lastBlock[0];
+        long uncompressedOffset = lastBlock[1];
+        byte[] header = new byte[BLOCK_HEADER_SIZE];
+        while (compressedOffset < fileSize) {
+            blocks.add(new long[] {compressedOffset, uncompressedOffset});
+            FastaSequenceLoader.readFully(channel, compressedOffset, header);
+            int blockSize = readBlockSize(compressedOffset, header);
+            byte[] trailer = new byte[4];
+            FastaSequenceLoader.readFully(channel, compressedOffset + blockSize - 4, trailer);
+            compressedOffset += blockSize;
+            uncompressedOffset += readInt(trailer, 0) & 0xffffffffL;
+        }
+        blocks.add(new long[] {compressedOffset, uncompressedOffset});
+
+        compressedOffsets   = new long[blocks.size()];
+        uncompressedOffsets = new long[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            compressedOffsets[i]   = blocks.get(i)[0];
+            uncompressedOffsets[i] = blocks.get(i)[1];
+        }
+        if (!indexed) {
+            try {
+                writeBlockIndex(indexFile);
+            } catch (IOException e) {
+                LOG.warn("Could not save BGZF index " + indexFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Size of the block starting at offset, from the BC field of its header
+    private int readBlockSize(long offset, byte[] header) throws IOException {
+        if ((header[0] & 0xff) != 31 || (header[1] & 0xff) != 139 || header[2] != 8 || (header[3] & 4) == 0) {
+            throw new IOException(fastaFile + " is not BGZF compressed, compress it with bgzip");
+        }
+        byte[] extra = new byte[readShort(header, 10)];
+        FastaSequenceLoader.readFully(channel, offset + BLOCK_HEADER_SIZE, extra);
+        int field = 0;
+        while (field + 4 <= extra.length) {
+            int length = readShort(extra, field + 2);
+            if (extra[field] == 66 && extra[field + 1] == 67 && length == 2 && field + 6 <= extra.length) {
+                int blockSize = readShort(extra, field + 4) + 1;
+                if (blockSize > MAX_BLOCK_SIZE) {
+                    break;
+                }
+                return blockSize;
+            }
+            field += 4 + length;
+        }
+        throw new IOException(fastaFile + " is not BGZF compressed, compress it with bgzip");
+    }
+
+    private static void readBlockIndex(File indexFile, List<long[]> blocks) throws IOException {
+        RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+        try {
+            byte[] bytes = new byte[(int) index.length()];
+            index.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            long count = buffer.getLong();
+            if (count < 0 || count * 16 != bytes.length - 8) {
+                throw new EOFException("BGZF index " + indexFile + " is not in the expected format");
+            }
+            for (long i = 0; i < count; i++) {
+                blocks.add(new long[] {buffer.getLong(), buffer.getLong()});
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    // Same layout as bgzip: the number of blocks after the first one, then
+    // their compressed and uncompressed offsets, as little-endian uint64
+    private void writeBlockIndex(File indexFile) throws IOException {
+        int count = compressedOffsets.length - 2;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 16 * count).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(count);
+        for (int i = 1; i <= count; i++) {
+            buffer.putLong(compressedOffsets[i]);
+            buffer.putLong(uncompressedOffsets[i]);
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            output.write(buffer.array());
+        } finally {
+            output.close();
+        }
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | ((bytes[offset + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | (readShort(bytes, offset + 2) << 16);
+    }
+}
@@ -0,0 +1,138 @@
+package au.org.intersect.samifier.parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import au.org.intersect.samifier.domain.PackedNucleotides;
+
+/**
+ * Cache of loaded chromosomes, bounded by the memory the packed sequences
+ * take. Chromosomes not read since they were last considered for eviction
+ * are evicted first (second chance LRU). The most recently added
+ * chromosome is always kept, even when it alone is larger than the budget.
+ *
+ * Lookups do not lock, so the cache can be read by many threads at once.
+ * A single shared instance is used by every FastaParserImpl unless another
+ * cache is given, so a chromosome is loaded at most once per process while
+ * it fits in the budget.
+ */
+public class ChromosomeCache {
+    private static Logger LOG = Logger.getLogger(ChromosomeCache.class);
+
+    // By default a quarter of the heap is used to keep chromosomes around
+    public static final long DEFAULT_MAX_SIZE = Runtime.getRuntime().maxMemory() / 4;
+    private static final ChromosomeCache SHARED_CACHE = new ChromosomeCache(DEFAULT_MAX_SIZE);
+
+    private volatile long maxSize;
+    private long size;
+    private long evictions;
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private ConcurrentHashMap<String, CachedChromosome> chromosomes;
+    // Eviction order, oldest first
+    private Deque<CachedChromosome> evictionQueue;
+
+    public ChromosomeCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.chromosomes = new ConcurrentHashMap<String, CachedChromosome>();
+        this.evictionQueue = new ArrayDeque<CachedChromosome>();
+    }
+
+    public static ChromosomeCache getSharedCache() {
+        return SHARED_CACHE;
+    }
+
+    public PackedNucleotides get(String key) {
+        CachedChromosome chromosome = chromosomes.get(key);
+        if (chromosome == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        chromosome.referenced = true;
+        return chromosome.sequence;
+    }
+
+    public synchronized void put(String key, PackedNucleotides sequence) {
+        CachedChromosome chromosome = new CachedChromosome(key, sequence);
+        CachedChromosome previous = chromosomes.put(key, chromosome);
+        if (previous != null) {
+            size -= previous.sequence.getSizeInBytes();
+        }
+        size += sequence.getSizeInBytes();
+        evictionQueue.addLast(chromosome);
+        evict();
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public synchronized void clear() {
+        chromosomes.clear();
+        evictionQueue.clear();
+        size = 0;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        while (size > maxSize && chromosomes.size() > 1) {
+            CachedChromosome eldest = evictionQueue.pollFirst();
+            if (chromosomes.get(eldest.key) != eldest) {
+                // Replaced by a later put
+                continue;
+            }
+            if (eldest.referenced) {
+                eldest.referenced = false;
+                evictionQueue.addLast(eldest);
+                continue;
+            }
+            LOG.debug("Evicting chromosome " + eldest.key + " from cache");
+            chromosomes.remove(eldest.key);
+            size -= eldest.sequence.getSizeInBytes();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Chromosome cache: " + chromosomes.size() + " chromosomes, " + (size >> 20) + "/"
+            + (maxSize >> 20) + " MB, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    private static class CachedChromosome {
+        private final String key;
+        private final PackedNucleotides sequence;
+        // Set on every read, cleared when the chromosome gets a second chance
+        private volatile boolean referenced = true;
+
+        CachedChromosome(String key, PackedNucleotides sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+}
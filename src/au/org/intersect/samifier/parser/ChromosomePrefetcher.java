@@ -0,0 +1,126 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import au.org.intersect.samifier.domain.PackedNucleotides;
+
+/**
+ * Hands out chromosomes in the order they are processed, loading the next
+ * one on a background thread while the current one is in use.
+ *
+ * At most one chromosome is loaded ahead. The next chromosome is not
+ * prefetched when the current one already takes more than half of the
+ * memory budget, so at most two chromosomes are held at a time.
+ */
+public class ChromosomePrefetcher {
+    private static Logger LOG = Logger.getLogger(ChromosomePrefetcher.class);
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "chromosome-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final FastaParser fastaParser;
+    private final List<String> chromosomes;
+    private final long memoryBudget;
+    // Position in chromosomes of the last chromosome handed out
+    private int position = -1;
+    private String prefetchedChromosome;
+    private Future<PackedNucleotides> prefetched;
+
+    public ChromosomePrefetcher(FastaParser fastaParser, Collection<String> chromosomes) {
+        this(fastaParser, chromosomes, ChromosomeCache.getSharedCache().getMaxSize());
+    }
+
+    public ChromosomePrefetcher(FastaParser fastaParser, Collection<String> chromosomes, long memoryBudget) {
+        this.fastaParser  = fastaParser;
+        this.chromosomes  = new ArrayList<String>(chromosomes);
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the sequence of a chromosome, waiting for it if it is being
+     * prefetched, and starts loading the chromosome that follows it.
+     */
+    public PackedNucleotides get(String chromosome) throws IOException, FastaParserException {
+        if (position + 1 < chromosomes.size() && chromosome.equals(chromosomes.get(position + 1))) {
+            position++;
+        } else {
+            position = chromosomes.indexOf(chromosome);
+        }
+        String nextChromosome = null;
+        if (position >= 0 && position + 1 < chromosomes.size()) {
+            nextChromosome = chromosomes.get(position + 1);
+        }
+        return get(chromosome, nextChromosome);
+    }
+
+    /**
+     * Returns the sequence of a chromosome, waiting for it if it is being
+     * prefetched, and starts loading nextChromosome unless it is null. For
+     * callers that only learn which chromosome comes next as they go.
+     */
+    public PackedNucleotides get(String chromosome, String nextChromosome)
+            throws IOException, FastaParserException {
+        PackedNucleotides sequence;
+        if (prefetched != null && chromosome.equals(prefetchedChromosome)) {
+            sequence = await(chromosome, prefetched);
+        } else {
+            sequence = fastaParser.readNucleotides(chromosome);
+        }
+        prefetched = null;
+        prefetchedChromosome = null;
+
+        if (nextChromosome != null) {
+            if (2 * sequence.getSizeInBytes() <= memoryBudget) {
+                prefetch(nextChromosome);
+            } else {
+                LOG.debug("Not prefetching after chromosome " + chromosome + ", it uses most of the memory budget");
+            }
+        }
+        return sequence;
+    }
+
+    private void prefetch(final String chromosome) {
+        LOG.debug("Prefetching chromosome " + chromosome);
+        prefetchedChromosome = chromosome;
+        prefetched = LOADER.submit(new Callable<PackedNucleotides>() {
+            public PackedNucleotides call() throws IOException, FastaParserException {
+                return fastaParser.readNucleotides(chromosome);
+            }
+        });
+    }
+
+    private PackedNucleotides await(String chromosome, Future<PackedNucleotides> load)
+            throws IOException, FastaParserException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading chromosome " + chromosome);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof FastaParserException) {
+                throw (FastaParserException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * FASTA index in the samtools faidx (.fai) format. Each record holds the
+ * sequence name, its length, the file offset of its first base and the
+ * number of bases/bytes per line, which is enough to seek straight to any
+ * base of the file. For bgzip compressed files the offsets are positions
+ * in the uncompressed file, as with samtools faidx.
+ */
+public class FastaIndex {
+    private static Logger LOG = Logger.getLogger(FastaIndex.class);
+    public static final String INDEX_EXTENSION = ".fai";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Pattern TAB = Pattern.compile("\t");
+
+    private File fastaFile;
+    private Map<String, Entry> entries;
+
+    private FastaIndex(File fastaFile, List<Entry> entryList) {
+        this.fastaFile = fastaFile;
+        this.entries = new LinkedHashMap<String, Entry>();
+        for (Entry entry : entryList) {
+            entries.put(entry.getName(), entry);
+        }
+    }
+
+    /**
+     * Reads the index stored next to the FASTA file, building and saving it
+     * first if it is missing or older than the FASTA file.
+     */
+    public static FastaIndex load(File fastaFile) throws IOException, FastaParserException {
+        FastaIndex index = loadIfPresent(fastaFile);
+        if (index != null) {
+            return index;
+        }
+        File indexFile = getIndexFile(fastaFile);
+        index = build(fastaFile);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            LOG.warn("Could not save FASTA index " + indexFile + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Reads the index stored next to the FASTA file, or returns null if it
+     * is missing or older than the FASTA file.
+     */
+    public static FastaIndex loadIfPresent(File fastaFile) throws IOException, FastaParserException {
+        File indexFile = getIndexFile(fastaFile);
+        if (indexFile.exists() && indexFile.lastModified() >= fastaFile.lastModified()) {
+            return new FastaIndex(fastaFile, readIndexFile(indexFile));
+        }
+        return null;
+    }
+
+    public static File getIndexFile(File fastaFile) {
+        return new File(fastaFile.getPath() + INDEX_EXTENSION);
+    }
+
+    public static FastaIndex build(File fastaFile) throws IOException, FastaParserException {
+        LOG.info("Indexing " + fastaFile.getName());
+        List<Entry> entryList = new ArrayList<Entry>();
+        FastaSource source = FastaSourcePool.open(fastaFile);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] bytes = buffer.array();
+
+            StringBuilder header = null;
+            Entry entry = null;
+            long position = 0;
+            long lineStart = 0;
+            int lineBases = 0;
+            boolean shortLineSeen = false;
+            int read;
+            while ((read = source.read(buffer, position)) != -1) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte b = bytes[i];
+                    if (header != null) {
+                        // Inside a header line
+                        if (b == '\n') {
+                            entry = new Entry(parseName(header), position + 1);
+                            entryList.add(entry);
+                            header = null;
+                            lineStart = position + 1;
+                            lineBases = 0;
+                            shortLineSeen = false;
+                        } else {
+                            header.append((char) b);
+                        }
+                    } else if (b == '>' && position == lineStart) {
+                        header = new StringBuilder();
+                    } else if (b == '\n') {
+                        if (entry == null) {
+                            if (lineBases > 0) {
+                                throw new FastaParserException("Genome file not in FASTA format");
+                            }
+                        } else {
+                            shortLineSeen = endLine(entry, lineBases, (int) (position + 1 - lineStart), shortLineSeen);
+                        }
+                        lineStart = position + 1;
+                        lineBases = 0;
+                    } else if (b != '\r') {
+                        lineBases++;
+                    }
+                }
+                buffer.clear();
+            }
+            if (header != null) {
+                entryList.add(new Entry(parseName(header), position));
+            } else if (entry != null && lineBases > 0) {
+                // Last line without a line feed
+                int lineWidth = entry.lineBases == 0 ? lineBases + 1 : entry.lineWidth;
+                endLine(entry, lineBases, lineWidth, shortLineSeen);
+            } else if (entry == null && lineBases > 0) {
+                throw new FastaParserException("Genome file not in FASTA format");
+            }
+        } finally {
+            source.close();
+        }
+        return new FastaIndex(fastaFile, entryList);
+    }
+
+    // Records a line of sequence and returns whether the record may still
+    // only contain a final (shorter) line
+    private static boolean endLine(Entry entry, int lineBases, int lineWidth, boolean shortLineSeen)
+            throws FastaParserException {
+        if (lineBases == 0) {
+            return true;
+        }
+        if (shortLineSeen) {
+            throw new FastaParserException("Sequence " + entry.getName()
+                + " has lines of different lengths and cannot be indexed");
+        }
+        if (entry.lineBases == 0) {
+            entry.lineBases = lineBases;
+            entry.lineWidth = lineWidth;
+        } else if (lineBases > entry.lineBases || (lineBases == entry.lineBases && lineWidth != entry.lineWidth)) {
+            throw new FastaParserException("Sequence " + entry.getName()
+                + " has lines of different lengths and cannot be indexed");
+        }
+        entry.length += lineBases;
+        return lineBases < entry.lineBases;
+    }
+
+    private static String parseName(CharSequence header) {
+        String line = header.toString().trim();
+        int end = 0;
+        while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        return line.substring(0, end);
+    }
+
+    private static List<Entry> readIndexFile(File indexFile) throws IOException, FastaParserException {
+        List<Entry> entryList = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] parts = TAB.split(line);
+                if (parts.length < 5) {
+                    throw new FastaParserException("FASTA index " + indexFile + " is not in the expected format");
+                }
+                Entry entry = new Entry(parts[0], Long.parseLong(parts[2]));
+                entry.length = Long.parseLong(parts[1]);
+                entry.lineBases = Integer.parseInt(parts[3]);
+                entry.lineWidth = Integer.parseInt(parts[4]);
+                entryList.add(entry);
+            }
+        } catch (NumberFormatException e) {
+            throw new FastaParserException("FASTA index " + indexFile + " is not in the expected format");
+        } finally {
+            reader.close();
+        }
+        return entryList;
+    }
+
+    public void write(File indexFile) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+        try {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.getName() + "\t" + entry.getLength() + "\t" + entry.getOffset()
+                    + "\t" + entry.getLineBases() + "\t" + entry.getLineWidth() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public File getFastaFile() {
+        return fastaFile;
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entries.values()));
+    }
+
+    public static class Entry {
+        private String name;
+        private long length;
+        private long offset;
+        private int lineBases;
+        private int lineWidth;
+
+        public Entry(String name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLineBases() {
+            return lineBases;
+        }
+
+        public int getLineWidth() {
+            return lineWidth;
+        }
+
+        /**
+         * File offset of the given 0-based position in the sequence.
+         */
+        public long getFileOffset(long position) {
+            if (lineBases == 0) {
+                return offset;
+            }
+            return offset + (position / lineBases) * lineWidth + (position % lineBases);
+        }
+    }
+}
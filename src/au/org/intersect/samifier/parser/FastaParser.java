@@ -5,11 +5,15 @@ import java.util.List;
 
 import au.org.intersect.samifier.domain.GeneInfo;
 import au.org.intersect.samifier.domain.NucleotideSequence;
+import au.org.intersect.samifier.domain.PackedNucleotides;
 import au.org.intersect.samifier.domain.TranscriptInfo;
 
 public interface FastaParser {
     int getChromosomeLength(String chromosome);
     List<NucleotideSequence> extractSequenceParts(GeneInfo gene) throws IOException, FastaParserException;
     String readCode(String chromosomeName) throws IOException, FastaParserException;
+    PackedNucleotides readNucleotides(String chromosomeName) throws IOException, FastaParserException;
+    String fetchRegion(String chromosome, int start, int stop, int direction) throws IOException, FastaParserException;
     List <String> scanForChromosomes() throws FastaParserException;
+    void setSequenceValidation(SequenceValidation sequenceValidation);
 }
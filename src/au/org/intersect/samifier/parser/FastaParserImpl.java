@@ -1,22 +1,24 @@
 package au.org.intersect.samifier.parser;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Logger;
 
@@ -24,49 +26,90 @@ import au.org.intersect.samifier.domain.GeneInfo;
 import au.org.intersect.samifier.domain.GeneSequence;
 import au.org.intersect.samifier.domain.GenomeConstant;
 import au.org.intersect.samifier.domain.NucleotideSequence;
+import au.org.intersect.samifier.domain.PackedNucleotides;
+import au.org.intersect.samifier.domain.SequenceView;
 
 public class FastaParserImpl implements FastaParser {
     private static Logger LOG = Logger.getLogger(FastaParserImpl.class);
-    private static final Pattern GENBANK_HEADER = Pattern.compile(">gi\\|\\d*\\|gb\\|(.*)");
     private static final int GENBBANK_ID_POSITION = 3;
-    private static final Pattern EMBL_HEADER = Pattern.compile(">gi\\|\\d*\\|emb\\|(.*)");
     private static final int EMBL_ID_POSITION = 3;
-    private static final Pattern DDBJ_HEADER = Pattern.compile(">gi\\|\\d*\\|dbj\\|(.*)");
     private static final int DDBJ_ID_POSITION = 3;
-    private static final Pattern REFERENCE_HEADER = Pattern.compile(">gi\\|\\d*\\|ref\\|(.*)");
     private static final int REFERENCE_ID_POSITION = 3;
-    private static final Pattern SWISS_PROT_HEADER = Pattern.compile(">sp\\|(.*)");
     private static final int SWISS_PROT_POSITION = 1;
-    private static final Pattern GENERAL_DB_IDENTIFIER_HEADER = Pattern.compile(">gnl\\|(.*)\\|(.*)");
     private static final int GENERAL_DB_IDENTIFIER_POSITION = 2;
-    private static final Pattern NCBI_HEADER = Pattern.compile(">ref\\|(.*)");
     private static final int NCBI_POSITION = 1;
-    private static final Pattern  LOCAL_SEQUENCE_HEADER = Pattern.compile(">lcl\\|(.*)");
     private static final int LOCAL_SEQUENCE_POSITION = 1;
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+    private static final int REGION_BUFFER_SIZE = 4 << 20;
+    // Marks chromosomes that cannot be read through an index, as the
+    // concurrent map cannot hold nulls
+    private static final FastaIndex.Entry NO_INDEX_ENTRY = new FastaIndex.Entry("", 0);
+    private static final ConcurrentMap<File, FastaParserImpl> SHARED_PARSERS = new ConcurrentHashMap<File, FastaParserImpl>();
 
-    private String previousChromosome;
-    private String previousCode;
-    private HashMap<String, Integer> chromosomeLength;
-    private List<String> scannedFilesNames;
+    // A parser can be shared by several threads: chromosomes are loaded once
+    // and published through the cache, lookups of already known chromosomes
+    // and regions do not lock, and scanning or indexing new files is
+    // synchronized on the parser.
+    private String genomePath;
+    private ChromosomeCache chromosomeCache;
+    private ConcurrentMap<String, FutureTask<PackedNucleotides>> loadingChromosomes;
+    private ConcurrentMap<String, Integer> chromosomeLength;
+    private Set<String> scannedFilesNames;
     private Map<String, File> chromosomeToFileName;
-    private Map<String, ContigInfo> chromosomeToContigInfo;
-    private boolean contig;
+    private ConcurrentMap<String, ContigInfo> chromosomeToContigInfo;
+    private Map<File, FastaIndex> fastaIndexes;
+    private ConcurrentMap<String, FastaIndex.Entry> chromosomeToIndexEntry;
+    private FastaSourcePool sourcePool;
+    private volatile boolean contig;
+    private volatile SequenceValidation sequenceValidation = SequenceValidation.WARN;
     public static final Pattern ALLOWED_CHARS_IN_FASTA_SEQUENCE = Pattern.compile("[^ACGT]");
+
+    /**
+     * Returns the parser shared by every caller reading the given genome
+     * file or directory, creating it on first use.
+     */
+    public static FastaParserImpl getSharedParser(File genome) throws FastaParserException {
+        File key = genome.getAbsoluteFile();
+        FastaParserImpl parser = SHARED_PARSERS.get(key);
+        if (parser == null) {
+            synchronized (SHARED_PARSERS) {
+                parser = SHARED_PARSERS.get(key);
+                if (parser == null) {
+                    parser = new FastaParserImpl(key);
+                    SHARED_PARSERS.put(key, parser);
+                }
+            }
+        }
+        return parser;
+    }
+
     public FastaParserImpl(File chromosome) throws FastaParserException {
+        this(chromosome, ChromosomeCache.getSharedCache());
+    }
+
+    public FastaParserImpl(File chromosome, ChromosomeCache chromosomeCache) throws FastaParserException {
         contig = false;
-        chromosomeLength = new HashMap<String, Integer>();
-        scannedFilesNames = new ArrayList<String>();
+        genomePath = chromosome.getAbsolutePath();
+        this.chromosomeCache = chromosomeCache;
+        loadingChromosomes = new ConcurrentHashMap<String, FutureTask<PackedNucleotides>>();
+        chromosomeLength = new ConcurrentHashMap<String, Integer>();
+        scannedFilesNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         chromosomeToFileName = new HashMap<String, File>();
-        chromosomeToContigInfo = new HashMap<String, ContigInfo>();
+        chromosomeToContigInfo = new ConcurrentHashMap<String, ContigInfo>();
+        fastaIndexes = new HashMap<File, FastaIndex>();
+        chromosomeToIndexEntry = new ConcurrentHashMap<String, FastaIndex.Entry>();
+        sourcePool = new FastaSourcePool();
         if (chromosome.isDirectory()) {
             //build a list of fa and faa files
             File[] files = chromosome.listFiles(new FilenameFilter() {
                 public boolean accept(File dir, String name) {
-                    return name.toLowerCase().endsWith(".fa") || name.toLowerCase().endsWith(".faa");
+                    String lowerName = name.toLowerCase();
+                    return lowerName.endsWith(".fa") || lowerName.endsWith(".faa")
+                        || lowerName.endsWith(".fa.gz") || lowerName.endsWith(".faa.gz");
                 }
             });
             for (File fastaFile : files) {
-                chromosomeToFileName.put(FilenameUtils.removeExtension(fastaFile.getName()), fastaFile);
+                chromosomeToFileName.put(getChromosomeName(fastaFile), fastaFile);
             }
         } else {
             //check for contig in file
@@ -74,7 +117,7 @@ public class FastaParserImpl implements FastaParser {
                 contig = true;
             } else {
                 LOG.info("File name " + chromosome.getName() + " will be used as chromosome name");
-                chromosomeToFileName.put(FilenameUtils.getBaseName(chromosome.getName()), chromosome);
+                chromosomeToFileName.put(getChromosomeName(chromosome), chromosome);
             }
         }
     }
@@ -84,7 +127,7 @@ public class FastaParserImpl implements FastaParser {
     public List<NucleotideSequence> extractSequenceParts(GeneInfo gene) throws IOException, FastaParserException {
         List<NucleotideSequence> parts = new ArrayList<NucleotideSequence>();
         List<GeneSequence> locations = gene.getLocations();
-        String code = readCode(gene.getChromosome());
+        long codeLength = getRegionLimit(gene.getChromosome());
         for (GeneSequence location : locations) {
             // GFF (GenomeParserImpl) files use 1-based indices
             int startIndex = location.getStart() - 1;
@@ -94,16 +137,10 @@ public class FastaParserImpl implements FastaParser {
                 parts.add(new NucleotideSequence(null, GeneSequence.INTRON, location.getStart(), location.getStop()));
                 continue;
             }
-            if (code.length() < startIndex || code.length() < stopIndex) {
+            if (codeLength < startIndex || codeLength < stopIndex) {
                 continue;
             }
-            StringBuilder sequence = new StringBuilder(code.substring(startIndex, stopIndex));
-            String sequenceString;
-            if (gene.isForward()) {
-                sequenceString = sequence.toString();
-            } else {
-                sequenceString = StringUtils.replaceChars(sequence.reverse().toString(), "ACGT", "TGCA");
-            }
+            String sequenceString = fetchRegion(gene.getChromosome(), location.getStart(), location.getStop(), gene.getDirection());
             parts.add(new NucleotideSequence(sequenceString, GeneSequence.CODING_SEQUENCE, location.getStart(), location.getStop()));
         }
         if (GenomeConstant.REVERSE_FLAG.equals(gene.getDirectionStr())) {
@@ -112,80 +149,355 @@ public class FastaParserImpl implements FastaParser {
 
         return parts;
     }
+    /**
+     * Returns the bases from start to stop (1-based, inclusive). Reverse
+     * strand regions (direction < 0) are reverse complemented. Only the
+     * bytes covering the region are read from the FASTA file.
+     */
+    @Override
+    public String fetchRegion(String chromosome, int start, int stop, int direction)
+            throws IOException, FastaParserException {
+        String sequence;
+        FastaIndex.Entry entry = findIndexEntry(chromosome);
+        if (entry == null) {
+            sequence = readNucleotides(chromosome).substring(start - 1, stop);
+        } else {
+            sequence = readRegion(chromosomeToFile(chromosome), entry, start - 1, stop);
+        }
+        if (direction < 0) {
+            sequence = SequenceView.reverseComplement(sequence).toString();
+        }
+        return sequence;
+    }
+
+    private String readRegion(File fastaFile, FastaIndex.Entry entry, long start, long stop)
+            throws IOException, FastaParserException {
+        if (start < 0 || stop > entry.getLength() || start > stop) {
+            throw new FastaParserException("Region " + (start + 1) + "-" + stop + " is outside of sequence " + entry.getName());
+        }
+        if (stop - start > PackedNucleotides.MAX_LENGTH) {
+            throw new FastaParserException("Region " + (start + 1) + "-" + stop + " of sequence " + entry.getName()
+                + " is longer than " + PackedNucleotides.MAX_LENGTH + " bases");
+        }
+        FastaSource source = sourcePool.borrow(fastaFile);
+        try {
+            long firstByte = entry.getFileOffset(start);
+            long lastByte  = stop == start ? firstByte : entry.getFileOffset(stop - 1) + 1;
+            // Read through a bounded buffer, as with line breaks the region can
+            // span more bytes than fit in an array
+            byte[] buffer  = new byte[(int) Math.min(REGION_BUFFER_SIZE, lastByte - firstByte)];
+            char[] bases = new char[(int) (stop - start)];
+            int length = 0;
+            for (long position = firstByte; position < lastByte; ) {
+                int count = (int) Math.min(buffer.length, lastByte - position);
+                FastaSequenceLoader.readFully(source, position, buffer, count);
+                for (int i = 0; i < count; i++) {
+                    byte b = buffer[i];
+                    if (b != '\r' && b != '\n') {
+                        bases[length++] = (char) (b & 0xff);
+                    }
+                }
+                position += count;
+            }
+            return new String(bases, 0, length);
+        } finally {
+            source.close();
+        }
+    }
+
+    // Upper bound used to skip gene locations outside of the chromosome
+    private long getRegionLimit(String chromosome) throws IOException, FastaParserException {
+        FastaIndex.Entry entry = findIndexEntry(chromosome);
+        if (entry != null) {
+            return entry.getLength();
+        }
+        return readNucleotides(chromosome).length();
+    }
+
+    // The index of a FASTA file if it was loaded or is saved next to the file
+    private synchronized FastaIndex getExistingFastaIndex(File fastaFile) throws IOException {
+        if (!fastaIndexes.containsKey(fastaFile)) {
+            try {
+                FastaIndex index = FastaIndex.loadIfPresent(fastaFile);
+                if (index != null) {
+                    fastaIndexes.put(fastaFile, index);
+                }
+                return index;
+            } catch (FastaParserException e) {
+                LOG.warn(e.getMessage() + ". Whole sequences will be read from " + fastaFile.getName());
+                return null;
+            }
+        }
+        return fastaIndexes.get(fastaFile);
+    }
+
+    /**
+     * Looks up the faidx record of a chromosome, building the index of its
+     * FASTA file on first use. Returns null when the chromosome can not be
+     * read through an index (e.g. lines of uneven length).
+     */
+    private FastaIndex.Entry findIndexEntry(String chromosome) throws IOException, FastaParserException {
+        FastaIndex.Entry known = chromosomeToIndexEntry.get(chromosome);
+        if (known != null) {
+            return known == NO_INDEX_ENTRY ? null : known;
+        }
+        return findNewIndexEntry(chromosome);
+    }
+
+    private synchronized FastaIndex.Entry findNewIndexEntry(String chromosome) throws IOException, FastaParserException {
+        if (chromosomeToIndexEntry.containsKey(chromosome)) {
+            FastaIndex.Entry known = chromosomeToIndexEntry.get(chromosome);
+            return known == NO_INDEX_ENTRY ? null : known;
+        }
+        File fastaFile = chromosomeToFile(chromosome);
+        if (fastaFile == null) {
+            return null;
+        }
+        FastaIndex.Entry entry = null;
+        FastaIndex index = getFastaIndex(fastaFile);
+        if (index != null && !index.getEntries().isEmpty()) {
+            if (chromosomeToContigInfo.containsKey(chromosome)) {
+                // Map every contig of the file at once, rather than walking
+                // the index for each contig
+                for (FastaIndex.Entry candidate : index.getEntries()) {
+                    String name = parseHeader(">" + candidate.getName());
+                    if (name != null && !chromosomeToIndexEntry.containsKey(name)
+                            && chromosomeToContigInfo.containsKey(name)
+                            && fastaFile.equals(chromosomeToContigInfo.get(name).getFastaFile())) {
+                        chromosomeToIndexEntry.put(name, candidate);
+                    }
+                }
+                entry = chromosomeToIndexEntry.get(chromosome);
+            } else if (index.getEntries().size() == 1) {
+                // One chromosome per file, named after the file
+                entry = index.getEntries().get(0);
+            }
+        }
+        chromosomeToIndexEntry.put(chromosome, entry == null ? NO_INDEX_ENTRY : entry);
+        return entry;
+    }
+
+    private File chromosomeToFile(String chromosome) {
+        if (chromosomeToFileName.containsKey(chromosome)) {
+            return chromosomeToFileName.get(chromosome);
+        } else if (chromosomeToContigInfo.containsKey(chromosome)) {
+            return chromosomeToContigInfo.get(chromosome).getFastaFile();
+        }
+        return null;
+    }
+
+    private synchronized FastaIndex getFastaIndex(File fastaFile) throws IOException {
+        if (!fastaIndexes.containsKey(fastaFile)) {
+            FastaIndex index = null;
+            try {
+                index = FastaIndex.load(fastaFile);
+            } catch (FastaParserException e) {
+                LOG.warn(e.getMessage() + ". Whole sequences will be read from " + fastaFile.getName());
+            }
+            fastaIndexes.put(fastaFile, index);
+        }
+        return fastaIndexes.get(fastaFile);
+    }
+
+    /**
+     * Returns the length of a chromosome from the FASTA index when possible,
+     * so the sequence is only loaded for files that cannot be indexed.
+     * Lengths are kept for later calls.
+     */
     @Override
     public int getChromosomeLength(String chromosome) {
         if (!chromosomeLength.containsKey(chromosome)) {
             try {
-                readCode(chromosome);
+                FastaIndex.Entry entry = findIndexEntry(chromosome);
+                if (entry == null && chromosomeToFile(chromosome) == null && scanFor(chromosome)) {
+                    entry = findIndexEntry(chromosome);
+                }
+                if (entry != null && entry.getLength() <= Integer.MAX_VALUE) {
+                    chromosomeLength.put(chromosome, (int) entry.getLength());
+                } else {
+                    // The sequence may come from a cache shared with other parsers
+                    chromosomeLength.put(chromosome, readNucleotides(chromosome).length());
+                }
             } catch (IOException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                throw new IllegalStateException("Could not read the length of " + chromosome + ": " + e.getMessage(), e);
             } catch (FastaParserException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                throw new IllegalStateException("Could not read the length of " + chromosome + ": " + e.getMessage(), e);
             }
         }
         return chromosomeLength.get(chromosome);
     }
 
-    private boolean checkForContig(File fastaFile) throws FastaParserException {
-        boolean contig = false;
-        RandomAccessFile reader = null;
+    /**
+     * Scans a FASTA file for sequences with supported headers, recording
+     * where each one starts and ends. The file is read once through a large
+     * buffer, so files with hundreds of thousands of contigs are scanned at
+     * disk speed.
+     */
+    private synchronized boolean checkForContig(File fastaFile) throws FastaParserException {
         try {
-            reader = new RandomAccessFile(fastaFile, "r");
-            // parse header
-            String line = reader.readLine();
-            if (!line.startsWith(">")) {
-                throw new FastaParserException("Genome file not in FASTA format");
+            FastaSource source = sourcePool.borrow(fastaFile);
+            try {
+                return scanContigs(fastaFile, source);
+            } finally {
+                source.close();
             }
-            /*if (! multipleHeaderLines(fastaFile)) {
-                return false;
-            }*/
-            String chromosomeName = parseHeader(line);
-            if (chromosomeName == null) {
+        } catch (IOException e){
+            throw new FastaParserException(e.getMessage());
+        }
+    }
+
+    private boolean scanContigs(File fastaFile, FastaSource source) throws IOException, FastaParserException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        StringBuilder header = new StringBuilder();
+        String chromosomeName = null;
+        ContigInfo info = null;
+        boolean inHeader = false;
+        boolean lineStart = true;
+        long headerStart = 0;
+        long position = 0;
+        int read;
+        while ((read = source.read(buffer, position)) != -1) {
+            for (int i = 0; i < read; i++, position++) {
+                byte b = bytes[i];
+                if (inHeader) {
+                    if (b == '\n') {
+                        inHeader = false;
+                        if (info == null) {
+                            chromosomeName = parseHeader(header.toString());
+                            if (chromosomeName == null) {
+                                return false;
+                            }
+                        } else {
+                            info.setEndOffset(headerStart);
+                            putContigInfo(chromosomeName, info);
+                            chromosomeName = parseHeader(header.toString());
+                        }
+                        info = new ContigInfo(fastaFile, position + 1);
+                    } else if (b != '\r') {
+                        header.append((char) (b & 0xff));
+                    }
+                } else if (b == '>' && lineStart) {
+                    inHeader = true;
+                    headerStart = position;
+                    header.setLength(0);
+                    header.append('>');
+                } else if (position == 0) {
+                    throw new FastaParserException("Genome file not in FASTA format");
+                }
+                lineStart = b == '\n';
+            }
+            buffer.clear();
+        }
+        if (position == 0) {
+            throw new FastaParserException("Genome file not in FASTA format");
+        }
+        if (inHeader) {
+            // Header on the last line, without a line feed
+            if (info != null) {
+                info.setEndOffset(headerStart);
+                putContigInfo(chromosomeName, info);
+            }
+            chromosomeName = parseHeader(header.toString());
+            if (chromosomeName == null && info == null) {
                 return false;
             }
-            ContigInfo info = new ContigInfo(fastaFile, reader.getFilePointer());
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith(">")) {
-                    info.setEndOffset(reader.getFilePointer() - line.length() - 1);
-                    chromosomeToContigInfo.put(chromosomeName, info);
-                    contig = true;
-                    chromosomeName = parseHeader(line);
-                    info = new ContigInfo(fastaFile, reader.getFilePointer());
+            info = new ContigInfo(fastaFile, position);
+        }
+        info.setEndOffset(position);
+        putContigInfo(chromosomeName, info);
+        scannedFilesNames.add(fastaFile.getName());
+        return true;
+    }
+
+    public String readCode(String chromosomeName) throws IOException, FastaParserException {
+        return readNucleotides(chromosomeName).toString();
+    }
+
+    public PackedNucleotides readNucleotides(final String chromosomeName) throws IOException, FastaParserException {
+        // Cache keys include the genome path, as the cache may be shared by
+        // parsers reading different genomes
+        final String cacheKey = genomePath + File.pathSeparator + chromosomeName;
+        PackedNucleotides code = chromosomeCache.get(cacheKey);
+        if (code != null) {
+            return code;
+        }
+        // Threads asking for the same chromosome wait for a single load
+        FutureTask<PackedNucleotides> load = new FutureTask<PackedNucleotides>(new Callable<PackedNucleotides>() {
+            public PackedNucleotides call() throws IOException, FastaParserException {
+                PackedNucleotides loaded = chromosomeCache.get(cacheKey);
+                if (loaded == null) {
+                    LOG.debug("Loading chromosome " + chromosomeName);
+                    loaded = readCodeFromFile(chromosomeName);
+                    validate(chromosomeName, loaded);
+                    chromosomeLength.put(chromosomeName, loaded.length());
+                    chromosomeCache.put(cacheKey, loaded);
                 }
+                return loaded;
+            }
+        });
+        FutureTask<PackedNucleotides> running = loadingChromosomes.putIfAbsent(chromosomeName, load);
+        if (running == null) {
+            running = load;
+            load.run();
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading chromosome " + chromosomeName);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof FastaParserException) {
+                throw (FastaParserException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } finally {
+            if (running == load) {
+                loadingChromosomes.remove(chromosomeName, load);
             }
-            info.setEndOffset(reader.getFilePointer() + 1);
-            chromosomeToContigInfo.put(chromosomeName, info);
-            contig = true;
-            reader.close();
-            scannedFilesNames.add(fastaFile.getName());
-            return contig;
-        } catch (IOException e){
-            throw new FastaParserException(e.getMessage());
         }
     }
 
-    public String readCode(String chromosomeName) throws IOException, FastaParserException {
-        String code;
-        if (previousChromosome != null
-                && previousChromosome.equals(chromosomeName)) {
-            code = previousCode;
-        } else {
-            code = readCodeFromFile(chromosomeName);
-            chromosomeLength.put(chromosomeName , code.length());
-            previousChromosome = chromosomeName;
-            previousCode = code;
+    // Checks the characters of a loaded chromosome, using the base counts
+    // kept by the packed sequence rather than another pass over it
+    private void validate(String chromosomeName, PackedNucleotides code) throws FastaParserException {
+        if (sequenceValidation == SequenceValidation.IGNORE) {
+            return;
         }
-        return code;
+        PackedNucleotides.BaseCounts counts = code.getBaseCounts();
+        LOG.info("Chromosome " + chromosomeName + ": " + counts);
+        if (counts.getInvalid() > 0) {
+            String message = "Chromosome " + chromosomeName + " has " + counts.getInvalid()
+                + " characters that are not nucleotides, the first one is '" + counts.getFirstInvalidChar()
+                + "' at position " + (counts.getFirstInvalidPosition() + 1);
+            if (sequenceValidation == SequenceValidation.STRICT) {
+                throw new FastaParserException(message);
+            }
+            LOG.warn(message);
+        }
+    }
+
+    public SequenceValidation getSequenceValidation() {
+        return sequenceValidation;
+    }
+
+    @Override
+    public void setSequenceValidation(SequenceValidation sequenceValidation) {
+        this.sequenceValidation = sequenceValidation;
+    }
+
+    public ChromosomeCache getChromosomeCache() {
+        return chromosomeCache;
     }
 
-    public List<String> scanForChromosomes() throws FastaParserException {
+    public synchronized List<String> scanForChromosomes() throws FastaParserException {
         if (contig) {
             if (scannedFilesNames.size() < chromosomeToFileName.values().size()) {
-                List<File> fileNames = new ArrayList<File>(chromosomeToFileName.values());
-                fileNames.removeAll(scannedFilesNames);
-                for (File file : fileNames) {
+                for (File file : getUnscannedFiles()) {
                     checkForContig(file);
                 }
             }
@@ -195,21 +507,54 @@ public class FastaParserImpl implements FastaParser {
         }
     }
 
-    private String readCodeFromFile(String chromosomeName) throws FastaParserException, IOException {
+    // File name without the FASTA (and .gz) extension
+    private static String getChromosomeName(File fastaFile) {
+        String name = fastaFile.getName();
+        if (BgzfFastaSource.isCompressed(fastaFile)) {
+            name = name.substring(0, name.length() - BgzfFastaSource.COMPRESSED_EXTENSION.length());
+        }
+        return FilenameUtils.removeExtension(name);
+    }
+
+    private void putContigInfo(String chromosomeName, ContigInfo info) {
+        if (chromosomeName == null) {
+            LOG.warn("Skipping sequence without a supported header in " + info.getFastaFile().getName());
+            return;
+        }
+        chromosomeToContigInfo.put(chromosomeName, info);
+    }
+
+    // Scans the files not scanned yet until the chromosome is found
+    private synchronized boolean scanFor(String chromosome) throws FastaParserException {
+        for (File file : getUnscannedFiles()) {
+            if (checkForContig(file)) {
+                contig = true;
+            }
+            if (chromosomeToContigInfo.containsKey(chromosome)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<File> getUnscannedFiles() {
+        List<File> files = new ArrayList<File>();
+        for (File file : chromosomeToFileName.values()) {
+            if (!scannedFilesNames.contains(file.getName())) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private PackedNucleotides readCodeFromFile(String chromosomeName) throws FastaParserException, IOException {
         if (chromosomeToFileName.containsKey(chromosomeName)) {
             return readFromSingleFast(chromosomeToFileName.get(chromosomeName));
         } else if (chromosomeToContigInfo.containsKey(chromosomeName)) {
             return readFromContigFile(chromosomeName);
         } else if (scannedFilesNames.size() < chromosomeToFileName.values().size()) {
-            List<File> fileNames = new ArrayList<File>(chromosomeToFileName.values());
-            fileNames.removeAll(scannedFilesNames);
-            for (File file : fileNames) {
-                if (checkForContig(file)) {
-                    contig = true;
-                }
-                if (chromosomeToContigInfo.containsKey(chromosomeName)) {
-                    return readFromContigFile(chromosomeName);
-                }
+            if (scanFor(chromosomeName)) {
+                return readFromContigFile(chromosomeName);
             }
             throw new FileNotFoundException("Can't find fasta file for chromosome: " + chromosomeName);
         } else if (!contig) {
@@ -223,100 +568,110 @@ public class FastaParserImpl implements FastaParser {
         return null;
     }
 
-    private String readFromSingleFast(File chromosomeFile) throws IOException, FastaParserException {
-        BufferedReader reader = null;
+    private PackedNucleotides readFromSingleFast(File chromosomeFile) throws IOException, FastaParserException {
+        FastaSource source = sourcePool.borrow(chromosomeFile);
         try {
-            reader = new BufferedReader(new FileReader(chromosomeFile));
-            // Skip header of FASTA file
-            String line = reader.readLine();
-            if (!line.startsWith(">")) {
-                throw new FastaParserException("Genome file not in FASTA format");
-            }
-            StringBuffer buffer = new StringBuffer();
-            while ((line = reader.readLine()) != null) {
-                buffer.append(line);
+            long start;
+            long expectedLength;
+            // Building a missing index would read the file twice
+            FastaIndex index = getExistingFastaIndex(chromosomeFile);
+            if (index != null && index.getEntries().size() == 1) {
+                FastaIndex.Entry entry = index.getEntries().get(0);
+                checkLength(entry);
+                start = entry.getOffset();
+                expectedLength = entry.getLength();
+            } else {
+                // Skip header of FASTA file
+                start = FastaSequenceLoader.findSequenceStart(source);
+                expectedLength = source.size() - start;
             }
-            reader.close();
-            return cleanCode(buffer.toString());
+            return FastaSequenceLoader.load(source, start, source.size(), expectedLength);
         } finally {
-            reader.close();
-        }
-    }
-
-    private String cleanCode(String fastCode) throws FastaParserException {
-        String clean = fastCode.replace("\r", "").replace("\n", "");
-        /*Matcher matcher = ALLOWED_CHARS_IN_FASTA_SEQUENCE.matcher(clean);
-        if (matcher.find()) {
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            System.err.println(clean);
-            System.err.println(matcher.group(0));
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            System.err.println("@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@@");
-            throw new FastaParserException("Illegal chars in FASTA sequence");
-        }*/
-        return clean;
-    }
-    private String readFromContigFile(String chromosome) throws IOException, FastaParserException{
+            source.close();
+        }
+    }
+
+    private PackedNucleotides readFromContigFile(String chromosome) throws IOException, FastaParserException{
         ContigInfo contigInfo = chromosomeToContigInfo.get(chromosome);
-        byte[] buffer = new byte[(int) (contigInfo.endOffset - contigInfo.startOffset -1)];
-        RandomAccessFile reader = null;
+        FastaSource source = sourcePool.borrow(contigInfo.getFastaFile());
         try {
-            reader = new RandomAccessFile(contigInfo.getFastaFile(), "r");
-            reader.seek(contigInfo.startOffset);
-            int read = reader.read(buffer);
-            if (read != buffer.length) {
+            if (contigInfo.getEndOffset() > source.size()) {
                 throw new FastaParserException("Wrong sequence for chromosome: " + chromosome);
             }
+            FastaIndex.Entry entry = findIndexEntry(chromosome);
+            if (entry != null) {
+                checkLength(entry);
+            }
+            long expectedLength = entry != null ? entry.getLength() : contigInfo.getEndOffset() - contigInfo.getStartOffset();
+            return FastaSequenceLoader.load(source, contigInfo.getStartOffset(), contigInfo.getEndOffset(), expectedLength);
         } finally {
-            reader.close();
+            source.close();
         }
-        return  cleanCode(new String(buffer));
     }
 
-    protected String parseHeader(String line) throws FastaParserException {
-        Matcher matcher = GENBANK_HEADER.matcher(line);
-        if (matcher.matches()) {
-            return extractName(line, GENBBANK_ID_POSITION);
+    // Fails before loading anything when the index shows the sequence is too long
+    private void checkLength(FastaIndex.Entry entry) throws FastaParserException {
+        if (entry.getLength() > PackedNucleotides.MAX_LENGTH) {
+            throw new FastaParserException("Sequence " + entry.getName() + " has " + entry.getLength()
+                + " bases, only sequences of up to " + PackedNucleotides.MAX_LENGTH + " bases are supported");
         }
-        matcher = EMBL_HEADER.matcher(line);
-        if (matcher.matches()) {
-            return extractName(line, EMBL_ID_POSITION);
-        }
-        matcher = DDBJ_HEADER.matcher(line);
-        if (matcher.matches()) {
-            return extractName(line, DDBJ_ID_POSITION);
-        }
-        matcher = SWISS_PROT_HEADER.matcher(line);
-        if (matcher.matches()) {
+    }
+
+    /**
+     * Returns the sequence id of a header in one of the supported NCBI
+     * formats, or null for a plain header. Headers are classified by their
+     * prefix, as this is done for every sequence of a contig file.
+     */
+    protected String parseHeader(String line) throws FastaParserException {
+        if (line.startsWith(">gi|")) {
+            int pos = 4;
+            while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+                pos++;
+            }
+            if (line.startsWith("|gb|", pos)) {
+                return extractName(line, GENBBANK_ID_POSITION);
+            } else if (line.startsWith("|emb|", pos)) {
+                return extractName(line, EMBL_ID_POSITION);
+            } else if (line.startsWith("|dbj|", pos)) {
+                return extractName(line, DDBJ_ID_POSITION);
+            } else if (line.startsWith("|ref|", pos)) {
+                return extractName(line, REFERENCE_ID_POSITION);
+            }
+        } else if (line.startsWith(">sp|")) {
             return extractName(line, SWISS_PROT_POSITION);
-        }
-        matcher = GENERAL_DB_IDENTIFIER_HEADER.matcher(line);
-        if (matcher.matches()) {
+        } else if (line.startsWith(">gnl|") && line.indexOf('|', 5) >= 0) {
             return extractName(line, GENERAL_DB_IDENTIFIER_POSITION);
-        }
-        matcher = NCBI_HEADER.matcher(line);
-        if (matcher.matches()) {
+        } else if (line.startsWith(">ref|")) {
             return extractName(line, NCBI_POSITION);
-        }
-        matcher = LOCAL_SEQUENCE_HEADER.matcher(line);
-        if (matcher.matches()) {
+        } else if (line.startsWith(">lcl|")) {
             return extractName(line, LOCAL_SEQUENCE_POSITION);
         }
-        matcher = REFERENCE_HEADER.matcher(line);
-        if (matcher.matches()) {
-            return extractName(line, REFERENCE_ID_POSITION);
-        }
-        if (line.contains("|")) {
+        if (line.indexOf('|') >= 0) {
             throw new FastaParserException(line + " is not supported FASTA header.");
         }
         return null;
     }
+
+    // Field idPosition of the '|' separated header, up to the first white space
     private String extractName(String line, int idPosition) {
-        String name = line.split("\\|")[idPosition];
-        return name.split("\\s")[0];
+        int start = 0;
+        for (int i = 0; i < idPosition && start >= 0; i++) {
+            start = line.indexOf('|', start);
+            start = start < 0 ? -1 : start + 1;
+        }
+        if (start < 0) {
+            return "";
+        }
+        int end = start;
+        while (end < line.length() && line.charAt(end) != '|' && !isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        return line.substring(start, end);
+    }
+
+    // Same characters as \\s in a regular expression
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     private class ContigInfo {
@@ -0,0 +1,136 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import au.org.intersect.samifier.domain.PackedNucleotides;
+
+/**
+ * Loads a sequence from a FASTA file in a single pass. The file is read
+ * through a large NIO buffer (inflating BGZF blocks in parallel for
+ * compressed files) and every line is packed straight into the
+ * final sequence, so no intermediate String copies of the chromosome are
+ * made.
+ */
+public final class FastaSequenceLoader {
+    private static final int BUFFER_SIZE = 4 << 20;
+
+    private FastaSequenceLoader() {
+    }
+
+    /**
+     * Offset of the first byte after the header line of the file.
+     */
+    public static long findSequenceStart(FastaSource source) throws IOException, FastaParserException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        byte[] bytes = buffer.array();
+        long position = 0;
+        int read;
+        while ((read = source.read(buffer, position)) != -1) {
+            for (int i = 0; i < read; i++, position++) {
+                if (position == 0 && bytes[i] != '>') {
+                    throw new FastaParserException("Genome file not in FASTA format");
+                }
+                if (bytes[i] == '\n') {
+                    return position + 1;
+                }
+            }
+            buffer.clear();
+        }
+        if (position == 0) {
+            throw new FastaParserException("Genome file not in FASTA format");
+        }
+        return position;
+    }
+
+    /**
+     * Packs the bytes in [start, end) of the file, skipping line breaks.
+     * expectedLength is only used to size the sequence up front. Fails if
+     * the sequence is longer than PackedNucleotides.MAX_LENGTH.
+     */
+    public static PackedNucleotides load(FastaSource source, long start, long end, long expectedLength)
+            throws IOException, FastaParserException {
+        PackedNucleotides.Builder builder =
+            new PackedNucleotides.Builder((int) Math.min(PackedNucleotides.MAX_LENGTH, expectedLength));
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(BUFFER_SIZE, end - start)));
+        byte[] bytes = buffer.array();
+        long position = start;
+        while (position < end) {
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = source.read(buffer, position);
+            if (read == -1) {
+                break;
+            }
+            if (read > PackedNucleotides.MAX_LENGTH - builder.length()
+                    && countBases(bytes, read) > PackedNucleotides.MAX_LENGTH - builder.length()) {
+                throw new FastaParserException("Sequence longer than " + PackedNucleotides.MAX_LENGTH
+                    + " bases at file offset " + position + ", only sequences of up to "
+                    + PackedNucleotides.MAX_LENGTH + " bases are supported");
+            }
+            appendLines(builder, bytes, read);
+            position += read;
+            buffer.clear();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Fills bytes from the given file position, failing if the file ends
+     * first.
+     */
+    public static void readFully(FastaSource source, long position, byte[] bytes) throws IOException {
+        readFully(source, position, bytes, bytes.length);
+    }
+
+    /**
+     * Fills the first count bytes from the given file position.
+     */
+    public static void readFully(FastaSource source, long position, byte[] bytes, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+        while (buffer.hasRemaining()) {
+            int read = source.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    public static void readFully(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private static int countBases(byte[] bytes, int count) {
+        int bases = 0;
+        for (int i = 0; i < count; i++) {
+            if (bytes[i] != '\n' && bytes[i] != '\r') {
+                bases++;
+            }
+        }
+        return bases;
+    }
+
+    // Appends each run of bytes between line breaks
+    private static void appendLines(PackedNucleotides.Builder builder, byte[] bytes, int count) {
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            byte b = bytes[i];
+            if (b == '\n' || b == '\r') {
+                if (i > from) {
+                    builder.append(bytes, from, i - from);
+                }
+                from = i + 1;
+            }
+        }
+        if (count > from) {
+            builder.append(bytes, from, count - from);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Random access to the uncompressed bytes of a FASTA file. Offsets are
+ * always positions in the uncompressed file, as in the .fai index.
+ */
+public interface FastaSource {
+    /**
+     * Uncompressed size of the file, in bytes.
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads bytes starting at the given position into dst, in the same way
+     * as FileChannel.read(ByteBuffer, long). Returns -1 at the end of the
+     * file.
+     */
+    int read(ByteBuffer dst, long position) throws IOException;
+
+    void close() throws IOException;
+}
@@ -0,0 +1,140 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps FASTA files open between reads, so reading thousands of contigs or
+ * exon regions does not open the same file over and over (or reload the
+ * block index of a compressed file). The least recently used file is
+ * closed once more than maxOpen files are open.
+ *
+ * Sources are borrowed and given back by closing them. A file evicted
+ * while it is borrowed, by this or another thread, stays open until the
+ * last borrower closes it.
+ */
+public class FastaSourcePool {
+    private static Logger LOG = Logger.getLogger(FastaSourcePool.class);
+    public static final int DEFAULT_MAX_OPEN = 32;
+
+    private Map<File, PooledSource> openFiles;
+
+    public FastaSourcePool() {
+        this(DEFAULT_MAX_OPEN);
+    }
+
+    public FastaSourcePool(final int maxOpen) {
+        openFiles = new LinkedHashMap<File, PooledSource>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, PooledSource> eldest) {
+                if (size() <= maxOpen) {
+                    return false;
+                }
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Opens a plain or bgzip compressed FASTA file, depending on its name.
+     */
+    public static FastaSource open(File file) throws IOException {
+        if (BgzfFastaSource.isCompressed(file)) {
+            return new BgzfFastaSource(file);
+        }
+        return new PlainFastaSource(file);
+    }
+
+    /**
+     * Borrows the open source of a file, opening it if needed. Closing the
+     * returned source gives it back to the pool.
+     */
+    public synchronized FastaSource borrow(File file) throws IOException {
+        PooledSource pooled = openFiles.get(file);
+        if (pooled == null) {
+            pooled = new PooledSource(file, open(file));
+            openFiles.put(file, pooled);
+        }
+        pooled.borrowers++;
+        return new BorrowedSource(pooled);
+    }
+
+    /**
+     * Closes the files that are not borrowed, and the others as they are
+     * given back.
+     */
+    public synchronized void close() {
+        for (PooledSource pooled : openFiles.values()) {
+            evict(pooled);
+        }
+        openFiles.clear();
+    }
+
+    private synchronized void giveBack(PooledSource pooled) {
+        pooled.borrowers--;
+        if (pooled.evicted && pooled.borrowers == 0) {
+            closeQuietly(pooled);
+        }
+    }
+
+    private static void evict(PooledSource pooled) {
+        pooled.evicted = true;
+        if (pooled.borrowers == 0) {
+            closeQuietly(pooled);
+        }
+    }
+
+    private static void closeQuietly(PooledSource pooled) {
+        try {
+            pooled.source.close();
+        } catch (IOException e) {
+            LOG.warn("Could not close " + pooled.file + ": " + e.getMessage());
+        }
+    }
+
+    private static final class PooledSource {
+        private final File file;
+        private final FastaSource source;
+        // Guarded by the pool
+        private int borrowers;
+        private boolean evicted;
+
+        private PooledSource(File file, FastaSource source) {
+            this.file = file;
+            this.source = source;
+        }
+    }
+
+    private final class BorrowedSource implements FastaSource {
+        private final PooledSource pooled;
+        private boolean closed;
+
+        private BorrowedSource(PooledSource pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return pooled.source.size();
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return pooled.source.read(dst, position);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                giveBack(pooled);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Byte ranges of the chromosomes of a GTF file whose lines are grouped by
+ * chromosome, as in a coordinate sorted file. Each range starts at the
+ * first line of its chromosome and runs to the first line of the next, so
+ * together they cover every line of the file, comments included.
+ *
+ * Chromosome names get the "chr" prefix added by the parser.
+ */
+public class GtfChromosomeIndex {
+    private static Logger LOG = Logger.getLogger(GtfChromosomeIndex.class);
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private List<Entry> entries;
+
+    private GtfChromosomeIndex(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Scans the first column of every line, returning null if the lines of
+     * a chromosome are not all together.
+     */
+    public static GtfChromosomeIndex scan(File transcriptomeFile) throws IOException {
+        List<Entry> entryList = new ArrayList<Entry>();
+        Set<String> seen = new HashSet<String>();
+        InputStream input = new FileInputStream(transcriptomeFile);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] column = new byte[64];
+            int columnLength = 0;
+            // Whether the first column of the line is still being read
+            boolean inColumn = true;
+            boolean comment = false;
+            boolean skipLineFeed = false;
+            long position = 0;
+            long lineStart = 0;
+            int lineNumber = 0;
+            Entry entry = null;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte b = buffer[i];
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (b == '\n') {
+                            lineStart = position + 1;
+                            continue;
+                        }
+                    }
+                    if (b == '\n' || b == '\r') {
+                        if (inColumn && !comment) {
+                            entry = endColumn(entryList, seen, entry, column, columnLength, lineStart, lineNumber);
+                            if (entry == null) {
+                                return null;
+                            }
+                        }
+                        lineNumber++;
+                        lineStart = position + 1;
+                        skipLineFeed = b == '\r';
+                        columnLength = 0;
+                        inColumn = true;
+                        comment = false;
+                    } else if (inColumn && !comment) {
+                        if (columnLength == 0 && b == '#' && position == lineStart) {
+                            comment = true;
+                        } else if (b == '\t') {
+                            entry = endColumn(entryList, seen, entry, column, columnLength, lineStart, lineNumber);
+                            if (entry == null) {
+                                return null;
+                            }
+                            inColumn = false;
+                        } else {
+                            if (columnLength == column.length) {
+                                column = Arrays.copyOf(column, column.length * 2);
+                            }
+                            column[columnLength++] = b;
+                        }
+                    }
+                }
+            }
+            if (inColumn && !comment && lineStart < position) {
+                // Last line without a line end
+                entry = endColumn(entryList, seen, entry, column, columnLength, lineStart, lineNumber);
+                if (entry == null) {
+                    return null;
+                }
+            }
+            if (entry != null) {
+                entry.end = position;
+            }
+        } finally {
+            input.close();
+        }
+        return new GtfChromosomeIndex(entryList);
+    }
+
+    // Starts a new entry when the line is on another chromosome, returning
+    // the entry of the line or null if its chromosome was seen before
+    private static Entry endColumn(List<Entry> entryList, Set<String> seen, Entry entry,
+            byte[] column, int columnLength, long lineStart, int lineNumber) {
+        String chromosome = new String(column, 0, columnLength, CHARSET);
+        if (!chromosome.startsWith("chr")) {
+            chromosome = "chr" + chromosome;
+        }
+        if (entry != null && entry.getChromosome().equals(chromosome)) {
+            return entry;
+        }
+        if (!seen.add(chromosome)) {
+            LOG.info("Lines of " + chromosome + " are not grouped together");
+            return null;
+        }
+        // Comments at the start of the file go with the first chromosome
+        Entry next = new Entry(chromosome, entry == null ? 0 : lineStart, entry == null ? 0 : lineNumber);
+        if (entry != null) {
+            entry.end = lineStart;
+        }
+        entryList.add(next);
+        return next;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public static class Entry {
+        private String chromosome;
+        private long start;
+        private long end;
+        private int firstLine;
+
+        public Entry(String chromosome, long start, int firstLine) {
+            this.chromosome = chromosome;
+            this.start = start;
+            this.firstLine = firstLine;
+        }
+
+        public String getChromosome() {
+            return chromosome;
+        }
+
+        /**
+         * File offset of the first line.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * File offset after the last line.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Number of lines of the file before the first line.
+         */
+        public int getFirstLine() {
+            return firstLine;
+        }
+    }
+}
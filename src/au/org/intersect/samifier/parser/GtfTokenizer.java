@@ -0,0 +1,319 @@
+package au.org.intersect.samifier.parser;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits the lines of a GTF file into their nine columns, working on the
+ * raw bytes. Columns are found by index and compared, parsed or decoded
+ * only when asked for, so most lines are parsed without creating any
+ * Strings other than the identifiers they hold.
+ *
+ * Lines end with \n, \r or \r\n, as with BufferedReader.readLine. Text is
+ * decoded with the platform charset, as a FileReader would.
+ */
+final class GtfTokenizer {
+    static final int COLUMNS = 9;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte[] TRANSCRIPT_ID_TAG = ascii("transcript_id \"");
+    private static final byte[] EXON_ID_TAG = ascii("exon_number \"");
+    private static final byte[] CHROMOSOME_PREFIX = ascii("chr");
+
+    private final byte[] buffer;
+    private final int bufferEnd;
+    private int nextLine;
+    private boolean skipLineFeed;
+    private int lineNumber;
+
+    private byte[] line;
+    private int lineStart;
+    private int lineEnd;
+    private int columnCount;
+    // Start of each column and end of each column, exclusive
+    private final int[] columnStarts = new int[COLUMNS];
+    private final int[] columnEnds = new int[COLUMNS];
+
+    // Attribute values found by findAttributes, or -1
+    private int transcriptIdStart;
+    private int transcriptIdEnd;
+    private int exonIdStart;
+    private int exonIdEnd;
+
+    // Chromosome and source columns repeat from line to line
+    private byte[] lastChromosome = new byte[0];
+    private String lastChromosomeName;
+    private byte[] lastSource = new byte[0];
+    private String lastSourceName;
+
+    /**
+     * Tokenizer of the lines held in bytes [start, end), used in place.
+     */
+    GtfTokenizer(byte[] bytes, int start, int end) {
+        this.buffer = bytes;
+        this.nextLine = start;
+        this.bufferEnd = end;
+    }
+
+    /**
+     * Moves to the next line, returning false at the end of the bytes.
+     */
+    boolean next() {
+        for (int i = nextLine; i < bufferEnd; i++) {
+            byte b = buffer[i];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    nextLine = i + 1;
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                int start = nextLine;
+                nextLine = i + 1;
+                skipLineFeed = b == '\r';
+                lineNumber++;
+                setLine(buffer, start, i);
+                return true;
+            }
+        }
+        if (nextLine < bufferEnd) {
+            // Last line without a line end
+            int start = nextLine;
+            nextLine = bufferEnd;
+            lineNumber++;
+            setLine(buffer, start, bufferEnd);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tokenizes the line held in bytes [start, end), without its line end.
+     */
+    void setLine(byte[] bytes, int start, int end) {
+        line = bytes;
+        lineStart = start;
+        lineEnd = end;
+        columnCount = 0;
+        transcriptIdStart = -1;
+        exonIdStart = -1;
+        int columnStart = start;
+        for (int i = start; i < end && columnCount < COLUMNS - 1; i++) {
+            if (bytes[i] == '\t') {
+                columnStarts[columnCount] = columnStart;
+                columnEnds[columnCount] = i;
+                columnCount++;
+                columnStart = i + 1;
+            }
+        }
+        // As String.split with a limit, the last column holds the rest of the line
+        columnStarts[columnCount] = columnStart;
+        columnEnds[columnCount] = end;
+        columnCount++;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    String getLine() {
+        return new String(line, lineStart, lineEnd - lineStart, CHARSET);
+    }
+
+    boolean isComment() {
+        return lineEnd > lineStart && line[lineStart] == '#';
+    }
+
+    int getColumnCount() {
+        return columnCount;
+    }
+
+    String getColumn(int column) {
+        return new String(line, columnStarts[column], columnEnds[column] - columnStarts[column], CHARSET);
+    }
+
+    boolean columnEquals(int column, String value) {
+        int start = columnStarts[column];
+        int length = columnEnds[column] - start;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a column as Integer.parseInt would, throwing the same
+     * NumberFormatException for anything it can't parse.
+     */
+    int parseInt(int column) {
+        int start = columnStarts[column];
+        int end = columnEnds[column];
+        boolean negative = start < end && line[start] == '-';
+        int i = start < end && (line[start] == '-' || line[start] == '+') ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(getColumn(column));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(getColumn(column));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 1 for a "+" strand, -1 for "-" and 0 for anything else.
+     */
+    int parseStrand(int column) {
+        int start = columnStarts[column];
+        if (columnEnds[column] - start != 1) {
+            return 0;
+        }
+        return line[start] == '+' ? 1 : line[start] == '-' ? -1 : 0;
+    }
+
+    /**
+     * The chromosome column, with "chr" added in front when missing.
+     */
+    String getChromosome(int column) {
+        int start = columnStarts[column];
+        int end = columnEnds[column];
+        if (!regionEquals(lastChromosome, start, end)) {
+            lastChromosome = Arrays.copyOfRange(line, start, end);
+            String chromosome = getColumn(column);
+            lastChromosomeName = startsWith(start, end, CHROMOSOME_PREFIX) ? chromosome : "chr" + chromosome;
+        }
+        return lastChromosomeName;
+    }
+
+    String getSource(int column) {
+        int start = columnStarts[column];
+        int end = columnEnds[column];
+        if (!regionEquals(lastSource, start, end)) {
+            lastSource = Arrays.copyOfRange(line, start, end);
+            lastSourceName = getColumn(column);
+        }
+        return lastSourceName;
+    }
+
+    /**
+     * Finds the first transcript_id "..."; and exon_number "..."; of the
+     * attributes column in one scan. Values are matched as by the patterns
+     * they replace: letters, digits and ".-_" for transcript ids, digits and
+     * "-_" for exon numbers.
+     */
+    void findAttributes(int column) {
+        int end = columnEnds[column];
+        for (int i = columnStarts[column]; i < end && (transcriptIdStart < 0 || exonIdStart < 0); i++) {
+            if (transcriptIdStart < 0 && line[i] == 't' && startsWith(i, end, TRANSCRIPT_ID_TAG)) {
+                int valueStart = i + TRANSCRIPT_ID_TAG.length;
+                int valueEnd = valueStart;
+                while (valueEnd < end && isTranscriptIdByte(line[valueEnd])) {
+                    valueEnd++;
+                }
+                if (isValueEnd(valueStart, valueEnd, end)) {
+                    transcriptIdStart = valueStart;
+                    transcriptIdEnd = valueEnd;
+                }
+            } else if (exonIdStart < 0 && line[i] == 'e' && startsWith(i, end, EXON_ID_TAG)) {
+                int valueStart = i + EXON_ID_TAG.length;
+                int valueEnd = valueStart;
+                while (valueEnd < end && isExonIdByte(line[valueEnd])) {
+                    valueEnd++;
+                }
+                if (isValueEnd(valueStart, valueEnd, end)) {
+                    exonIdStart = valueStart;
+                    exonIdEnd = valueEnd;
+                }
+            }
+        }
+    }
+
+    /**
+     * The transcript_id found by findAttributes, or null.
+     */
+    String getTranscriptId() {
+        return transcriptIdStart < 0 ? null
+            : new String(line, transcriptIdStart, transcriptIdEnd - transcriptIdStart, CHARSET);
+    }
+
+    /**
+     * The exon_number found by findAttributes, or null.
+     */
+    String getExonId() {
+        return exonIdStart < 0 ? null : new String(line, exonIdStart, exonIdEnd - exonIdStart, CHARSET);
+    }
+
+    /**
+     * The value of the first attribute of a column with the tag made by
+     * attributeTag, or null. Unlike findAttributes, the tag must start the
+     * column or follow a space or ';', so "transcript_type" does not match
+     * inside "reference_transcript_type".
+     */
+    String getAttribute(int column, byte[] tag) {
+        int start = columnStarts[column];
+        int end = columnEnds[column];
+        for (int i = start; i < end; i++) {
+            if (line[i] == tag[0] && (i == start || line[i - 1] == ' ' || line[i - 1] == ';')
+                    && startsWith(i, end, tag)) {
+                int valueStart = i + tag.length;
+                int valueEnd = valueStart;
+                while (valueEnd < end && line[valueEnd] != '"') {
+                    valueEnd++;
+                }
+                if (valueEnd < end) {
+                    return new String(line, valueStart, valueEnd - valueStart, CHARSET);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The bytes that start the attribute name "value";
+     */
+    static byte[] attributeTag(String name) {
+        return ascii(name + " \"");
+    }
+
+    private boolean isValueEnd(int valueStart, int valueEnd, int end) {
+        return valueEnd > valueStart && valueEnd + 1 < end && line[valueEnd] == '"' && line[valueEnd + 1] == ';';
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionEquals(byte[] bytes, int start, int end) {
+        return bytes.length == end - start && startsWith(start, end, bytes);
+    }
+
+    private static boolean isTranscriptIdByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || isExonIdByte(b) || b == '.';
+    }
+
+    private static boolean isExonIdByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '_';
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(Charset.forName("US-ASCII"));
+    }
+}
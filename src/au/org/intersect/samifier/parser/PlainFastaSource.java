@@ -0,0 +1,35 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Uncompressed FASTA file, read through its file channel.
+ */
+public class PlainFastaSource implements FastaSource {
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    public PlainFastaSource(File fastaFile) throws IOException {
+        file = new RandomAccessFile(fastaFile, "r");
+        channel = file.getChannel();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return channel.read(dst, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
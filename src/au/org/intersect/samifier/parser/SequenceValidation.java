@@ -0,0 +1,23 @@
+package au.org.intersect.samifier.parser;
+
+/**
+ * How FastaParserImpl reacts to characters that are not IUPAC nucleotide
+ * codes or gaps when it loads a chromosome.
+ */
+public enum SequenceValidation {
+    // Load sequences as they are, without counting bases
+    IGNORE,
+    // Log base counts and warn about invalid characters
+    WARN,
+    // Log base counts and fail on invalid characters
+    STRICT;
+
+    public static SequenceValidation parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sequence validation " + value
+                + ", expected one of ignore, warn or strict");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package au.org.intersect.samifier.parser;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records of a GTF file to keep, checked by TranscriptomeParserImpl as
+ * lines are tokenized so the others are never materialized. Reference
+ * transcriptomes are read through TranscriptomeSnapshot instead, which
+ * keeps every biotype and checks them as each chromosome is read.
+ *
+ * Biotypes are read from the transcript_biotype (Ensembl) or
+ * transcript_type (GENCODE) attribute. Lines without either attribute are
+ * kept, as there is nothing to filter them on; transcripts without both
+ * codons are still removed when the transcriptome is verified.
+ *
+ * Expression thresholds are checked against the FPKM, TPM and cov
+ * attributes of transcript lines, as written by StringTie and Cufflinks.
+ * Exon lines are not checked, as StringTie gives them their own coverage;
+ * they are dropped with their transcript. Transcripts without the
+ * attribute, or with a value that is not a number, are kept.
+ */
+public class TranscriptomeFilter {
+    public static final String PROTEIN_CODING_BIOTYPE = "protein_coding";
+
+    private Set<String> biotypes;
+    private boolean codingOnly;
+    private double minimumFpkm;
+    private double minimumTpm;
+    private double minimumCoverage;
+
+    /**
+     * Biotypes to keep. All biotypes are kept when null.
+     */
+    public void setBiotypes(Collection<String> biotypes) {
+        this.biotypes = biotypes == null ? null : new HashSet<String>(biotypes);
+    }
+
+    /**
+     * Keeps only protein coding transcripts, along with any other biotypes
+     * set.
+     */
+    public void setCodingOnly(boolean codingOnly) {
+        this.codingOnly = codingOnly;
+    }
+
+    /**
+     * Transcripts with a lower FPKM are dropped.
+     */
+    public void setMinimumFpkm(double minimumFpkm) {
+        this.minimumFpkm = minimumFpkm;
+    }
+
+    /**
+     * Transcripts with a lower TPM are dropped.
+     */
+    public void setMinimumTpm(double minimumTpm) {
+        this.minimumTpm = minimumTpm;
+    }
+
+    /**
+     * Transcripts with a lower read coverage are dropped.
+     */
+    public void setMinimumCoverage(double minimumCoverage) {
+        this.minimumCoverage = minimumCoverage;
+    }
+
+    public boolean filtersBiotypes() {
+        return codingOnly || biotypes != null;
+    }
+
+    public boolean filtersExpression() {
+        return minimumFpkm > 0 || minimumTpm > 0 || minimumCoverage > 0;
+    }
+
+    public boolean acceptsBiotype(String biotype) {
+        if (!filtersBiotypes() || biotype == null) {
+            return true;
+        }
+        return (codingOnly && PROTEIN_CODING_BIOTYPE.equals(biotype))
+            || (biotypes != null && biotypes.contains(biotype));
+    }
+
+    /**
+     * Checks the FPKM, TPM and cov attribute values of a transcript, each
+     * null when missing.
+     */
+    public boolean acceptsExpression(String fpkm, String tpm, String coverage) {
+        return atLeast(fpkm, minimumFpkm) && atLeast(tpm, minimumTpm) && atLeast(coverage, minimumCoverage);
+    }
+
+    private static boolean atLeast(String value, double minimum) {
+        if (minimum <= 0 || value == null) {
+            return true;
+        }
+        try {
+            return Double.parseDouble(value) >= minimum;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+}
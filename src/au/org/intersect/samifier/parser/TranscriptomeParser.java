@@ -15,4 +15,7 @@ public interface TranscriptomeParser {
     int STRAND_PART = 6;
 
     Transcriptome parseTranscriptomeFile(File transcriptomeFile) throws TranscriptomeFileParsingException;
+
+    Transcriptome parseTranscriptomeRegion(File transcriptomeFile, GtfChromosomeIndex.Entry region)
+            throws TranscriptomeFileParsingException;
 }
@@ -1,11 +1,20 @@
 package au.org.intersect.samifier.parser;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 
@@ -18,40 +27,78 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
 
     private static Logger LOG = Logger.getLogger(TranscriptomeParserImpl.class);
 
-    private static final String CHROMOSOME = "chr";
-    private static final Pattern CHROMOSOME_RE = Pattern.compile("^" + CHROMOSOME);
-
-    private static final String STRAND_FORWARD = "+";
-    private static final Pattern STRAND_RE = Pattern.compile("^([" + STRAND_FORWARD + "]|[-])$");
-
     private static final String TRANSCRIPT_TYPE = "transcript";
-    private static final Pattern TRANSCRIPT_TYPE_RE = Pattern.compile("^" + TRANSCRIPT_TYPE + "$");
-
     private static final String EXON_TYPE = "exon";
-    private static final Pattern EXON_TYPE_RE = Pattern.compile("^" + EXON_TYPE + "$");
-
-    private static final String CODON_TYPE = "(start_codon|stop_codon)";
-    private static final Pattern CODON_TYPE_RE = Pattern.compile("^" + CODON_TYPE + "$");
-
-    private static final String TRANSCRIPT_ID_TAG = "transcript_id";
-    private static final Pattern TRANSCRIPT_ID_ATTRIBUTE_RE = Pattern.compile(TRANSCRIPT_ID_TAG + " \"([a-zA-Z0-9\\.\\-_]+)\";");
-
-    private static final String EXON_ID_TAG = "exon_number";
-    private static final Pattern EXON_ID_ATTRIBUTE_RE = Pattern.compile(EXON_ID_TAG + " \"([0-9\\-_]+)\";");
+    private static final String START_CODON_TYPE = "start_codon";
+    private static final String STOP_CODON_TYPE = "stop_codon";
+    private static final byte[] TRANSCRIPT_BIOTYPE_TAG = GtfTokenizer.attributeTag("transcript_biotype");
+    private static final byte[] TRANSCRIPT_TYPE_TAG = GtfTokenizer.attributeTag("transcript_type");
+    private static final byte[] FPKM_TAG = GtfTokenizer.attributeTag("FPKM");
+    private static final byte[] TPM_TAG = GtfTokenizer.attributeTag("TPM");
+    private static final byte[] COVERAGE_TAG = GtfTokenizer.attributeTag("cov");
+
+    // Chunks of the file are tokenized on a worker pool and merged into the
+    // transcriptome in file order, with a bounded number of chunks in flight
+    private static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+    private static final int PARSE_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PENDING_CHUNKS = PARSE_THREADS * 2;
+    private static final ExecutorService TOKENIZERS = Executors.newFixedThreadPool(
+        PARSE_THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "gtf-tokenizer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
 
     private String transcriptomeFileName;
-    private int lineNumber = 0;
-    private String line;
+    private int chunkSize;
+    private int linesMerged;
+    private TranscriptomeFilter filter;
+    private int linesFiltered;
+    private int transcriptsBelowThresholds;
+    // Transcripts the filter rejected, whose exons and codons are dropped
+    private Set<String> rejectedTranscripts = new HashSet<String>();
 
     public TranscriptomeParserImpl() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
 
+    TranscriptomeParserImpl(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Lines the filter rejects are dropped as they are tokenized, along
+     * with exons and codons of transcripts it rejected.
+     */
+    public void setFilter(TranscriptomeFilter filter) {
+        this.filter = filter;
     }
 
     public Transcriptome parseTranscriptomeFile(File transcriptomeFile)
             throws TranscriptomeFileParsingException {
         try {
             transcriptomeFileName = transcriptomeFile.getAbsolutePath();
-            return doParsing(transcriptomeFile);
+            linesMerged = 0;
+            linesFiltered = 0;
+            transcriptsBelowThresholds = 0;
+            rejectedTranscripts.clear();
+            return doParsing(transcriptomeFile, 0, Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new TranscriptomeFileParsingException(e.getMessage());
+        }
+    }
+
+    public Transcriptome parseTranscriptomeRegion(File transcriptomeFile, GtfChromosomeIndex.Entry region)
+            throws TranscriptomeFileParsingException {
+        try {
+            transcriptomeFileName = transcriptomeFile.getAbsolutePath();
+            linesMerged = region.getFirstLine();
+            linesFiltered = 0;
+            transcriptsBelowThresholds = 0;
+            rejectedTranscripts.clear();
+            return doParsing(transcriptomeFile, region.getStart(), region.getEnd());
         } catch (IOException e) {
             throw new TranscriptomeFileParsingException(e.getMessage());
         }
@@ -59,65 +106,223 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
 
     // Creates a transcript from the exons and assigns the start and stop codons to the transript
     // Once transcript is 'ready', all exons are merged into the transcriptome (Map of all Exons)
-    private Transcriptome doParsing(File transcriptFile)
+    // Only the bytes [start, end) of the file are parsed
+    private Transcriptome doParsing(File transcriptFile, long start, long end)
             throws IOException, TranscriptomeFileParsingException {
       
         Transcriptome transcriptome = new Transcriptome();
-        BufferedReader reader = null;
+        FileInputStream input = null;
+        LinkedList<Future<ParsedChunk>> pending = new LinkedList<Future<ParsedChunk>>();
         
         try {
-            reader = new BufferedReader(new FileReader(transcriptFile));
+            input = new FileInputStream(transcriptFile);
+            input.getChannel().position(start);
+            long remaining = end - start;
+            byte[] chunk = new byte[chunkSize];
+            int filled = 0;
+            while (true) {
+                int read = remaining == 0 ? -1
+                    : input.read(chunk, filled, (int) Math.min(chunk.length - filled, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                if (read < 0) {
+                    if (filled > 0) {
+                        pending.add(submitChunk(chunk, filled));
+                    }
+                    break;
+                }
+                filled += read;
+                if (filled < chunk.length) {
+                    continue;
+                }
+                // Split after the last line feed, so no line or \r\n is cut
+                int split = filled;
+                while (split > 0 && chunk[split - 1] != '\n') {
+                    split--;
+                }
+                if (split == 0) {
+                    chunk = Arrays.copyOf(chunk, chunk.length * 2);
+                    continue;
+                }
+                byte[] next = new byte[Math.max(chunkSize, (filled - split) * 2)];
+                System.arraycopy(chunk, split, next, 0, filled - split);
+                pending.add(submitChunk(chunk, split));
+                chunk = next;
+                filled = filled - split;
+                if (pending.size() > MAX_PENDING_CHUNKS) {
+                    merge(transcriptome, pending.removeFirst());
+                }
+            }
+            while (!pending.isEmpty()) {
+                merge(transcriptome, pending.removeFirst());
+            }
+
+        } finally {
+            for (Future<ParsedChunk> chunk : pending) {
+                chunk.cancel(true);
+            }
+            if (input != null) {
+                input.close();
+            }
+        }
+        if (filter != null) {
+            LOG.info("Filtered out " + linesFiltered + " lines of " + transcriptomeFileName);
+            if (filter.filtersExpression()) {
+                LOG.info("Dropped " + transcriptsBelowThresholds + " transcripts of " + transcriptomeFileName
+                    + " below the expression thresholds");
+            }
+        }
+        transcriptome.verify();
+        return transcriptome;
+    }
+
+    private Future<ParsedChunk> submitChunk(final byte[] bytes, final int length) {
+        return TOKENIZERS.submit(new Callable<ParsedChunk>() {
+            public ParsedChunk call() {
+                return parseChunk(bytes, length);
+            }
+        });
+    }
 
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                if (line.startsWith("#")) {
+    // Tokenizes the lines of a chunk, stopping at the first bad line
+    private ParsedChunk parseChunk(byte[] bytes, int length) {
+        ParsedChunk chunk = new ParsedChunk();
+        GtfTokenizer line = new GtfTokenizer(bytes, 0, length);
+        try {
+            while (line.next()) {
+                if (line.isComment()) {
                     continue;
                 }
 
                 // Chromosome, source, type, start, stop, score, strand, phase, attributes
-                String[] parts = line.split("\\t", 9);
-                if (parts.length < 9) {
-                    String line1 = ">Line " + lineNumber + ":" + "Not in expected format.\n";
-                    String line2 = ">" + line + "\n";
-                    String message = line1 + line2;
-                    throwParsingException(message);
+                if (line.getColumnCount() < GtfTokenizer.COLUMNS) {
+                    chunk.setError(line, "Not in expected format.");
+                    break;
                 }
 
                 // Any exons with no direction specified will throw an exception
                 // Users should remove these cases before running the tool
-                String type = parts[TYPE_PART];
-                if (parseStrand(parts[STRAND_PART]) == 0 || type == null) {
-                    String line1 = ">Line " + lineNumber + ":" + "Direction or type not specified.\n";
-                    String line2 = ">" + line + "\n";
-                    String message = line1 + line2;
-                    throwParsingException(message);
+                if (line.parseStrand(STRAND_PART) == 0) {
+                    chunk.setError(line, "Direction or type not specified.");
+                    break;
                 }
 
-                if (TRANSCRIPT_TYPE_RE.matcher(type).matches()) {
-                    TranscriptInfo transcript = parseTranscript(parts);
-                    processTranscript(transcriptome, transcript);
+                if (filter != null && !accepts(line)) {
+                    if (line.columnEquals(TYPE_PART, TRANSCRIPT_TYPE)) {
+                        reject(line, chunk);
+                    }
+                    chunk.linesFiltered++;
+                    continue;
+                }
+
+                if (line.columnEquals(TYPE_PART, TRANSCRIPT_TYPE)) {
+                    if (filter != null && filter.filtersExpression() && !acceptsExpression(line)) {
+                        reject(line, chunk);
+                        chunk.transcriptsBelowThresholds++;
+                        chunk.linesFiltered++;
+                        continue;
+                    }
+                    chunk.features.add(parseTranscript(line));
+
+                } else if (isRejected(line, chunk)) {
+                    chunk.linesFiltered++;
 
-                } else if (EXON_TYPE_RE.matcher(type).matches()) {
-                    ExonInfo exon = parseExon(parts);
-                    processExon(transcriptome, exon);
+                } else if (line.columnEquals(TYPE_PART, EXON_TYPE)) {
+                    chunk.features.add(parseExon(line));
 
-                } else if (CODON_TYPE_RE.matcher(type).matches()) {
-                    CodonInfo codon = parseCodon(parts);
-                    processCodon(transcriptome, codon);
+                } else if (line.columnEquals(TYPE_PART, START_CODON_TYPE)
+                        || line.columnEquals(TYPE_PART, STOP_CODON_TYPE)) {
+                    chunk.features.add(parseCodon(line));
 
                 } else {
-                    LOG.warn(">Line " + lineNumber + ": Skipping unsupported type");
-                    continue;
+                    // Line number within the chunk, logged when merged
+                    chunk.features.add(Integer.valueOf(line.getLineNumber()));
                 }
             }
+        } catch (TranscriptomeFileParsingException e) {
+            chunk.failure = e;
+        } catch (RuntimeException e) {
+            chunk.failure = e;
+        }
+        chunk.lineCount = line.getLineNumber();
+        return chunk;
+    }
 
-        } finally {
-            if (reader != null) {
-                reader.close();
+    private boolean accepts(GtfTokenizer line) {
+        return !filter.filtersBiotypes() || filter.acceptsBiotype(getBiotype(line));
+    }
+
+    private String getBiotype(GtfTokenizer line) {
+        String biotype = line.getAttribute(ATTRIBUTES_PART, TRANSCRIPT_BIOTYPE_TAG);
+        if (biotype == null) {
+            biotype = line.getAttribute(ATTRIBUTES_PART, TRANSCRIPT_TYPE_TAG);
+        }
+        return biotype;
+    }
+
+    private boolean acceptsExpression(GtfTokenizer line) {
+        return filter.acceptsExpression(line.getAttribute(ATTRIBUTES_PART, FPKM_TAG),
+            line.getAttribute(ATTRIBUTES_PART, TPM_TAG), line.getAttribute(ATTRIBUTES_PART, COVERAGE_TAG));
+    }
+
+    // Records a transcript the filter rejected, so its exons and codons are
+    // dropped as well
+    private void reject(GtfTokenizer line, ParsedChunk chunk) {
+        line.findAttributes(ATTRIBUTES_PART);
+        if (line.getTranscriptId() != null) {
+            chunk.rejectedTranscripts.add(line.getTranscriptId());
+        }
+    }
+
+    // Whether the line belongs to a transcript of the chunk that was
+    // rejected, checked before creating its exon or codon
+    private boolean isRejected(GtfTokenizer line, ParsedChunk chunk) {
+        if (chunk.rejectedTranscripts.isEmpty()) {
+            return false;
+        }
+        line.findAttributes(ATTRIBUTES_PART);
+        return chunk.rejectedTranscripts.contains(line.getTranscriptId());
+    }
+
+    private void merge(Transcriptome transcriptome, Future<ParsedChunk> parsed)
+            throws IOException, TranscriptomeFileParsingException {
+
+        ParsedChunk chunk;
+        try {
+            chunk = parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + transcriptomeFileName);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not read " + transcriptomeFileName + ": " + e.getCause());
+        }
+        rejectedTranscripts.addAll(chunk.rejectedTranscripts);
+        for (Object feature : chunk.features) {
+            if (feature instanceof TranscriptInfo) {
+                processTranscript(transcriptome, (TranscriptInfo) feature);
+            } else if (feature instanceof ExonInfo) {
+                processExon(transcriptome, (ExonInfo) feature);
+            } else if (feature instanceof CodonInfo) {
+                processCodon(transcriptome, (CodonInfo) feature);
+            } else {
+                LOG.warn(">Line " + (linesMerged + (Integer) feature) + ": Skipping unsupported type");
             }
         }
-        transcriptome.verify();
-        return transcriptome;
+        if (chunk.errorReason != null) {
+            String line1 = ">Line " + (linesMerged + chunk.errorLine) + ":" + chunk.errorReason + "\n";
+            String line2 = ">" + chunk.errorText + "\n";
+            String message = line1 + line2;
+            throwParsingException(message);
+        }
+        if (chunk.failure instanceof TranscriptomeFileParsingException) {
+            throw (TranscriptomeFileParsingException) chunk.failure;
+        } else if (chunk.failure != null) {
+            throw (RuntimeException) chunk.failure;
+        }
+        linesMerged += chunk.lineCount;
+        linesFiltered += chunk.linesFiltered;
+        transcriptsBelowThresholds += chunk.transcriptsBelowThresholds;
     }
     
     private void throwParsingException(String message)
@@ -127,47 +332,45 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
         throw new TranscriptomeFileParsingException(message);
     }
 
-    private int parseStrand(String direction) {
-        if (!STRAND_RE.matcher(direction).matches()) {
-          return 0;
-        }
-        return STRAND_FORWARD.equals(direction) ? 1 : -1;
-    }
-
-    protected TranscriptInfo parseTranscript(String[] parts)
+    private TranscriptInfo parseTranscript(GtfTokenizer line)
             throws TranscriptomeFileParsingException {
 
-        String chromosome   = extractChromosome(parts[CHROMOSOME_PART]);
-        String origin       = parts[SOURCE_PART];
-        int start           = Integer.parseInt(parts[START_PART]);
-        int stop            = Integer.parseInt(parts[STOP_PART]);
-        int direction       = parseStrand(parts[STRAND_PART]);
-        String transcriptId = extractAttribute(parts[ATTRIBUTES_PART], TRANSCRIPT_ID_ATTRIBUTE_RE);
-        return new TranscriptInfo(transcriptId, chromosome, origin, start, stop, direction);
+        String chromosome   = line.getChromosome(CHROMOSOME_PART);
+        String origin       = line.getSource(SOURCE_PART);
+        int start           = line.parseInt(START_PART);
+        int stop            = line.parseInt(STOP_PART);
+        int direction       = line.parseStrand(STRAND_PART);
+        line.findAttributes(ATTRIBUTES_PART);
+        String transcriptId = requireAttribute(line.getTranscriptId());
+        TranscriptInfo transcript = new TranscriptInfo(transcriptId, chromosome, origin, start, stop, direction);
+        transcript.setBiotype(getBiotype(line));
+        return transcript;
     }
 
-    protected ExonInfo parseExon(String[] parts)
+    private ExonInfo parseExon(GtfTokenizer line)
             throws TranscriptomeFileParsingException {
 
-        String chromosome   = extractChromosome(parts[CHROMOSOME_PART]);
-        int start           = Integer.parseInt(parts[START_PART]);
-        int stop            = Integer.parseInt(parts[STOP_PART]);
-        int direction       = parseStrand(parts[STRAND_PART]);
-        String transcriptId = extractAttribute(parts[ATTRIBUTES_PART], TRANSCRIPT_ID_ATTRIBUTE_RE);
-        String exonId       = extractAttribute(parts[ATTRIBUTES_PART], EXON_ID_ATTRIBUTE_RE);
+        String chromosome   = line.getChromosome(CHROMOSOME_PART);
+        int start           = line.parseInt(START_PART);
+        int stop            = line.parseInt(STOP_PART);
+        int direction       = line.parseStrand(STRAND_PART);
+        line.findAttributes(ATTRIBUTES_PART);
+        String transcriptId = requireAttribute(line.getTranscriptId());
+        String exonId       = requireAttribute(line.getExonId());
         return new ExonInfo(transcriptId, exonId, chromosome, start, stop, direction);
     }
 
-    protected CodonInfo parseCodon(String[] parts)
+    private CodonInfo parseCodon(GtfTokenizer line)
             throws TranscriptomeFileParsingException {
 
-        String chromosome   = extractChromosome(parts[CHROMOSOME_PART]);
-        String type         = parts[TYPE_PART];
-        int start           = Integer.parseInt(parts[START_PART]);
-        int stop            = Integer.parseInt(parts[STOP_PART]);
-        int direction       = parseStrand(parts[STRAND_PART]);
-        String transcriptId = extractAttribute(parts[ATTRIBUTES_PART], TRANSCRIPT_ID_ATTRIBUTE_RE);
-        String exonId       = extractAttribute(parts[ATTRIBUTES_PART], EXON_ID_ATTRIBUTE_RE);
+        String chromosome   = line.getChromosome(CHROMOSOME_PART);
+        String type         = line.columnEquals(TYPE_PART, START_CODON_TYPE) ? START_CODON_TYPE : STOP_CODON_TYPE;
+        int start           = line.parseInt(START_PART);
+        int stop            = line.parseInt(STOP_PART);
+        int direction       = line.parseStrand(STRAND_PART);
+        line.findAttributes(ATTRIBUTES_PART);
+        String transcriptId = requireAttribute(line.getTranscriptId());
+        String exonId       = requireAttribute(line.getExonId());
         return new CodonInfo(transcriptId, exonId, type, chromosome, start, stop, direction);
     }
     
@@ -179,6 +382,11 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
             throws TranscriptomeFileParsingException {
 
         TranscriptInfo transcript = transcriptome.getTranscript(exon.getTranscriptId());
+        if (transcript == null && rejectedTranscripts.contains(exon.getTranscriptId())) {
+            // Part of a transcript the filter rejected
+            linesFiltered++;
+            return;
+        }
         if (transcript.hasExon(exon)) {
             String message = "Transcript " + transcript.getId() 
                 + " already contains exon. Unexpected case TODO.";
@@ -191,6 +399,11 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
             throws TranscriptomeFileParsingException {
 
         TranscriptInfo transcript = transcriptome.getTranscript(codon.getTranscriptId());
+        if (transcript == null && rejectedTranscripts.contains(codon.getTranscriptId())) {
+            // Part of a transcript the filter rejected
+            linesFiltered++;
+            return;
+        }
         if (transcript.hasCodon(codon)) {
             String message = "Transcript " + transcript.getId() 
                 + " already contains exon. Unexpected case TODO.";
@@ -199,22 +412,32 @@ public class TranscriptomeParserImpl implements TranscriptomeParser {
         transcriptome.getTranscript(codon.getTranscriptId()).addCodon(codon);
     }
     
-    private String extractChromosome(String attributes) {
-        Matcher m = CHROMOSOME_RE.matcher(attributes);
-        if (m.find()) {
-            return attributes;
+    private String requireAttribute(String value)
+            throws TranscriptomeFileParsingException {
+
+        if (value == null) {
+            throwParsingException("Attribute transcript_id not found");
         }
-        return "chr" + attributes; // make compiler happy
+        return value;
     }
 
-    private String extractAttribute(String attributes, Pattern p)
-            throws TranscriptomeFileParsingException {
-
-        Matcher m = p.matcher(attributes);
-        if (m.find()) {
-            return m.group(1);
+    // Features of a chunk in file order, with the line numbers of skipped
+    // lines, and the error that stopped it if any
+    private static final class ParsedChunk {
+        private final List<Object> features = new ArrayList<Object>();
+        private int lineCount;
+        private int linesFiltered;
+        private final Set<String> rejectedTranscripts = new HashSet<String>();
+        private int transcriptsBelowThresholds;
+        private int errorLine;
+        private String errorReason;
+        private String errorText;
+        private Exception failure;
+
+        private void setError(GtfTokenizer line, String reason) {
+            errorLine = line.getLineNumber();
+            errorReason = reason;
+            errorText = line.getLine();
         }
-        throwParsingException("Attribute transcript_id not found");
-        return null; // make compiler happy
     }
 }
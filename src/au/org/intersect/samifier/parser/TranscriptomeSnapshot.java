@@ -0,0 +1,601 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import au.org.intersect.samifier.domain.CodonInfo;
+import au.org.intersect.samifier.domain.ExonInfo;
+import au.org.intersect.samifier.domain.TranscriptInfo;
+import au.org.intersect.samifier.domain.Transcriptome;
+
+/**
+ * Binary snapshot of a verified Transcriptome, stored next to its GTF file
+ * or in a directory of its own.
+ * It holds the transcripts with their exons (including the scores, coding
+ * frames and codon positions set by verification) and codons. Reading it
+ * is a pass over a memory mapped file, with no tokenizing or verification.
+ *
+ * Transcripts are stored by chromosome, each chromosome with its own
+ * String table, so the transcripts of one chromosome can be read without
+ * the rest. Their biotypes are stored too, so one snapshot serves runs
+ * filtering the reference by biotype.
+ *
+ * A GTF file grouped by chromosome is parsed and written one chromosome at
+ * a time, so the whole transcriptome is never held.
+ *
+ * A snapshot is stale once the size or modification time of the GTF file
+ * changes, or the checksum of its first and last FINGERPRINT_SIZE bytes
+ * does. Stale or unreadable snapshots are replaced by parsing the GTF file
+ * again.
+ */
+public final class TranscriptomeSnapshot {
+    private static Logger LOG = Logger.getLogger(TranscriptomeSnapshot.class);
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x54435331; // "TCS1"
+    private static final int VERSION = 4;
+    private static final int FINGERPRINT_SIZE = 1 << 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File snapshotFile;
+    private ByteBuffer buffer;
+    // Offset of the String table and number of transcripts, by chromosome
+    private Map<String, int[]> chromosomes;
+
+    // When the snapshot could not be saved, the transcripts by chromosome,
+    // or the regions of a GTF file grouped by chromosome to parse instead
+    private Map<String, List<TranscriptInfo>> parsedTranscripts;
+    private File transcriptomeFile;
+    private TranscriptomeParser parser;
+    private Map<String, GtfChromosomeIndex.Entry> regions;
+
+    private TranscriptomeSnapshot(File snapshotFile, ByteBuffer buffer) {
+        this.snapshotFile = snapshotFile;
+        this.buffer = buffer;
+    }
+
+    private TranscriptomeSnapshot(Map<String, List<TranscriptInfo>> parsedTranscripts) {
+        this.parsedTranscripts = parsedTranscripts;
+    }
+
+    private TranscriptomeSnapshot(File transcriptomeFile, TranscriptomeParser parser, GtfChromosomeIndex index) {
+        this.transcriptomeFile = transcriptomeFile;
+        this.parser = parser;
+        this.regions = new LinkedHashMap<String, GtfChromosomeIndex.Entry>();
+        for (GtfChromosomeIndex.Entry region : index.getEntries()) {
+            regions.put(region.getChromosome(), region);
+        }
+    }
+
+    /**
+     * Opens the snapshot of a GTF file for reading by chromosome, first
+     * parsing the file and saving its snapshot when there is no up to date
+     * one. The snapshot is kept in snapshotDirectory, or next to the GTF
+     * file when it is null. If it can't be saved, the transcripts are read
+     * from the GTF file instead: a chromosome at a time when its lines are
+     * grouped by chromosome, otherwise as parsed.
+     */
+    public static TranscriptomeSnapshot open(File transcriptomeFile, File snapshotDirectory,
+            TranscriptomeParser parser) throws TranscriptomeFileParsingException {
+        File snapshotFile = getSnapshotFile(transcriptomeFile, snapshotDirectory);
+        TranscriptomeSnapshot snapshot = openSnapshot(transcriptomeFile, snapshotFile);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        GtfChromosomeIndex index = scan(transcriptomeFile);
+        if (index != null) {
+            if (saveByChromosome(transcriptomeFile, snapshotFile, parser, index)) {
+                snapshot = openSnapshot(transcriptomeFile, snapshotFile);
+            }
+            return snapshot != null ? snapshot : new TranscriptomeSnapshot(transcriptomeFile, parser, index);
+        }
+
+        Map<String, List<TranscriptInfo>> transcripts = parser.parseTranscriptomeFile(transcriptomeFile).sort();
+        if (save(transcriptomeFile, snapshotFile, transcripts)) {
+            snapshot = openSnapshot(transcriptomeFile, snapshotFile);
+        }
+        return snapshot != null ? snapshot : new TranscriptomeSnapshot(transcripts);
+    }
+
+    public static File getSnapshotFile(File transcriptomeFile, File snapshotDirectory) {
+        String name = transcriptomeFile.getName() + SNAPSHOT_EXTENSION;
+        if (snapshotDirectory == null) {
+            return new File(transcriptomeFile.getAbsoluteFile().getParentFile(), name);
+        }
+        return new File(snapshotDirectory, name);
+    }
+
+    // The up to date snapshot of a GTF file, or null
+    private static TranscriptomeSnapshot openSnapshot(File transcriptomeFile, File snapshotFile) {
+        if (!snapshotFile.exists()) {
+            return null;
+        }
+        try {
+            TranscriptomeSnapshot snapshot = map(transcriptomeFile, snapshotFile);
+            if (snapshot == null) {
+                LOG.info("Snapshot " + snapshotFile + " is out of date");
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOG.warn("Could not read snapshot " + snapshotFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static GtfChromosomeIndex scan(File transcriptomeFile) throws TranscriptomeFileParsingException {
+        try {
+            return GtfChromosomeIndex.scan(transcriptomeFile);
+        } catch (IOException e) {
+            throw new TranscriptomeFileParsingException(e.getMessage());
+        }
+    }
+
+    private static boolean save(File transcriptomeFile, File snapshotFile,
+            Map<String, List<TranscriptInfo>> transcripts) {
+        SnapshotWriter writer = null;
+        try {
+            writer = new SnapshotWriter(transcriptomeFile, snapshotFile);
+            for (Map.Entry<String, List<TranscriptInfo>> chromosome : transcripts.entrySet()) {
+                writer.writeChromosome(chromosome.getKey(), chromosome.getValue());
+            }
+            writer.commit();
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not save snapshot " + snapshotFile + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+    }
+
+    // Only the transcripts of the chromosome being written are held
+    private static boolean saveByChromosome(File transcriptomeFile, File snapshotFile,
+            TranscriptomeParser parser, GtfChromosomeIndex index) throws TranscriptomeFileParsingException {
+        SnapshotWriter writer = null;
+        try {
+            writer = new SnapshotWriter(transcriptomeFile, snapshotFile);
+            for (GtfChromosomeIndex.Entry region : index.getEntries()) {
+                List<TranscriptInfo> transcripts = parser.parseTranscriptomeRegion(transcriptomeFile, region)
+                    .getAllTranscripts();
+                writer.writeChromosome(region.getChromosome(), transcripts);
+            }
+            writer.commit();
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not save snapshot " + snapshotFile + ": " + e.getMessage());
+            return false;
+        } finally {
+            if (writer != null) {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Maps a snapshot, returning null if it is out of date for the GTF
+     * file.
+     */
+    private static TranscriptomeSnapshot map(File transcriptomeFile, File snapshotFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a transcriptome snapshot of this version");
+            }
+            if (buffer.getLong() != transcriptomeFile.length()
+                    || buffer.getLong() != transcriptomeFile.lastModified()
+                    || buffer.getLong() != fingerprint(transcriptomeFile)) {
+                return null;
+            }
+            TranscriptomeSnapshot snapshot = new TranscriptomeSnapshot(snapshotFile, buffer);
+            snapshot.readChromosomeTable();
+            return snapshot;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is truncated");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Snapshot is corrupt: " + e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot is corrupt: " + e.getMessage());
+        } finally {
+            // The mapping stays valid once the file is closed
+            file.close();
+        }
+    }
+
+    // The chromosome table is found through the offset at the end of the file
+    private void readChromosomeTable() {
+        ByteBuffer table = buffer.duplicate();
+        table.position(table.getInt(table.limit() - 4));
+        int count = table.getInt();
+        chromosomes = new LinkedHashMap<String, int[]>();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[checkedLength(table.getInt(), table.remaining())];
+            table.get(name);
+            chromosomes.put(new String(name, UTF8), new int[] {table.getInt(), table.getInt()});
+        }
+    }
+
+    /**
+     * Chromosomes of the GTF file. Some may have no transcripts.
+     */
+    public Set<String> getChromosomes() {
+        if (parsedTranscripts != null) {
+            return parsedTranscripts.keySet();
+        }
+        return regions != null ? regions.keySet() : chromosomes.keySet();
+    }
+
+    /**
+     * The transcripts of one chromosome, empty if it has none.
+     */
+    public Transcriptome getTranscriptome(String chromosome) throws IOException {
+        return getTranscriptome(chromosome, null);
+    }
+
+    /**
+     * The transcripts of one chromosome whose biotype the filter accepts.
+     * All of them are read when the filter is null.
+     */
+    public Transcriptome getTranscriptome(String chromosome, TranscriptomeFilter filter) throws IOException {
+        Transcriptome transcriptome = new Transcriptome();
+        if (parsedTranscripts != null) {
+            if (parsedTranscripts.containsKey(chromosome)) {
+                addAll(transcriptome, parsedTranscripts.get(chromosome), filter);
+            }
+            return transcriptome;
+        }
+        if (regions != null) {
+            if (regions.containsKey(chromosome)) {
+                addAll(transcriptome, parseRegion(regions.get(chromosome)), filter);
+            }
+            return transcriptome;
+        }
+        int[] section = chromosomes.get(chromosome);
+        if (section != null) {
+            readTranscripts(transcriptome, section, filter);
+        }
+        return transcriptome;
+    }
+
+    private List<TranscriptInfo> parseRegion(GtfChromosomeIndex.Entry region) throws IOException {
+        try {
+            return parser.parseTranscriptomeRegion(transcriptomeFile, region).getAllTranscripts();
+        } catch (TranscriptomeFileParsingException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private static void addAll(Transcriptome transcriptome, List<TranscriptInfo> transcripts,
+            TranscriptomeFilter filter) {
+        for (TranscriptInfo t : transcripts) {
+            if (filter == null || filter.acceptsBiotype(t.getBiotype())) {
+                transcriptome.addTranscript(t);
+            }
+        }
+    }
+
+    private void readTranscripts(Transcriptome transcriptome, int[] section, TranscriptomeFilter filter)
+            throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        try {
+            in.position(section[0]);
+            int[] stringOffsets = readStringTable(in);
+            Map<Integer, String> decoded = new HashMap<Integer, String>();
+            for (int i = 0; i < section[1]; i++) {
+                // Transcript ids are unique, so they are not kept for reuse
+                String transcriptId = getString(in, stringOffsets, in.getInt(), null);
+                String chromosome = getString(in, stringOffsets, in.getInt(), decoded);
+                String origin = getString(in, stringOffsets, in.getInt(), decoded);
+                String biotype = getString(in, stringOffsets, in.getInt(), decoded);
+                if (filter != null && !filter.acceptsBiotype(biotype)) {
+                    skipTranscript(in);
+                    continue;
+                }
+                TranscriptInfo transcript = new TranscriptInfo(transcriptId, chromosome, origin,
+                    in.getInt(), in.getInt(), in.getInt());
+                transcript.setBiotype(biotype);
+
+                int exonCount = in.getInt();
+                for (int j = 0; j < exonCount; j++) {
+                    ExonInfo exon = new ExonInfo(transcriptId, getString(in, stringOffsets, in.getInt(), decoded),
+                        getString(in, stringOffsets, in.getInt(), decoded), in.getInt(), in.getInt(), in.getInt());
+                    exon.setScore(in.getInt());
+                    exon.setCodingFrame(in.getInt());
+                    exon.setStartCodon(in.getInt());
+                    exon.setStopCodon(in.getInt());
+                    transcript.addExon(exon);
+                }
+
+                int codonCount = in.getInt();
+                for (int j = 0; j < codonCount; j++) {
+                    transcript.addCodon(new CodonInfo(transcriptId, getString(in, stringOffsets, in.getInt(), decoded),
+                        getString(in, stringOffsets, in.getInt(), decoded),
+                        getString(in, stringOffsets, in.getInt(), decoded),
+                        in.getInt(), in.getInt(), in.getInt()));
+                }
+                transcriptome.addTranscript(transcript);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot " + snapshotFile + " is truncated");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Snapshot " + snapshotFile + " is corrupt: " + e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot " + snapshotFile + " is corrupt: " + e.getMessage());
+        }
+    }
+
+    // Finds the Strings of a chromosome, without decoding them. The offset
+    // of each String is -1 for null.
+    private static int[] readStringTable(ByteBuffer in) {
+        // Each String takes at least its 4 byte length
+        int[] stringOffsets = new int[checkedLength(in.getInt(), in.remaining() / 4)];
+        for (int i = 0; i < stringOffsets.length; i++) {
+            int length = in.getInt();
+            stringOffsets[i] = length < 0 ? -1 : in.position() - 4;
+            if (length > 0) {
+                in.position(in.position() + length);
+            }
+        }
+        return stringOffsets;
+    }
+
+    // Moves past the positions, exons and codons of a transcript
+    private static void skipTranscript(ByteBuffer in) {
+        in.position(in.position() + 3 * 4);
+        int exonCount = in.getInt();
+        in.position(in.position() + exonCount * 9 * 4);
+        int codonCount = in.getInt();
+        in.position(in.position() + codonCount * 6 * 4);
+    }
+
+    // Lengths are checked before allocating, so a damaged snapshot is
+    // reported as corrupt rather than failing with NegativeArraySizeException
+    // or running out of memory
+    private static int checkedLength(int length, int remaining) {
+        if (length < 0 || length > remaining) {
+            throw new IllegalArgumentException("Length " + length + " is out of range");
+        }
+        return length;
+    }
+
+    // Decodes a String of the table, reusing those already decoded
+    private static String getString(ByteBuffer in, int[] stringOffsets, int index, Map<Integer, String> decoded) {
+        String value = decoded != null ? decoded.get(index) : null;
+        if (value == null && stringOffsets[index] >= 0) {
+            int offset = stringOffsets[index];
+            int length = in.getInt(offset);
+            byte[] bytes = new byte[checkedLength(length, in.limit() - offset - 4)];
+            ByteBuffer source = in.duplicate();
+            source.position(offset + 4);
+            source.get(bytes);
+            value = new String(bytes, UTF8);
+            if (decoded != null) {
+                decoded.put(index, value);
+            }
+        }
+        return value;
+    }
+
+    // Checksum of the start and end of the file, which together with its
+    // size and modification time tells whether it changed without reading
+    // all of it
+    static long fingerprint(File transcriptomeFile) throws IOException {
+        CRC32 crc = new CRC32();
+        RandomAccessFile file = new RandomAccessFile(transcriptomeFile, "r");
+        try {
+            long length = file.length();
+            byte[] bytes = new byte[(int) Math.min(length, FINGERPRINT_SIZE)];
+            file.readFully(bytes);
+            crc.update(bytes);
+            if (length > FINGERPRINT_SIZE) {
+                bytes = new byte[(int) Math.min(length - FINGERPRINT_SIZE, FINGERPRINT_SIZE)];
+                file.seek(length - bytes.length);
+                file.readFully(bytes);
+                crc.update(bytes);
+            }
+        } finally {
+            file.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Writes a snapshot a chromosome at a time to a temporary file of its
+     * own, then moves it over any current one, so runs saving the same
+     * snapshot at once never mix their files and a snapshot is either
+     * complete or missing.
+     */
+    private static final class SnapshotWriter {
+        private final File snapshotFile;
+        private final File tempFile;
+        private DataOutputStream out;
+        // Offset of the String table and number of transcripts, by chromosome
+        private final Map<String, int[]> sections = new LinkedHashMap<String, int[]>();
+
+        private SnapshotWriter(File transcriptomeFile, File snapshotFile) throws IOException {
+            this.snapshotFile = snapshotFile;
+            this.tempFile = File.createTempFile(snapshotFile.getName(), ".tmp",
+                snapshotFile.getAbsoluteFile().getParentFile());
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(transcriptomeFile.length());
+                out.writeLong(transcriptomeFile.lastModified());
+                out.writeLong(fingerprint(transcriptomeFile));
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        // Chromosomes without transcripts are left out
+        private void writeChromosome(String chromosome, List<TranscriptInfo> transcripts) throws IOException {
+            if (transcripts.isEmpty()) {
+                return;
+            }
+            StringTable strings = new StringTable();
+            for (TranscriptInfo t : transcripts) {
+                strings.add(t.getId());
+                strings.add(t.getChromosome());
+                strings.add(t.getOrigin());
+                strings.add(t.getBiotype());
+                for (ExonInfo e : t.getAllExons()) {
+                    strings.add(e.getId());
+                    strings.add(e.getChromosome());
+                }
+                for (CodonInfo c : t.getAllCodons()) {
+                    strings.add(c.getExonId());
+                    strings.add(c.getType());
+                    strings.add(c.getChromosome());
+                }
+            }
+
+            sections.put(chromosome, new int[] {checkedSize(), transcripts.size()});
+            out.writeInt(strings.values.size());
+            for (String value : strings.values) {
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    writeString(value);
+                }
+            }
+            for (TranscriptInfo t : transcripts) {
+                writeTranscript(t, strings);
+            }
+        }
+
+        private void writeTranscript(TranscriptInfo t, StringTable strings) throws IOException {
+            out.writeInt(strings.indexOf(t.getId()));
+            out.writeInt(strings.indexOf(t.getChromosome()));
+            out.writeInt(strings.indexOf(t.getOrigin()));
+            out.writeInt(strings.indexOf(t.getBiotype()));
+            out.writeInt(t.getStart());
+            out.writeInt(t.getStop());
+            out.writeInt(t.getDirection());
+
+            List<ExonInfo> exons = t.getAllExons();
+            out.writeInt(exons.size());
+            for (ExonInfo e : exons) {
+                out.writeInt(strings.indexOf(e.getId()));
+                out.writeInt(strings.indexOf(e.getChromosome()));
+                out.writeInt(e.getStart());
+                out.writeInt(e.getStop());
+                out.writeInt(e.getDirection());
+                out.writeInt(e.getScore());
+                out.writeInt(e.getCodingFrame());
+                out.writeInt(e.getStartCodon());
+                out.writeInt(e.getStopCodon());
+            }
+
+            List<CodonInfo> codons = t.getAllCodons();
+            out.writeInt(codons.size());
+            for (CodonInfo c : codons) {
+                out.writeInt(strings.indexOf(c.getExonId()));
+                out.writeInt(strings.indexOf(c.getType()));
+                out.writeInt(strings.indexOf(c.getChromosome()));
+                out.writeInt(c.getStart());
+                out.writeInt(c.getStop());
+                out.writeInt(c.getDirection());
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        // DataOutputStream stops counting at Integer.MAX_VALUE
+        private int checkedSize() throws IOException {
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Transcriptome is too large for a snapshot");
+            }
+            return out.size();
+        }
+
+        private void commit() throws IOException {
+            int tableOffset = checkedSize();
+            out.writeInt(sections.size());
+            for (Map.Entry<String, int[]> section : sections.entrySet()) {
+                writeString(section.getKey());
+                out.writeInt(section.getValue()[0]);
+                out.writeInt(section.getValue()[1]);
+            }
+            out.writeInt(tableOffset);
+            checkedSize();
+            out.close();
+            out = null;
+            replace();
+        }
+
+        // Readers of the current snapshot keep their mapping of it
+        private void replace() throws IOException {
+            try {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        // Removes the temporary file unless it was moved into place
+        private void abort() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.debug("Could not close " + tempFile + ": " + e.getMessage());
+                }
+                out = null;
+            }
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static final class StringTable {
+        private final List<String> values = new ArrayList<String>();
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        private void add(String value) {
+            if (!indexes.containsKey(value)) {
+                indexes.put(value, values.size());
+                values.add(value);
+            }
+        }
+
+        private int indexOf(String value) {
+            return indexes.get(value);
+        }
+    }
+}
@@ -10,16 +10,22 @@ import java.util.Map;
 
 import au.org.intersect.samifier.domain.AccessionOutputterGenerator;
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.GffOutputterGenerator;
+import au.org.intersect.samifier.domain.PackedNucleotides;
 import au.org.intersect.samifier.domain.ProteinLocation;
 import au.org.intersect.samifier.domain.ProteinOutputterGenerator;
+import au.org.intersect.samifier.domain.SixFrameTranslation;
 import au.org.intersect.samifier.domain.UnknownCodonException;
 import au.org.intersect.samifier.generator.CodonsPerIntervalLocationGenerator;
 import au.org.intersect.samifier.generator.GlimmerFileLocationGenerator;
 import au.org.intersect.samifier.generator.LocationGenerator;
+import au.org.intersect.samifier.generator.OrfLocationGenerator;
+import au.org.intersect.samifier.parser.ChromosomePrefetcher;
 import au.org.intersect.samifier.parser.FastaParser;
 import au.org.intersect.samifier.parser.FastaParserException;
 import au.org.intersect.samifier.parser.FastaParserImpl;
+import au.org.intersect.samifier.parser.SequenceValidation;
 import au.org.intersect.samifier.util.ProteinLocationFileGenerator;
 
 public class ProteinGeneratorRunner {
@@ -33,6 +39,8 @@ public class ProteinGeneratorRunner {
     private File translationTableFile;
     private Writer gffWriter;
     private Writer accessionWriter;
+    private Integer orfMinimumCodons;
+    private boolean orfTrimToStart;
 
     public ProteinGeneratorRunner(String glimmerFilePath, File genomeFile,
             String interval, String databaseName, Writer outputWriter,
@@ -45,21 +53,37 @@ public class ProteinGeneratorRunner {
         this.translationTableFile = translationTableFile;
         this.gffWriter = gffWriter;
         this.accessionWriter = accessionWriter;
-        this.fastaParser = new FastaParserImpl(genomeFile);
+        this.fastaParser = FastaParserImpl.getSharedParser(genomeFile);
+    }
+
+    public void setSequenceValidation(SequenceValidation sequenceValidation) {
+        fastaParser.setSequenceValidation(sequenceValidation);
+    }
+
+    /**
+     * Generates the open reading frames of at least minimumCodons codons
+     * instead of the glimmer file or interval locations.
+     */
+    public void setOpenReadingFrames(int minimumCodons, boolean trimToStart) {
+        this.orfMinimumCodons = minimumCodons;
+        this.orfTrimToStart = trimToStart;
     }
 
     public void run() throws Exception {
-        LocationGenerator locationGenerator = createLocationGenerator();
+        CodonTranslationTable table = TranslationTableRegistry.getTable(translationTableFile);
+        LocationGenerator locationGenerator = createLocationGenerator(table);
         List<ProteinLocation> locations = locationGenerator.generateLocations();
-        generateProteinsFile(locations,
-                CodonTranslationTable.parseTableFile(translationTableFile));
+        generateProteinsFile(locations, table);
         generateGffFile(locations);
         generateAccessionFile(locations);
     }
 
-    private LocationGenerator createLocationGenerator() {
+    private LocationGenerator createLocationGenerator(CodonTranslationTable table) {
         LocationGenerator locationGenerator;
-        if (glimmerFilePath != null) {
+        if (orfMinimumCodons != null) {
+            locationGenerator = new OrfLocationGenerator(fastaParser, table,
+                    orfMinimumCodons, orfTrimToStart);
+        } else if (glimmerFilePath != null) {
             locationGenerator = new GlimmerFileLocationGenerator(
                     glimmerFilePath);
         } else {
@@ -106,11 +130,23 @@ public class ProteinGeneratorRunner {
                 }
             }
         }
+        // Loads the next chromosome while proteins of the current one are written
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, locationByChromosome.keySet());
         for (String chromosome : locationByChromosome.keySet()) {
-            StringBuilder genomeString = readGenomeFile(chromosome);
+            PackedNucleotides genomeString = prefetcher.get(chromosome);
             List<ProteinLocation> locationForChromosome = locationByChromosome.get(chromosome);
+            // Translate the chromosome once in all frames when the locations
+            // would otherwise translate every base more than once
+            long translatedBases = 0;
+            for (ProteinLocation location : locationForChromosome) {
+                translatedBases += location.getLength();
+            }
+            SixFrameTranslation sixFrameTranslation = null;
+            if (translatedBases >= genomeString.length()) {
+                sixFrameTranslation = new SixFrameTranslation(genomeString, table);
+            }
             ProteinOutputterGenerator outputterGenerator = new ProteinOutputterGenerator(
-                databaseName, genomeString, table);
+                databaseName, genomeString, table, sixFrameTranslation);
             ProteinLocationFileGenerator.generateFile(locationForChromosome, outputWriter,
                 outputterGenerator);
         }
@@ -119,9 +155,5 @@ public class ProteinGeneratorRunner {
         }
     }
 
-    private StringBuilder readGenomeFile(String chromosome) throws IOException, FastaParserException{
-        return new StringBuilder(fastaParser.readCode(chromosome));
-    }
-
 
 }
@@ -8,6 +8,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.DebuggingFlag;
 import au.org.intersect.samifier.domain.Genome;
 import au.org.intersect.samifier.domain.PeptideSearchResult;
@@ -81,8 +82,8 @@ public class ResultAnalyserRunner {
         FileWriter output = new FileWriter(outputFile);
 
         if (DebuggingFlag.get_sbi_debug_flag() == 1) {
-            CodonTranslationTable translationTable = CodonTranslationTable
-                    .parseTableFile(translationTableFile);
+            CodonTranslationTable translationTable = TranslationTableRegistry
+                    .getTable(translationTableFile);
 
             for (PeptideSearchResult peptideSearchResult : peptideSearchResults) {
                 PeptideSequence peptideSequence = sequenceGenerator
@@ -151,8 +152,8 @@ public class ResultAnalyserRunner {
                 continue;
             }
             if (DebuggingFlag.get_sbi_debug_flag() == 1) {
-                CodonTranslationTable translationTable = CodonTranslationTable
-                        .parseTableFile(translationTableFile);
+                CodonTranslationTable translationTable = TranslationTableRegistry
+                        .getTable(translationTableFile);
                 ResultsAnalyserOutputter outputter = new ResultsAnalyserOutputter(
                         peptideSearchResult, proteinToOLNMap, genome,
                         peptideSequence, translationTable);
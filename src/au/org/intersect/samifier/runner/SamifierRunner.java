@@ -12,11 +12,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import au.org.intersect.samifier.domain.BedLineOutputter;
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.DebuggingFlag;
 import au.org.intersect.samifier.domain.Genome;
 import au.org.intersect.samifier.domain.PeptideSearchResult;
@@ -24,11 +24,13 @@ import au.org.intersect.samifier.domain.PeptideSequence;
 import au.org.intersect.samifier.domain.ProteinToOLNMap;
 import au.org.intersect.samifier.domain.SAMEntry;
 import au.org.intersect.samifier.domain.SAMEntryComparator;
+import au.org.intersect.samifier.domain.SequenceView;
 import au.org.intersect.samifier.filter.ConfidenceScoreFilter;
 import au.org.intersect.samifier.filter.PeptideSearchResultFilter;
 import au.org.intersect.samifier.generator.PeptideSequenceGenerator;
 import au.org.intersect.samifier.generator.PeptideSequenceGeneratorException;
 import au.org.intersect.samifier.generator.PeptideSequenceGeneratorImpl;
+import au.org.intersect.samifier.parser.ChromosomeCache;
 import au.org.intersect.samifier.parser.FastaParserException;
 import au.org.intersect.samifier.parser.GenomeParserImpl;
 import au.org.intersect.samifier.parser.PeptideSearchResultsParser;
@@ -144,7 +146,7 @@ public class SamifierRunner {
             } else {
                 int mapq = result.getConfidenceScore().round(new MathContext(0)).intValue();
                 String sequnece = peptide.getNucleotideSequence();
-                String outputSequence = (peptide.getGeneInfo().getDirection() == -1) ? new StringBuilder(StringUtils.replaceChars(sequnece, "ACGT", "TGCA")).reverse().toString() : sequnece;
+                String outputSequence = (peptide.getGeneInfo().getDirection() == -1) ? SequenceView.reverseComplement(sequnece).toString() : sequnece;
                 SAMEntry entry = new SAMEntry(resultName, peptide.getGeneInfo(), peptideStart, peptide.getCigarString(), outputSequence, mapq);
                 entry.setChromosomeLength(sequenceGenerator.getFastaParser().getChromosomeLength(peptide.getGeneInfo().getChromosome()));
                 samEntries.add(entry);
@@ -152,20 +154,17 @@ public class SamifierRunner {
 
             try {
                 if (DebuggingFlag.get_sbi_debug_flag() == 1) {
-                    CodonTranslationTable translationTable = CodonTranslationTable
-                            .parseTableFile(translationTableFile);
+                    CodonTranslationTable translationTable = TranslationTableRegistry
+                            .getTable(translationTableFile);
                     String nucleotideString = peptide.getNucleotideSequence();
                     int direction = peptide.getGeneInfo().getDirection();
                     String mascotPeptideString = result.getPeptideSequence();
                     String predictedAminoAcidSequence = new String("");
 
                     if (direction != 1) {
-                        StringBuilder invertedReversedSequence = new StringBuilder(
-                                StringUtils.replaceChars(nucleotideString,
-                                        "ACGT", "TGCA")).reverse();
                         predictedAminoAcidSequence = translationTable
-                                .proteinToAminoAcidSequence(invertedReversedSequence
-                                        .toString());
+                                .proteinToAminoAcidSequence(SequenceView
+                                        .reverseComplement(nucleotideString));
                     } else {
                         predictedAminoAcidSequence = translationTable
                                 .proteinToAminoAcidSequence(nucleotideString);
@@ -224,6 +223,7 @@ public class SamifierRunner {
             bedWriter.close();
         }
         output.close();
+        LOG.info(ChromosomeCache.getSharedCache());
     }
 
 }
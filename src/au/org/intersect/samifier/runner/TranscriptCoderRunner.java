@@ -6,27 +6,36 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import au.org.intersect.samifier.domain.AccessionOutputterGenerator;
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.GffOutputterGenerator;
 import au.org.intersect.samifier.domain.MegaExonInfo;
 import au.org.intersect.samifier.domain.OutputException;
+import au.org.intersect.samifier.domain.PackedNucleotides;
 import au.org.intersect.samifier.domain.ProteinOutputterGenerator;
 import au.org.intersect.samifier.domain.TranscriptInfo;
 import au.org.intersect.samifier.domain.TranscriptInfoComparator;
 import au.org.intersect.samifier.domain.Transcriptome;
 import au.org.intersect.samifier.domain.TranslationTableParsingException;
 import au.org.intersect.samifier.domain.UnknownCodonException;
+import au.org.intersect.samifier.parser.ChromosomePrefetcher;
 import au.org.intersect.samifier.parser.FastaParser;
 import au.org.intersect.samifier.parser.FastaParserException;
 import au.org.intersect.samifier.parser.FastaParserImpl;
+import au.org.intersect.samifier.parser.GtfChromosomeIndex;
+import au.org.intersect.samifier.parser.SequenceValidation;
+import au.org.intersect.samifier.parser.TranscriptomeFilter;
 import au.org.intersect.samifier.parser.TranscriptomeParserImpl;
+import au.org.intersect.samifier.parser.TranscriptomeSnapshot;
 import au.org.intersect.samifier.inferencer.ExonFinder;
 import au.org.intersect.samifier.inferencer.ExonFinderImpl;
 import au.org.intersect.samifier.inferencer.TranscriptGenerator;
+import au.org.intersect.samifier.inferencer.TranscriptGeneratorException;
 import au.org.intersect.samifier.inferencer.TranscriptGeneratorImpl;
 import au.org.intersect.samifier.util.ProteinLocationFileGenerator;
 
@@ -42,8 +51,14 @@ public class TranscriptCoderRunner {
     private Writer gffWriter;
     private Writer accessionWriter;
 
+    private TranscriptomeFilter referenceFilter;
+    private TranscriptomeFilter targetFilter;
+    private File snapshotDirectory;
+
     private Transcriptome outputTranscriptome;
 
+    private TranscriptomeSnapshot refSnapshot;
+
     public TranscriptCoderRunner (File refTranscriptomeFile, File targetTranscriptomeFile, 
         File translationTableFile, File chromosomeDir, 
         String databaseName, Writer databaseWriter, 
@@ -52,47 +67,70 @@ public class TranscriptCoderRunner {
 
         this.refTranscriptomeFile    = refTranscriptomeFile;
         this.targetTranscriptomeFile = targetTranscriptomeFile;
-        this.translationTable        = CodonTranslationTable.parseTableFile(translationTableFile);
-        this.fastaParser             = new FastaParserImpl(chromosomeDir);
+        this.translationTable        = TranslationTableRegistry.getTable(translationTableFile);
+        this.fastaParser             = FastaParserImpl.getSharedParser(chromosomeDir);
         this.databaseName            = databaseName;
         this.databaseWriter          = databaseWriter;
         this.gffWriter               = gffWriter;
         this.accessionWriter         = accessionWriter;
     }
 
+    public void setSequenceValidation(SequenceValidation sequenceValidation) {
+        fastaParser.setSequenceValidation(sequenceValidation);
+    }
+
+    /**
+     * Reference transcripts of biotypes the filter rejects are skipped as
+     * each chromosome is read.
+     */
+    public void setReferenceFilter(TranscriptomeFilter referenceFilter) {
+        this.referenceFilter = referenceFilter;
+    }
+
+    /**
+     * Target transcripts the filter rejects, such as low expression
+     * assembly fragments, are never loaded.
+     */
+    public void setTargetFilter(TranscriptomeFilter targetFilter) {
+        this.targetFilter = targetFilter;
+    }
+
+    /**
+     * Directory to keep the reference snapshot in, instead of next to the
+     * reference GTF file.
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
     public void run()
             throws Exception {
 
-        System.out.print("Parsing...");
-        TranscriptomeParserImpl refTranscriptParser = new TranscriptomeParserImpl();
-        Transcriptome refTranscriptome              = refTranscriptParser.parseTranscriptomeFile(refTranscriptomeFile);
+        // A target grouped by chromosome is read one chromosome at a time
+        GtfChromosomeIndex targetIndex = GtfChromosomeIndex.scan(targetTranscriptomeFile);
+        if (targetIndex != null) {
+            runByChromosome(targetIndex);
+            return;
+        }
 
+        System.out.print("Parsing...");
         TranscriptomeParserImpl targetTranscriptParser = new TranscriptomeParserImpl();
+        targetTranscriptParser.setFilter(targetFilter);
         Transcriptome targetTranscriptome              = targetTranscriptParser.parseTranscriptomeFile(targetTranscriptomeFile);
+        Map<String, List<TranscriptInfo>> sortedTargetTranscriptome = targetTranscriptome.sort();
+        loadReference();
         System.out.println("Done!");
 
         System.out.print("Analysing transcriptomes...");
-        Map<String, List<TranscriptInfo>> sortedTargetTranscriptome = targetTranscriptome.sort();
-        Map<String, List<TranscriptInfo>> sortedRefTranscriptome    = refTranscriptome.sort();
-        List<TranscriptInfo> outputTranscripts                      = new ArrayList<TranscriptInfo>();
+        List<TranscriptInfo> outputTranscripts = new ArrayList<TranscriptInfo>();
+        // Loads the next chromosome while transcripts of the current one are inferred
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, sortedTargetTranscriptome.keySet());
 
         for (String chromosome : sortedTargetTranscriptome.keySet()) {
             System.out.println("Transcripts on chromosome " + chromosome);
-            List<TranscriptInfo> refTranscripts    = sortedRefTranscriptome.get(chromosome);
-            List<TranscriptInfo> targetTranscripts = sortedTargetTranscriptome.get(chromosome);
-            List<TranscriptInfo> outputList        = new ArrayList<TranscriptInfo>();
-
-            StringBuilder genomeString = readGenomeFile(chromosome);
-            TranscriptGenerator transcriptGenerator = new TranscriptGeneratorImpl(genomeString, translationTable);
-            ExonFinder exonFinder                   = new ExonFinderImpl(refTranscripts);
-
-            for (TranscriptInfo prevTranscript : targetTranscripts) {
-                MegaExonInfo closestKnownExon = exonFinder.getClosestKnownExon(prevTranscript);
-                if (closestKnownExon != null) {
-                    List<TranscriptInfo> currTranscripts = transcriptGenerator.inferTranscript(prevTranscript, closestKnownExon);
-                    outputList.addAll(currTranscripts);
-                }
-            }
+            PackedNucleotides genomeString  = prefetcher.get(chromosome);
+            List<TranscriptInfo> outputList = inferTranscripts(getReferenceTranscripts(chromosome),
+                sortedTargetTranscriptome.get(chromosome), genomeString);
             generateSequenceDatabase(outputList, genomeString);
             outputTranscripts.addAll(outputList);
         }
@@ -103,7 +141,97 @@ public class TranscriptCoderRunner {
         generateAccessionFile(outputTranscripts);
     }
 
-    private void generateSequenceDatabase(List<TranscriptInfo> outputList, StringBuilder genomeString)
+    // Streaming mode: only the transcripts of the current chromosome are held,
+    // and its output is written before moving to the next one
+    private void runByChromosome(GtfChromosomeIndex targetIndex)
+            throws Exception {
+
+        System.out.print("Parsing...");
+        loadReference();
+        System.out.println("Done!");
+
+        System.out.print("Analysing transcriptomes by chromosome...");
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, Collections.<String>emptyList());
+        TranscriptomeParserImpl targetTranscriptParser = new TranscriptomeParserImpl();
+        targetTranscriptParser.setFilter(targetFilter);
+        Iterator<GtfChromosomeIndex.Entry> regions = targetIndex.getEntries().iterator();
+        String gffHeader = "##gff-version 3";
+
+        // The next chromosome with target transcripts is parsed before the current
+        // one is loaded, so chromosomes the filters emptied are never prefetched
+        List<TranscriptInfo> targetTranscripts = nextTargetTranscripts(targetTranscriptParser, regions);
+        while (targetTranscripts != null) {
+            List<TranscriptInfo> nextTargetTranscripts = nextTargetTranscripts(targetTranscriptParser, regions);
+            String chromosome = targetTranscripts.get(0).getChromosome();
+            String nextChromosome = nextTargetTranscripts == null ? null : nextTargetTranscripts.get(0).getChromosome();
+            System.out.println("Transcripts on chromosome " + chromosome);
+            PackedNucleotides genomeString  = prefetcher.get(chromosome, nextChromosome);
+            List<TranscriptInfo> outputList = inferTranscripts(getReferenceTranscripts(chromosome),
+                targetTranscripts, genomeString);
+            generateSequenceDatabase(outputList, genomeString);
+            writeGff(outputList, gffHeader);
+            writeAccessions(outputList);
+            gffHeader = null;
+            targetTranscripts = nextTargetTranscripts;
+        }
+        databaseWriter.close();
+        if (gffHeader != null) {
+            writeGff(Collections.<TranscriptInfo>emptyList(), gffHeader);
+        }
+        closeWriter(gffWriter);
+        closeWriter(accessionWriter);
+        System.out.println("Done!");
+    }
+
+    // Transcripts of the next target region that has any, or null after the last
+    private List<TranscriptInfo> nextTargetTranscripts(TranscriptomeParserImpl targetTranscriptParser,
+        Iterator<GtfChromosomeIndex.Entry> regions)
+            throws Exception {
+
+        while (regions.hasNext()) {
+            List<TranscriptInfo> targetTranscripts = targetTranscriptParser
+                .parseTranscriptomeRegion(targetTranscriptomeFile, regions.next()).getAllTranscripts();
+            if (!targetTranscripts.isEmpty()) {
+                return targetTranscripts;
+            }
+        }
+        return null;
+    }
+
+    // The reference is shared by many runs, so it is kept as a snapshot and read
+    // one chromosome at a time, with the biotype filter applied as it is read
+    private void loadReference()
+            throws Exception {
+
+        refSnapshot = TranscriptomeSnapshot.open(refTranscriptomeFile, snapshotDirectory, new TranscriptomeParserImpl());
+    }
+
+    private List<TranscriptInfo> getReferenceTranscripts(String chromosome)
+            throws IOException {
+
+        List<TranscriptInfo> refTranscripts = refSnapshot.getTranscriptome(chromosome, referenceFilter).getAllTranscripts();
+        return refTranscripts.isEmpty() ? null : refTranscripts;
+    }
+
+    private List<TranscriptInfo> inferTranscripts(List<TranscriptInfo> refTranscripts,
+        List<TranscriptInfo> targetTranscripts, PackedNucleotides genomeString)
+            throws TranscriptGeneratorException {
+
+        List<TranscriptInfo> outputList         = new ArrayList<TranscriptInfo>();
+        TranscriptGenerator transcriptGenerator = new TranscriptGeneratorImpl(genomeString, translationTable);
+        ExonFinder exonFinder                   = new ExonFinderImpl(refTranscripts);
+
+        for (TranscriptInfo prevTranscript : targetTranscripts) {
+            MegaExonInfo closestKnownExon = exonFinder.getClosestKnownExon(prevTranscript);
+            if (closestKnownExon != null) {
+                List<TranscriptInfo> currTranscripts = transcriptGenerator.inferTranscript(prevTranscript, closestKnownExon);
+                outputList.addAll(currTranscripts);
+            }
+        }
+        return outputList;
+    }
+
+    private void generateSequenceDatabase(List<TranscriptInfo> outputList, PackedNucleotides genomeString)
             throws IOException, FastaParserException, TranslationTableParsingException, OutputException {
         
         ProteinOutputterGenerator outputterGenerator = new ProteinOutputterGenerator(databaseName, genomeString, translationTable);
@@ -115,31 +243,45 @@ public class TranscriptCoderRunner {
 
         if (gffWriter != null) {
             System.out.print("Writing GFF...");
-            GffOutputterGenerator outputterGenerator = new GffOutputterGenerator();
-            ProteinLocationFileGenerator.generateTranscriptSequenceFile(outputTranscripts, gffWriter,
-                    outputterGenerator, "##gff-version 3");
+            writeGff(outputTranscripts, "##gff-version 3");
             gffWriter.close();
             System.out.println("Done!");
         }
     }
 
+    private void writeGff(List<TranscriptInfo> outputTranscripts, String header)
+            throws IOException, OutputException {
+
+        GffOutputterGenerator outputterGenerator = new GffOutputterGenerator();
+        ProteinLocationFileGenerator.generateTranscriptSequenceFile(outputTranscripts, gffWriter,
+                outputterGenerator, header);
+    }
+
     private void generateAccessionFile(List<TranscriptInfo> outputTranscripts)
             throws IOException, OutputException {
 
         if (accessionWriter != null) {
             System.out.print("Wrting Accession file...");
-            AccessionOutputterGenerator outputterGenerator = new AccessionOutputterGenerator();
-            ProteinLocationFileGenerator.generateTranscriptSequenceFile(outputTranscripts, accessionWriter,
-                    outputterGenerator);
+            writeAccessions(outputTranscripts);
             accessionWriter.close();
             System.out.println("Done!");
         }
     }
 
-    private StringBuilder readGenomeFile(String chromosome)
-            throws IOException, FastaParserException{
+    private void writeAccessions(List<TranscriptInfo> outputTranscripts)
+            throws IOException, OutputException {
 
-        return new StringBuilder(fastaParser.readCode(chromosome));
+        AccessionOutputterGenerator outputterGenerator = new AccessionOutputterGenerator();
+        ProteinLocationFileGenerator.generateTranscriptSequenceFile(outputTranscripts, accessionWriter,
+                outputterGenerator);
+    }
+
+    private void closeWriter(Writer writer)
+            throws IOException {
+
+        if (writer != null) {
+            writer.close();
+        }
     }
 
 }
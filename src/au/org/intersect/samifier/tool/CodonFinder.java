@@ -1,6 +1,7 @@
 package au.org.intersect.samifier.tool;
 
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.GenomeConstant;
 import au.org.intersect.samifier.domain.GenomeNucleotides;
 import au.org.intersect.samifier.domain.UnknownCodonException;
@@ -22,9 +23,9 @@ public class CodonFinder {
             File translationTableFile = new File(args[1]);
             int direction = "+".equals(args[2]) ? 1 : -1;
             FastaParser parser = new FastaParserImpl(fastaFile);
-            nucleotides = new GenomeNucleotides(parser.readCode(FilenameUtils.getBaseName(fastaFile.getName())));
-            translationTable = CodonTranslationTable
-                    .parseTableFile(translationTableFile);
+            nucleotides = new GenomeNucleotides(parser.readNucleotides(FilenameUtils.getBaseName(fastaFile.getName())));
+            translationTable = TranslationTableRegistry
+                    .getTable(translationTableFile);
 
             if (args.length == 4) {
                 int codonPosition = Integer.parseInt(args[3]);
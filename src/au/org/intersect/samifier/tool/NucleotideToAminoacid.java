@@ -1,6 +1,7 @@
 package au.org.intersect.samifier.tool;
 
 import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
 import au.org.intersect.samifier.domain.GenomeConstant;
 import au.org.intersect.samifier.domain.ProteinOutputter;
 
@@ -13,8 +14,8 @@ public class NucleotideToAminoacid {
     public static void main(String[] args) {
         try {
             File f = new File(args[0]);
-            CodonTranslationTable table = CodonTranslationTable
-                    .parseTableFile(f);
+            CodonTranslationTable table = TranslationTableRegistry
+                    .getTable(f);
             // frame
             String protein = args[1];
             if (args.length > 2) {
@@ -1,8 +1,11 @@
 package au.org.intersect.samifier.util;
 
 import au.org.intersect.samifier.domain.OutputException;
+import au.org.intersect.samifier.domain.Outputter;
 import au.org.intersect.samifier.domain.ProteinLocation;
 import au.org.intersect.samifier.domain.ProteinLocationBasedOutputterGenerator;
+import au.org.intersect.samifier.domain.StreamingOutputter;
+import au.org.intersect.samifier.domain.StreamingTranscriptOutputter;
 import au.org.intersect.samifier.domain.TranscriptInfo;
 
 import java.io.BufferedWriter;
@@ -31,8 +34,12 @@ public class ProteinLocationFileGenerator {
                     writer.append("\n");
                 }
                 for (ProteinLocation location : locations) {
-                    writer.append(outputterGenerator.getOutputterFor(location)
-                            .getOutput());
+                    Outputter outputter = outputterGenerator.getOutputterFor(location);
+                    if (outputter instanceof StreamingOutputter) {
+                        ((StreamingOutputter) outputter).writeOutput(writer);
+                    } else {
+                        writer.append(outputter.getOutput());
+                    }
                 }
             } catch (IOException e) {
                 System.exit(-1);
@@ -68,7 +75,12 @@ public class ProteinLocationFileGenerator {
                     writer.append("\n");
                 }
                 for (TranscriptInfo transcriptinfo : transcripts) {
-                    writer.append(outputterGenerator.getOutputterFor(transcriptinfo).getTranscriptOutput());
+                    Outputter outputter = outputterGenerator.getOutputterFor(transcriptinfo);
+                    if (outputter instanceof StreamingTranscriptOutputter) {
+                        ((StreamingTranscriptOutputter) outputter).writeTranscriptOutput(writer);
+                    } else {
+                        writer.append(outputter.getTranscriptOutput());
+                    }
                 }
             } catch (IOException e) {
                 System.exit(-1);
@@ -0,0 +1,40 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class CodonPositionIndexTest {
+
+    private static final String GENOME = "CCATGTAAGGTTACATNNTGAtagCATTTACCCATGGGTAGCTTATCAAGTCATAAACGCATGCA";
+
+    @Test
+    public void testMatchesCodonWalk() throws Exception {
+        CodonTranslationTable table = TranslationTableRegistry.getStandardTable(1);
+        CodonPositionIndex index = new CodonPositionIndex(PackedNucleotides.valueOf(GENOME), table);
+        GenomeNucleotides nucleotides = new GenomeNucleotides(GENOME);
+        for (int direction = -1; direction <= 1; direction += 2) {
+            for (int position = 0; position < GENOME.length(); position++) {
+                boolean inRange = direction > 0 ? position + 2 < GENOME.length() : position >= 2;
+                String codon = inRange ? nucleotides.codonAt(position, direction) : null;
+                assertEquals(inRange && table.isStopCodon(codon), index.isStop(position, direction));
+                assertEquals(inRange && table.isStartCodon(codon), index.isStart(position, direction));
+                for (int searchDirection = -1; searchDirection <= 1; searchDirection += 2) {
+                    assertEquals(walk(index, position, direction, searchDirection, true),
+                        index.findNextStop(position, direction, searchDirection));
+                    assertEquals(walk(index, position, direction, searchDirection, false),
+                        index.findNextStart(position, direction, searchDirection));
+                }
+            }
+        }
+    }
+
+    private static int walk(CodonPositionIndex index, int position, int direction, int searchDirection, boolean stop) {
+        for (int p = position + 3 * searchDirection; p >= 0 && p < GENOME.length(); p += 3 * searchDirection) {
+            if (stop ? index.isStop(p, direction) : index.isStart(p, direction)) {
+                return p;
+            }
+        }
+        return CodonPositionIndex.NOT_FOUND;
+    }
+}
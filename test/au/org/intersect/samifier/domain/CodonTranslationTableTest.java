@@ -0,0 +1,75 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class CodonTranslationTableTest {
+
+    // NCBI standard code (transl_table=1)
+    private static final String STANDARD_TABLE =
+          "    AAs  = FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG\n"
+        + "  Starts = ---M---------------M---------------M----------------------------\n"
+        + "  Base1  = TTTTTTTTTTTTTTTTCCCCCCCCCCCCCCCCAAAAAAAAAAAAAAAAGGGGGGGGGGGGGGGG\n"
+        + "  Base2  = TTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGG\n"
+        + "  Base3  = TCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAG\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CodonTranslationTable table;
+
+    @Before
+    public void before() throws Exception {
+        File tableFile = folder.newFile("table1.txt");
+        FileWriter writer = new FileWriter(tableFile);
+        writer.write(STANDARD_TABLE);
+        writer.close();
+        table = CodonTranslationTable.parseTableFile(tableFile);
+    }
+
+    @Test
+    public void testTranslate() throws Exception {
+        assertEquals("MXX*", table.proteinToAminoAcidSequence("ATGgcNTRATAA"));
+        char[] out = new char[4];
+        assertEquals(2, table.translate("CCATGTGG", 2, 8, out, 1));
+        assertEquals("MW", new String(out, 1, 2));
+    }
+
+    @Test
+    public void testDenseTableMatchesCodonMaps() throws Exception {
+        String bases = "ACGTacgtNnRYXB-";
+        for (char b1 : bases.toCharArray()) {
+            for (char b2 : bases.toCharArray()) {
+                for (char b3 : bases.toCharArray()) {
+                    String codon = "" + b1 + b2 + b3;
+                    String upper = codon.toUpperCase();
+                    String expected = table.isStopCodon(upper) ? "*" : table.toAminoAcid(upper);
+                    try {
+                        assertEquals(codon, expected, table.proteinToAminoAcidSequence(codon));
+                    } catch (UnknownCodonException e) {
+                        assertEquals(codon, null, expected);
+                        assertEquals(upper + " is not a known codon (at codon #1)", e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPartialCodon() {
+        try {
+            table.proteinToAminoAcidSequence("ATGGC");
+            fail();
+        } catch (UnknownCodonException e) {
+            assertEquals("GC is not a known codon (at codon 1)", e.getMessage());
+        }
+    }
+}
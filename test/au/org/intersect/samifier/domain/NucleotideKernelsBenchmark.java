@@ -0,0 +1,66 @@
+package au.org.intersect.samifier.domain;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Throughput of reverse complementing and upper casing a chromosome sized
+ * sequence: through StringUtils as before NucleotideKernels, through the
+ * scalar kernels, and through the vector kernels when the JVM was started
+ * with --add-modules jdk.incubator.vector. Run with "ant benchmark".
+ */
+public final class NucleotideKernelsBenchmark {
+    private static final int LENGTH = 1 << 26;
+    private static final int ROUNDS = 10;
+
+    private NucleotideKernelsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        char[] sequence = new char[LENGTH];
+        String bases = "ACGTacgtN";
+        for (int i = 0; i < LENGTH; i++) {
+            sequence[i] = bases.charAt(random.nextInt(bases.length()));
+        }
+        String text = new String(sequence);
+
+        System.out.println("Vector kernels in use: " + NucleotideKernels.isVectorized());
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            StringUtils.reverse(StringUtils.replaceChars(text, "ACGT", "TGCA"));
+        }
+        report("StringUtils reverse complement", start);
+
+        benchmark("scalar", NucleotideKernels.SCALAR, sequence);
+        if (NucleotideKernels.isVectorized()) {
+            benchmark("vector", NucleotideKernels.KERNELS, sequence);
+        }
+    }
+
+    private static void benchmark(String name, NucleotideKernels.BulkKernels kernels, char[] sequence) {
+        char[] chars = sequence.clone();
+        // Warm up, so the JIT has compiled the kernels before timing
+        for (int round = 0; round < ROUNDS; round++) {
+            kernels.reverseComplement(chars, 0, chars.length);
+            kernels.toUpperCase(chars, 0, chars.length);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            kernels.reverseComplement(chars, 0, chars.length);
+        }
+        report(name + " reverse complement", start);
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            System.arraycopy(sequence, 0, chars, 0, chars.length);
+            kernels.toUpperCase(chars, 0, chars.length);
+        }
+        report(name + " upper case (with copy)", start);
+    }
+
+    private static void report(String name, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-40s %8.0f Mbases/s%n", name, (double) LENGTH * ROUNDS / seconds / 1e6);
+    }
+}
@@ -0,0 +1,85 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public final class NucleotideKernelsTest {
+
+    private static final String SEQUENCE = "AACCGGTTNNacgtACGTRYACGGGTTTAAACCCGTtttgcaNNNAC-GTAGCTAGGATCGATCGATCGGGCTA";
+
+    @Test
+    public void testComplement() {
+        char[] bases = SEQUENCE.toCharArray();
+        NucleotideKernels.complement(bases, 0, bases.length);
+        assertEquals(StringUtils.replaceChars(SEQUENCE, "ACGT", "TGCA"), new String(bases));
+    }
+
+    @Test
+    public void testReverseComplement() {
+        char[] bases = SEQUENCE.toCharArray();
+        NucleotideKernels.reverseComplement(bases, 3, 20);
+        String expected = SEQUENCE.substring(0, 3)
+            + StringUtils.reverse(StringUtils.replaceChars(SEQUENCE.substring(3, 20), "ACGT", "TGCA"))
+            + SEQUENCE.substring(20);
+        assertEquals(expected, new String(bases));
+    }
+
+    @Test
+    public void testPackUnpack() {
+        byte[] bases = "ACGTacgtTTGGCCAAACGTACGTACGTACGTNNA".getBytes();
+        assertEquals(8, NucleotideKernels.acgtRun(bases, 4, bases.length, true));
+        assertEquals(32, NucleotideKernels.acgtRun(bases, 8, bases.length, false));
+        long word = NucleotideKernels.pack(bases, 0, 32);
+        char[] chars = new char[32];
+        NucleotideKernels.unpack(word, 0, 32, chars, 0);
+        assertEquals("ACGTACGTTTGGCCAAACGTACGTACGTACGT", new String(chars));
+        NucleotideKernels.unpack(word, 30, 32, chars, 0);
+        assertEquals("GT", new String(chars, 0, 2));
+    }
+
+    @Test
+    public void testKernelsMatchScalar() {
+        // ant test runs with the vector module when the JDK has it
+        assertEquals(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+            NucleotideKernels.isVectorized());
+        Random random = new Random(3);
+        String alphabet = "ACGTacgtNRY-\u00e9\u00b5";
+        for (int length = 0; length < 300; length += 7) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = alphabet.charAt(random.nextInt(i % 50 < 40 ? 4 : alphabet.length()));
+            }
+            int from = Math.min(length, random.nextInt(5));
+            for (int operation = 0; operation < 4; operation++) {
+                char[] expected = chars.clone();
+                char[] actual = chars.clone();
+                apply(NucleotideKernels.SCALAR, operation, expected, from);
+                apply(NucleotideKernels.KERNELS, operation, actual, from);
+                assertEquals(operation + " " + length, new String(expected), new String(actual));
+            }
+            byte[] bytes = new String(chars).getBytes();
+            for (int i = 0; i < bytes.length; i += 13) {
+                for (boolean lowerCase : new boolean[] {false, true}) {
+                    assertEquals(NucleotideKernels.SCALAR.acgtRun(bytes, i, bytes.length, lowerCase),
+                        NucleotideKernels.KERNELS.acgtRun(bytes, i, bytes.length, lowerCase));
+                }
+            }
+        }
+    }
+
+    private static void apply(NucleotideKernels.BulkKernels kernels, int operation, char[] chars, int from) {
+        if (operation == 0) {
+            kernels.complement(chars, from, chars.length);
+        } else if (operation == 1) {
+            kernels.reverseComplement(chars, from, chars.length);
+        } else if (operation == 2) {
+            kernels.toUpperCase(chars, from, chars.length);
+        } else {
+            kernels.toLowerCase(chars, from, chars.length);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class PackedNucleotidesTest {
+
+    private static final String SEQUENCE =
+        "ACGTNNNNNacgtRYKMACGTACGTACGTACGTACGTACGTACGTAAAAnnnnCCCCGGGGTTTT-*ACGT";
+
+    @Test
+    public void testRoundTrip() {
+        PackedNucleotides nucleotides = PackedNucleotides.valueOf(SEQUENCE);
+        assertEquals(SEQUENCE.length(), nucleotides.length());
+        assertEquals(SEQUENCE, nucleotides.toString());
+        for (int i = 0; i < SEQUENCE.length(); i++) {
+            assertEquals(SEQUENCE.charAt(i), nucleotides.charAt(i));
+        }
+    }
+
+    @Test
+    public void testSubstring() {
+        PackedNucleotides nucleotides = PackedNucleotides.valueOf(SEQUENCE);
+        for (int start = 0; start < SEQUENCE.length(); start += 7) {
+            for (int end = start; end <= SEQUENCE.length(); end += 5) {
+                assertEquals(SEQUENCE.substring(start, end), nucleotides.substring(start, end));
+            }
+        }
+    }
+
+    @Test
+    public void testCodeAt() {
+        PackedNucleotides nucleotides = PackedNucleotides.valueOf("AcGtN");
+        assertEquals(PackedNucleotides.CODE_A, nucleotides.codeAt(0));
+        assertEquals(PackedNucleotides.CODE_C, nucleotides.codeAt(1));
+        assertEquals(PackedNucleotides.CODE_G, nucleotides.codeAt(2));
+        assertEquals(PackedNucleotides.CODE_T, nucleotides.codeAt(3));
+        assertEquals(PackedNucleotides.NO_CODE, nucleotides.codeAt(4));
+    }
+
+    @Test
+    public void testBaseCounts() {
+        PackedNucleotides nucleotides = PackedNucleotides.valueOf("ACGTNNacgtRyk-AX*A");
+        PackedNucleotides.BaseCounts counts = nucleotides.getBaseCounts();
+        assertEquals(18, counts.getLength());
+        assertEquals(2, counts.getUnknown());
+        assertEquals(6, counts.getSoftMasked());
+        assertEquals(3, counts.getAmbiguous());
+        assertEquals(1, counts.getGaps());
+        assertEquals(2, counts.getInvalid());
+        assertEquals(15, counts.getFirstInvalidPosition());
+        assertEquals('X', counts.getFirstInvalidChar());
+        assertEquals(-1, PackedNucleotides.valueOf("ACGT").getBaseCounts().getFirstInvalidPosition());
+    }
+
+    @Test
+    public void testSegmentBoundary() {
+        // Long enough to need a second 32M base segment
+        byte[] bases = new byte[1 << 20];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = (byte) "ACG".charAt(i % 3);
+        }
+        PackedNucleotides.Builder builder = new PackedNucleotides.Builder();
+        for (int i = 0; i < 33; i++) {
+            builder.append(bases, 0, bases.length);
+        }
+        builder.append('N').append('g');
+        PackedNucleotides nucleotides = builder.build();
+        int length = 33 * bases.length + 2;
+        assertEquals(length, nucleotides.length());
+        int boundary = 32 << 20;
+        for (int i = boundary - 40; i < boundary + 40; i++) {
+            assertEquals("ACG".charAt(i % bases.length % 3), nucleotides.charAt(i));
+        }
+        assertEquals("N", nucleotides.substring(length - 2, length - 1));
+        assertEquals('g', nucleotides.charAt(length - 1));
+        assertEquals(1, nucleotides.getBaseCounts().getUnknown());
+    }
+}
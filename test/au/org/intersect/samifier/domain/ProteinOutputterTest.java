@@ -0,0 +1,59 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public final class ProteinOutputterTest {
+
+    @Test
+    public void testStreamedOutputMatchesTranslation() throws Exception {
+        CodonTranslationTable table = TranslationTableRegistry.getStandardTable(1);
+        Random random = new Random(11);
+        StringBuilder bases = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            bases.append("ACGT".charAt(random.nextInt(4)));
+        }
+        String genome = bases.toString();
+        SixFrameTranslation translation = new SixFrameTranslation(genome, table);
+        String lineFeed = System.getProperty("line.separator");
+        for (int length : new int[] {3, 177, 180, 183, 600}) {
+            for (String direction : new String[] {GenomeConstant.FORWARD_FLAG, GenomeConstant.REVERSE_FLAG}) {
+                ProteinLocation location = new ProteinLocation("p" + length, 5, length, direction, "1");
+                String protein = table.proteinToAminoAcidSequence(
+                    SequenceView.of(genome, 4, 4 + length, direction.equals(GenomeConstant.REVERSE_FLAG)));
+                StringBuilder expected = new StringBuilder(">gn1|db|p" + length + lineFeed);
+                for (int i = 0; i < protein.length(); i += ProteinOutputter.FASTA_LINE_LENGTH) {
+                    expected.append(protein, i, Math.min(protein.length(), i + ProteinOutputter.FASTA_LINE_LENGTH));
+                    expected.append(lineFeed);
+                }
+                for (SixFrameTranslation frames : new SixFrameTranslation[] {null, translation}) {
+                    StringWriter writer = new StringWriter();
+                    ProteinOutputterGenerator generator = new ProteinOutputterGenerator("db", genome, table, frames);
+                    generator.getOutputterFor(location).writeOutput(writer);
+                    generator.getOutputterFor(location).writeOutput(writer);
+                    assertEquals(expected.toString() + expected, writer.toString());
+                    assertEquals(expected.toString(), generator.getOutputterFor(location).getOutput());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownCodonWritesNothing() throws Exception {
+        CodonTranslationTable table = TranslationTableRegistry.getStandardTable(1);
+        ProteinLocation location = new ProteinLocation("p1", 1, 8, GenomeConstant.FORWARD_FLAG, "1");
+        StringWriter writer = new StringWriter();
+        try {
+            new ProteinOutputterGenerator("db", "ATGGCCAT", table).getOutputterFor(location).writeOutput(writer);
+            fail("Expected an UnknownCodonException");
+        } catch (UnknownCodonException e) {
+            assertEquals("AT is not a known codon (at codon 2)", e.getMessage());
+        }
+        assertEquals("", writer.toString());
+    }
+}
@@ -0,0 +1,51 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public final class SequenceViewTest {
+
+    private static final String GENOME = "AACCGGTTNNacgtACGTRYACGGGTTTAAACCCGT";
+
+    @Test
+    public void testForwardRegions() {
+        SequenceView view = new SequenceView(GENOME, new int[] {2, 10, 20}, new int[] {6, 14, 26}, false);
+        String expected = GENOME.substring(2, 6) + GENOME.substring(10, 14) + GENOME.substring(20, 26);
+        assertEquals(expected, view.toString());
+        assertView(expected, view);
+    }
+
+    @Test
+    public void testReverseRegions() {
+        SequenceView view = new SequenceView(PackedNucleotides.valueOf(GENOME),
+            new int[] {20, 10, 2}, new int[] {26, 14, 6}, true);
+        String expected = invert(GENOME.substring(20, 26)) + invert(GENOME.substring(10, 14)) + invert(GENOME.substring(2, 6));
+        assertEquals(expected, view.toString());
+        assertView(expected, view);
+    }
+
+    @Test
+    public void testReverseComplement() {
+        assertEquals(invert(GENOME), SequenceView.reverseComplement(GENOME).toString());
+        assertEquals("", SequenceView.of(GENOME, 5, 5, true).toString());
+    }
+
+    private void assertView(String expected, CharSequence view) {
+        assertEquals(expected.length(), view.length());
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals(expected.charAt(i), view.charAt(i));
+        }
+        for (int start = 0; start < expected.length(); start += 3) {
+            for (int end = start; end <= expected.length(); end += 4) {
+                assertEquals(expected.substring(start, end), view.subSequence(start, end).toString());
+            }
+        }
+    }
+
+    // Same as the previous reverse strand handling
+    private String invert(String sequence) {
+        return new StringBuilder(StringUtils.replaceChars(sequence, "ACGT", "TGCA")).reverse().toString();
+    }
+}
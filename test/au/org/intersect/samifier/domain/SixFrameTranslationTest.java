@@ -0,0 +1,90 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class SixFrameTranslationTest {
+
+    // NCBI standard code (transl_table=1)
+    private static final String STANDARD_TABLE =
+          "    AAs  = FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG\n"
+        + "  Starts = ---M---------------M---------------M----------------------------\n"
+        + "  Base1  = TTTTTTTTTTTTTTTTCCCCCCCCCCCCCCCCAAAAAAAAAAAAAAAAGGGGGGGGGGGGGGGG\n"
+        + "  Base2  = TTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGG\n"
+        + "  Base3  = TCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAG\n";
+
+    private static final String GENOME = "ATGGCCATTGTAATGGGCCGCTGAAAGGGTGCCCGATAGnnacgtRYTTAGCATGCAAATTTGGGCCC";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CodonTranslationTable table;
+
+    @Before
+    public void before() throws Exception {
+        File tableFile = folder.newFile("table1.txt");
+        FileWriter writer = new FileWriter(tableFile);
+        writer.write(STANDARD_TABLE);
+        writer.close();
+        table = CodonTranslationTable.parseTableFile(tableFile);
+    }
+
+    @Test
+    public void testSlicesMatchTranslation() throws Exception {
+        SixFrameTranslation translation = new SixFrameTranslation(PackedNucleotides.valueOf(GENOME), table);
+        for (int start = 0; start < GENOME.length(); start++) {
+            for (int stop = start; stop <= GENOME.length(); stop++) {
+                for (boolean reverse : new boolean[] {false, true}) {
+                    String expected;
+                    try {
+                        expected = table.proteinToAminoAcidSequence(SequenceView.of(GENOME, start, stop, reverse));
+                    } catch (UnknownCodonException e) {
+                        expected = e.getMessage();
+                    }
+                    String actual;
+                    try {
+                        actual = translation.translate(start, stop, reverse);
+                    } catch (UnknownCodonException e) {
+                        actual = e.getMessage();
+                    }
+                    assertEquals(start + "-" + stop + " " + reverse, expected, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFrames() {
+        SixFrameTranslation translation = new SixFrameTranslation(GENOME, table);
+        assertEquals('M', translation.codonAt(0, false));
+        assertEquals('H', translation.codonAt(0, true));
+        assertEquals('P', translation.codonAt(GENOME.length() - 3, false));
+    }
+
+    @Test
+    public void testRegionsAcrossWindows() throws Exception {
+        Random random = new Random(7);
+        StringBuilder genome = new StringBuilder();
+        for (int i = 0; i < 700000; i++) {
+            genome.append("ACGT".charAt(random.nextInt(4)));
+        }
+        String sequence = genome.toString();
+        SixFrameTranslation translation = new SixFrameTranslation(PackedNucleotides.valueOf(sequence), table);
+        for (int i = 0; i < 200; i++) {
+            int start = random.nextInt(sequence.length() - 3);
+            int stop = start + 3 * Math.min(random.nextInt(100000), (sequence.length() - start) / 3);
+            boolean reverse = random.nextBoolean();
+            assertEquals(start + "-" + stop + " " + reverse,
+                table.proteinToAminoAcidSequence(SequenceView.of(sequence, start, stop, reverse)),
+                translation.translate(start, stop, reverse));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package au.org.intersect.samifier.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class TranslationTableRegistryTest {
+
+    private static final String STANDARD_TABLE =
+          "    AAs  = FFLLSSSSYY**CC*WLLLLPPPPHHQQRRRRIIIMTTTTNNKKSSRRVVVVAAAADDEEGGGG\n"
+        + "  Starts = ---M---------------M---------------M----------------------------\n"
+        + "  Base1  = TTTTTTTTTTTTTTTTCCCCCCCCCCCCCCCCAAAAAAAAAAAAAAAAGGGGGGGGGGGGGGGG\n"
+        + "  Base2  = TTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGGTTTTCCCCAAAAGGGG\n"
+        + "  Base3  = TCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAGTCAG\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFileParsedOnce() throws Exception {
+        File tableFile = folder.newFile("table1.txt");
+        FileWriter writer = new FileWriter(tableFile);
+        writer.write(STANDARD_TABLE);
+        writer.close();
+        CodonTranslationTable table = TranslationTableRegistry.getTable(tableFile);
+        assertSame(table, TranslationTableRegistry.getTable(new File(tableFile.getPath())));
+
+        CodonTranslationTable standard = TranslationTableRegistry.getStandardTable(1);
+        String codons = "TTTTTCTTATTGTCTTCCTCATCGTATTACTAATAGTGTTGCTGATGGCTTCTCCTACTGCCTCCCCCACCGCATCACCAACAG"
+            + "CGTCGCCGACGGATTATCATAATGACTACCACAACGAATAACAAAAAGAGTAGCAGAAGGGTTGTCGTAGTGGCTGCCGCAGCGGATGACGAAGAG"
+            + "GGTGGCGGAGGG";
+        assertEquals(table.proteinToAminoAcidSequence(codons), standard.proteinToAminoAcidSequence(codons));
+    }
+
+    @Test
+    public void testBuiltInCodes() throws Exception {
+        assertTrue(TranslationTableRegistry.getStandardTableNames().containsKey(11));
+        CodonTranslationTable bacterial = TranslationTableRegistry.getTable(new File(folder.getRoot(), "11"));
+        assertSame(TranslationTableRegistry.getStandardTable(11), bacterial);
+        assertEquals(7, bacterial.getStartCodons().length);
+        assertEquals("W*", TranslationTableRegistry.getStandardTable(2).proteinToAminoAcidSequence("TGAAGA"));
+        assertEquals("*R", TranslationTableRegistry.getStandardTable(1).proteinToAminoAcidSequence("TGAAGA"));
+    }
+
+    @Test(expected = TranslationTableParsingException.class)
+    public void testUnknownCode() throws Exception {
+        TranslationTableRegistry.getStandardTable(99);
+    }
+}
@@ -0,0 +1,98 @@
+package au.org.intersect.samifier.generator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import au.org.intersect.samifier.domain.CodonPositionIndex;
+import au.org.intersect.samifier.domain.CodonTranslationTable;
+import au.org.intersect.samifier.domain.GenomeConstant;
+import au.org.intersect.samifier.domain.ProteinLocation;
+import au.org.intersect.samifier.domain.SequenceView;
+import au.org.intersect.samifier.domain.TranslationTableRegistry;
+
+public final class OrfLocationGeneratorTest {
+
+    @Test
+    public void testSmallGenome() throws Exception {
+        CodonTranslationTable table = TranslationTableRegistry.getStandardTable(1);
+        // Forward frame 1: CCC ATG GCC TAA GGG
+        String genome = "CCCATGGCCTAAGGG";
+        OrfLocationGenerator generator = new OrfLocationGenerator(null, table, 3, true);
+        List<ProteinLocation> locations = generator.createLocations(new CodonPositionIndex(genome, table), "chr1");
+        assertEquals(0, locations.size());
+
+        generator = new OrfLocationGenerator(null, table, 2, true);
+        locations = generator.createLocations(new CodonPositionIndex(genome, table), "chr1");
+        assertEquals(1, locations.size());
+        ProteinLocation location = locations.get(0);
+        assertEquals(4, location.getStartIndex());
+        assertEquals(6, location.getLength());
+        assertEquals(GenomeConstant.FORWARD_FLAG, location.getDirection());
+        assertEquals("MA", table.proteinToAminoAcidSequence(genome.substring(3, 9)));
+    }
+
+    @Test
+    public void testMatchesTranslatedFrames() throws Exception {
+        CodonTranslationTable table = TranslationTableRegistry.getStandardTable(1);
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            StringBuilder genome = new StringBuilder();
+            int length = random.nextInt(400);
+            for (int i = 0; i < length; i++) {
+                genome.append("ACGT".charAt(random.nextInt(4)));
+            }
+            int minimumCodons = 1 + random.nextInt(5);
+            boolean trimToStart = random.nextBoolean();
+            OrfLocationGenerator generator = new OrfLocationGenerator(null, table, minimumCodons, trimToStart);
+            Set<String> actual = new TreeSet<String>();
+            for (ProteinLocation location : generator.createLocations(
+                    new CodonPositionIndex(genome, table), "chr1")) {
+                actual.add(location.getStartIndex() + ":" + location.getLength() + location.getDirection());
+            }
+            assertEquals(genome.toString(), expectedLocations(genome.toString(), table, minimumCodons, trimToStart),
+                actual);
+        }
+    }
+
+    // Splits the translation of each whole frame at its stop codons
+    private static Set<String> expectedLocations(String genome, CodonTranslationTable table, int minimumCodons,
+            boolean trimToStart) throws Exception {
+        Set<String> locations = new TreeSet<String>();
+        int length = genome.length();
+        for (int frame = 0; frame < GenomeConstant.BASES_PER_CODON; frame++) {
+            for (boolean reverse : new boolean[] {false, true}) {
+                int from = reverse ? (length - frame) % GenomeConstant.BASES_PER_CODON : frame;
+                int to = reverse ? length - frame : from + (length - from) / 3 * 3;
+                if (to - from < GenomeConstant.BASES_PER_CODON) {
+                    continue;
+                }
+                CharSequence bases = SequenceView.of(genome, from, to, reverse);
+                String protein = table.proteinToAminoAcidSequence(bases);
+                int begin = 0;
+                for (int i = 0; i <= protein.length(); i++) {
+                    if (i < protein.length() && protein.charAt(i) != '*') {
+                        continue;
+                    }
+                    int first = begin;
+                    while (trimToStart && first < i && !table.isStartCodon(bases.charAt(3 * first),
+                            bases.charAt(3 * first + 1), bases.charAt(3 * first + 2))) {
+                        first++;
+                    }
+                    if (i - first >= minimumCodons && i > first) {
+                        int start = reverse ? to - 3 * i : from + 3 * first;
+                        locations.add((start + 1) + ":" + 3 * (i - first)
+                            + (reverse ? GenomeConstant.REVERSE_FLAG : GenomeConstant.FORWARD_FLAG));
+                    }
+                    begin = i + 1;
+                }
+            }
+        }
+        return locations;
+    }
+}
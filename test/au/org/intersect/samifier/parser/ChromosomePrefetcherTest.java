@@ -0,0 +1,71 @@
+package au.org.intersect.samifier.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.org.intersect.samifier.domain.PackedNucleotides;
+
+public final class ChromosomePrefetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ChromosomeCache cache;
+    private FastaParser fastaParser;
+
+    @Before
+    public void before() throws Exception {
+        File genomeDir = folder.newFolder("genome");
+        new FastaFixture().sequence("chr1", "ACGTACGTTTGGCCAA").write(new File(genomeDir, "chr1.fa"));
+        new FastaFixture().sequence("chr2", "GGGGCCCCAAAATTTTNNACGT").write(new File(genomeDir, "chr2.fa"));
+        cache = new ChromosomeCache(1 << 20);
+        fastaParser = new FastaParserImpl(genomeDir, cache);
+    }
+
+    @Test
+    public void testNextChromosomeIsPrefetched() throws Exception {
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, Arrays.asList("chr1", "chr2"));
+        PackedNucleotides first = prefetcher.get("chr1");
+        assertEquals("ACGTACGTTTGGCCAA", first.toString());
+        // The next chromosome may already be in the cache by now
+        long loaded = first.getSizeInBytes();
+        for (int i = 0; i < 500 && cache.getSize() == loaded; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(cache.getSize() > loaded);
+        assertEquals("GGGGCCCCAAAATTTTNNACGT", prefetcher.get("chr2").toString());
+    }
+
+    @Test
+    public void testNoPrefetchOverBudget() throws Exception {
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, Arrays.asList("chr1", "chr2"), 1);
+        prefetcher.get("chr1");
+        long loaded = cache.getSize();
+        Thread.sleep(100);
+        assertEquals(loaded, cache.getSize());
+        assertEquals("GGGGCCCCAAAATTTTNNACGT", prefetcher.get("chr2").toString());
+    }
+
+    @Test
+    public void testPrefetchNamedChromosome() throws Exception {
+        ChromosomePrefetcher prefetcher = new ChromosomePrefetcher(fastaParser, Arrays.<String>asList());
+        prefetcher.get("chr2", null);
+        long loaded = cache.getSize();
+        Thread.sleep(100);
+        assertEquals(loaded, cache.getSize());
+        prefetcher.get("chr2", "chr1");
+        for (int i = 0; i < 500 && cache.getSize() == loaded; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(cache.getSize() > loaded);
+        assertEquals("ACGTACGTTTGGCCAA", prefetcher.get("chr1", null).toString());
+    }
+}
@@ -0,0 +1,60 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Builds the text of a FASTA file for the parser tests, a sequence at a
+ * time. Headers are given without their '>'.
+ */
+final class FastaFixture {
+    private final StringBuilder text = new StringBuilder();
+    private String lineEnd = "\n";
+
+    /**
+     * Ends the lines appended from now on with lineEnd, "\n" by default.
+     */
+    FastaFixture lineEnd(String lineEnd) {
+        this.lineEnd = lineEnd;
+        return this;
+    }
+
+    FastaFixture line(String line) {
+        text.append(line).append(lineEnd);
+        return this;
+    }
+
+    /**
+     * Appends a sequence on a single line.
+     */
+    FastaFixture sequence(String header, String sequence) {
+        return line(">" + header).line(sequence);
+    }
+
+    /**
+     * Appends a sequence wrapped at lineLength bases.
+     */
+    FastaFixture sequence(String header, String sequence, int lineLength) {
+        line(">" + header);
+        for (int i = 0; i < sequence.length(); i += lineLength) {
+            line(sequence.substring(i, Math.min(sequence.length(), i + lineLength)));
+        }
+        return this;
+    }
+
+    File write(File file) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text.toString());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class FastaParserImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File chromosomeFile;
+    private String code;
+
+    @Before
+    public void before() throws Exception {
+        StringBuilder sequence = new StringBuilder();
+        String bases = "ACGTTGCANNacgtGGCCTTAA";
+        for (int i = 0; i < 50; i++) {
+            sequence.append(bases.charAt((i * 7) % bases.length()));
+            sequence.append(bases);
+        }
+        code = sequence.toString();
+        chromosomeFile = new FastaFixture().sequence("chrTest test chromosome", code, 60).write(folder.newFile("chrTest.fa"));
+    }
+
+    @Test
+    public void testFetchRegionMatchesReadCode()
+            throws IOException, FastaParserException {
+
+        FastaParser parser = new FastaParserImpl(chromosomeFile);
+        assertEquals(code, parser.readCode("chrTest"));
+        for (int start = 1; start < code.length(); start += 37) {
+            for (int stop = start; stop <= code.length(); stop += 53) {
+                String forward = code.substring(start - 1, stop);
+                String reverse = StringUtils.replaceChars(new StringBuilder(forward).reverse().toString(), "ACGT", "TGCA");
+                assertEquals(forward, parser.fetchRegion("chrTest", start, stop, 1));
+                assertEquals(reverse, parser.fetchRegion("chrTest", start, stop, -1));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexIsWritten()
+            throws IOException, FastaParserException {
+
+        FastaIndex index = FastaIndex.load(chromosomeFile);
+        assertTrue(FastaIndex.getIndexFile(chromosomeFile).exists());
+        FastaIndex.Entry entry = index.getEntry("chrTest");
+        assertEquals(code.length(), entry.getLength());
+        assertEquals(60, entry.getLineBases());
+        assertEquals(61, entry.getLineWidth());
+        assertEquals(">chrTest test chromosome\n".length(), entry.getOffset());
+    }
+
+    @Test
+    public void testReadWithoutIndex()
+            throws IOException, FastaParserException {
+
+        // A whole sequence is read in one pass, without building the index first
+        assertEquals(code, new FastaParserImpl(chromosomeFile).readCode("chrTest"));
+        assertTrue(!FastaIndex.getIndexFile(chromosomeFile).exists());
+
+        FastaIndex.load(chromosomeFile);
+        assertEquals(code, new FastaParserImpl(chromosomeFile).readCode("chrTest"));
+    }
+
+    @Test
+    public void testChromosomeLengthFromIndex()
+            throws IOException, FastaParserException {
+
+        ChromosomeCache cache = new ChromosomeCache(1 << 20);
+        FastaParser parser = new FastaParserImpl(chromosomeFile, cache);
+        assertEquals(code.length(), parser.getChromosomeLength("chrTest"));
+        // The sequence itself was never loaded
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testChromosomeLengthFromSharedCache()
+            throws IOException, FastaParserException {
+
+        // Uneven lines, so the file cannot be indexed
+        File unindexed = new FastaFixture().line(">chrX").line("ACGTACGT").line("ACG").line("TTTTT")
+            .write(folder.newFile("chrX.fa"));
+        ChromosomeCache cache = new ChromosomeCache(1 << 20);
+        new FastaParserImpl(unindexed, cache).readNucleotides("chrX");
+        assertEquals(16, new FastaParserImpl(unindexed, cache).getChromosomeLength("chrX"));
+    }
+
+    @Test
+    public void testConcurrentReads()
+            throws Exception {
+
+        final FastaParser parser = new FastaParserImpl(chromosomeFile, new ChromosomeCache(1 << 20));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 32; i++) {
+            final int start = 1 + i * 30;
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return code.equals(parser.readCode("chrTest"))
+                        && code.substring(start - 1, start + 99).equals(parser.fetchRegion("chrTest", start, start + 99, 1));
+                }
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testLongSequenceRejected()
+            throws IOException {
+
+        File fastaFile = new FastaFixture().sequence("chrBig", "ACGT").write(folder.newFile("chrBig.fa"));
+        FileWriter writer = new FileWriter(FastaIndex.getIndexFile(fastaFile));
+        writer.write("chrBig\t3000000000\t8\t60\t61\n");
+        writer.close();
+        FastaIndex.getIndexFile(fastaFile).setLastModified(fastaFile.lastModified() + 1000);
+        try {
+            new FastaParserImpl(fastaFile).readCode("chrBig");
+            fail("Expected a FastaParserException");
+        } catch (FastaParserException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("are supported"));
+        }
+    }
+
+    @Test
+    public void testReadContigFile()
+            throws IOException, FastaParserException {
+
+        File contigFile = new FastaFixture()
+            .lineEnd("\r\n").sequence("gi|1|gb|chrA first", "ACGTNacg", 5)
+            .lineEnd("\n").sequence("gi|2|gb|chrB second", "TTTTGG", 4)
+            .write(folder.newFile("contigs.fa"));
+
+        FastaParser parser = new FastaParserImpl(contigFile);
+        assertEquals("ACGTNacg", parser.readCode("chrA"));
+        assertEquals("TTTTGG", parser.readCode("chrB"));
+    }
+
+    @Test
+    public void testReadBgzfFile()
+            throws IOException, FastaParserException {
+
+        FastaFixture fasta = new FastaFixture().sequence("chrTest test chromosome", code, 60);
+        File compressedFile = new File(folder.getRoot(), "chrTest.fa.gz");
+        writeBgzf(compressedFile, fasta.toString().getBytes("US-ASCII"), 100);
+
+        FastaParser parser = new FastaParserImpl(compressedFile, new ChromosomeCache(1 << 20));
+        assertEquals(Collections.singletonList("chrTest"), parser.scanForChromosomes());
+        assertEquals(code, parser.readCode("chrTest"));
+        assertEquals(code.substring(99, 1000), parser.fetchRegion("chrTest", 100, 1000, 1));
+        assertTrue(BgzfFastaSource.getBlockIndexFile(compressedFile).exists());
+
+        // Read again through the saved block index
+        parser = new FastaParserImpl(compressedFile, new ChromosomeCache(1 << 20));
+        assertEquals(code, parser.readCode("chrTest"));
+        assertEquals(code.substring(1033, 1034), parser.fetchRegion("chrTest", 1034, 1034, 1));
+    }
+
+    // Writes bytes as BGZF blocks of at most blockSize uncompressed bytes
+    private void writeBgzf(File file, byte[] bytes, int blockSize)
+            throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        for (int start = 0; start <= bytes.length; start += blockSize) {
+            int length = Math.min(blockSize, bytes.length - start);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(bytes, start, length);
+            deflater.finish();
+            byte[] data = new byte[length + 1024];
+            int dataLength = deflater.deflate(data);
+            deflater.end();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, start, length);
+            ByteBuffer block = ByteBuffer.allocate(18 + dataLength + 8).order(ByteOrder.LITTLE_ENDIAN);
+            block.put(new byte[] {31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 6, 0, 66, 67, 2, 0});
+            block.putShort((short) (block.capacity() - 1));
+            block.put(data, 0, dataLength);
+            block.putInt((int) crc.getValue());
+            block.putInt(length);
+            output.write(block.array());
+        }
+        output.close();
+    }
+}
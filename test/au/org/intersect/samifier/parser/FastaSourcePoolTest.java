@@ -0,0 +1,51 @@
+package au.org.intersect.samifier.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class FastaSourcePoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEvictedSourceStaysOpenWhileBorrowed() throws Exception {
+        File first = new FastaFixture().sequence("chr1", "ACGT").write(new File(folder.getRoot(), "chr1.fa"));
+        File second = new FastaFixture().sequence("chr2", "GGCC").write(new File(folder.getRoot(), "chr2.fa"));
+        FastaSourcePool pool = new FastaSourcePool(1);
+
+        FastaSource borrowed = pool.borrow(first);
+        FastaSource other = pool.borrow(second);
+        other.close();
+        // chr1.fa was evicted by chr2.fa, but is still in use
+        assertEquals('>', readByte(borrowed, 0));
+        assertEquals(first.length(), borrowed.size());
+
+        FastaSource again = pool.borrow(first);
+        borrowed.close();
+        borrowed.close();
+        try {
+            readByte(borrowed, 0);
+            fail("Expected the evicted source to be closed once given back");
+        } catch (IOException e) {
+            // Closed
+        }
+        assertEquals('A', readByte(again, 6));
+        again.close();
+        pool.close();
+    }
+
+    private static char readByte(FastaSource source, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        source.read(buffer, position);
+        return (char) buffer.get(0);
+    }
+}
@@ -0,0 +1,90 @@
+package au.org.intersect.samifier.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.org.intersect.samifier.domain.TranscriptInfo;
+import au.org.intersect.samifier.domain.Transcriptome;
+
+public final class GtfChromosomeIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRegionsCoverTheFile() throws Exception {
+        GtfFixture fixture = new GtfFixture().lineEnd("\r\n").line("#!genome-build GRCh38");
+        String[] chromosomes = {"1", "chr2", "X"};
+        for (int c = 0; c < chromosomes.length; c++) {
+            for (int i = 0; i < 4; i++) {
+                appendTranscript(fixture, chromosomes[c], "T" + c + "_" + i, 1000 * i + 1);
+            }
+            fixture.line("#between");
+        }
+        File gtf = fixture.write(new File(folder.getRoot(), "sorted.gtf"));
+
+        GtfChromosomeIndex index = GtfChromosomeIndex.scan(gtf);
+        assertNotNull(index);
+        List<GtfChromosomeIndex.Entry> entries = index.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("chr1", entries.get(0).getChromosome());
+        assertEquals("chr2", entries.get(1).getChromosome());
+        assertEquals("chrX", entries.get(2).getChromosome());
+        assertEquals(0, entries.get(0).getStart());
+        assertEquals(0, entries.get(0).getFirstLine());
+        assertEquals(entries.get(0).getEnd(), entries.get(1).getStart());
+        assertEquals(1 + 4 * 3 + 1, entries.get(1).getFirstLine());
+        assertEquals(gtf.length(), entries.get(2).getEnd());
+
+        Transcriptome whole = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        TranscriptomeParserImpl parser = new TranscriptomeParserImpl(256);
+        for (GtfChromosomeIndex.Entry region : entries) {
+            Transcriptome part = parser.parseTranscriptomeRegion(gtf, region);
+            assertEquals(whole.getAllTranscripts(region.getChromosome()).size(), part.getAllTranscripts().size());
+            for (TranscriptInfo transcript : part.getAllTranscripts()) {
+                assertEquals(whole.getTranscript(transcript.getId()).toString(), transcript.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testUngroupedChromosomes() throws Exception {
+        GtfFixture fixture = new GtfFixture();
+        appendTranscript(fixture, "1", "T1", 1);
+        appendTranscript(fixture, "2", "T2", 1);
+        appendTranscript(fixture, "chr1", "T3", 2001);
+        assertNull(GtfChromosomeIndex.scan(fixture.write(new File(folder.getRoot(), "unsorted.gtf"))));
+    }
+
+    @Test
+    public void testErrorLineNumberInRegion() throws Exception {
+        GtfFixture fixture = new GtfFixture();
+        appendTranscript(fixture, "1", "T1", 1);
+        appendTranscript(fixture, "2", "T2", 1);
+        File gtf = fixture.line("2\tHAVANA\texon\t10\t20\t.\t+").write(new File(folder.getRoot(), "bad.gtf"));
+        GtfChromosomeIndex.Entry region = GtfChromosomeIndex.scan(gtf).getEntries().get(1);
+        try {
+            new TranscriptomeParserImpl().parseTranscriptomeRegion(gtf, region);
+            fail("Expected a TranscriptomeFileParsingException");
+        } catch (TranscriptomeFileParsingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(">Line 7:"));
+        }
+    }
+
+    private static void appendTranscript(GtfFixture fixture, String chromosome, String id, int start) {
+        String attributes = "gene_id \"G\"; transcript_id \"" + id + "\";";
+        fixture.transcript(chromosome, start, start + 500, "+", attributes);
+        fixture.exon(chromosome, start, start + 500, "+", attributes + " exon_number \"1\";");
+        fixture.gene(chromosome, start, start + 500, "+", "G");
+    }
+}
@@ -0,0 +1,78 @@
+package au.org.intersect.samifier.parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Builds the text of a GTF file for the parser tests, a line at a time.
+ * Transcript and exon lines have no score or frame, codon lines frame 0;
+ * other lines go through feature or line. Attributes are written as given.
+ */
+final class GtfFixture {
+    private final String source;
+    private final StringBuilder text = new StringBuilder();
+    private String lineEnd = "\n";
+
+    GtfFixture() {
+        this("HAVANA");
+    }
+
+    GtfFixture(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Ends the lines appended from now on with lineEnd, "\n" by default.
+     */
+    GtfFixture lineEnd(String lineEnd) {
+        this.lineEnd = lineEnd;
+        return this;
+    }
+
+    GtfFixture line(String line) {
+        text.append(line).append(lineEnd);
+        return this;
+    }
+
+    GtfFixture gene(String chromosome, int start, int stop, String strand, String geneId) {
+        return feature(chromosome, "gene", start, stop, ".", strand, ".", "gene_id \"" + geneId + "\";");
+    }
+
+    GtfFixture transcript(String chromosome, int start, int stop, String strand, String attributes) {
+        return feature(chromosome, "transcript", start, stop, ".", strand, ".", attributes);
+    }
+
+    GtfFixture exon(String chromosome, int start, int stop, String strand, String attributes) {
+        return feature(chromosome, "exon", start, stop, ".", strand, ".", attributes);
+    }
+
+    GtfFixture startCodon(String chromosome, int start, String strand, String attributes) {
+        return feature(chromosome, "start_codon", start, start + 2, ".", strand, "0", attributes);
+    }
+
+    GtfFixture stopCodon(String chromosome, int start, String strand, String attributes) {
+        return feature(chromosome, "stop_codon", start, start + 2, ".", strand, "0", attributes);
+    }
+
+    GtfFixture feature(String chromosome, String feature, int start, int stop, String score, String strand,
+            String frame, String attributes) {
+        return line(chromosome + "\t" + source + "\t" + feature + "\t" + start + "\t" + stop + "\t" + score + "\t"
+            + strand + "\t" + frame + "\t" + attributes);
+    }
+
+    File write(File file) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text.toString());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package au.org.intersect.samifier.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.org.intersect.samifier.domain.TranscriptInfo;
+import au.org.intersect.samifier.domain.Transcriptome;
+
+public final class GtfTokenizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testColumns() throws Exception {
+        GtfTokenizer line = tokenizer("10\tHAVANA\texon\t+100\t200\t.\t-\t.\tgene_id \"G\"; transcript_id \"T1.2\"; exon_number \"3\";\tx\n"
+            + "#comment\r\n"
+            + "10\tHAVANA\texon\r"
+            + "chrX\tHAVANA\tstart_codon\t1\t99999999999\t.\t+\t.\treference_transcript_id \"R\"; transcript_id \"T\";");
+        assertTrue(line.next());
+        assertEquals(1, line.getLineNumber());
+        assertEquals(GtfTokenizer.COLUMNS, line.getColumnCount());
+        assertEquals("chr10", line.getChromosome(0));
+        assertSame(line.getChromosome(0), line.getChromosome(0));
+        assertEquals("HAVANA", line.getSource(1));
+        assertTrue(line.columnEquals(2, "exon"));
+        assertFalse(line.columnEquals(2, "exons"));
+        assertEquals(100, line.parseInt(3));
+        assertEquals(200, line.parseInt(4));
+        assertEquals(-1, line.parseStrand(6));
+        assertEquals(0, line.parseStrand(5));
+        line.findAttributes(8);
+        assertEquals("T1.2", line.getTranscriptId());
+        assertEquals("3", line.getExonId());
+        assertTrue(line.getColumn(8).endsWith("\tx"));
+
+        assertTrue(line.next());
+        assertTrue(line.isComment());
+        assertTrue(line.next());
+        assertEquals(3, line.getLineNumber());
+        assertEquals("10\tHAVANA\texon", line.getLine());
+        assertEquals(3, line.getColumnCount());
+
+        assertTrue(line.next());
+        assertEquals("chrX", line.getChromosome(0));
+        assertEquals(1, line.parseStrand(6));
+        line.findAttributes(8);
+        // Matched anywhere in the attributes, like the pattern it replaces
+        assertEquals("R", line.getTranscriptId());
+        assertNull(line.getExonId());
+        assertNull(line.getAttribute(8, GtfTokenizer.attributeTag("transcript")));
+        assertEquals("R", line.getAttribute(8, GtfTokenizer.attributeTag("reference_transcript_id")));
+        assertEquals("T", line.getAttribute(8, GtfTokenizer.attributeTag("transcript_id")));
+        try {
+            line.parseInt(4);
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            assertEquals("For input string: \"99999999999\"", e.getMessage());
+        }
+        assertFalse(line.next());
+    }
+
+    @Test
+    public void testLongLines() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            text.append("1\tsrc\ttranscript\t1\t2\t.\t+\t.\ttranscript_id \"T").append(i).append("\";");
+            for (int j = 0; j < 20000; j++) {
+                text.append(" tag \"value\";");
+            }
+            text.append(" exon_number \"").append(i).append("\";\r\n");
+        }
+        GtfTokenizer line = tokenizer(text.toString());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(line.next());
+            line.findAttributes(8);
+            assertEquals("T" + i, line.getTranscriptId());
+            assertEquals(Integer.toString(i), line.getExonId());
+        }
+        assertFalse(line.next());
+    }
+
+    @Test
+    public void testParseTranscriptome() throws Exception {
+        File gtf = folder.newFile("test.gtf");
+        FileWriter writer = new FileWriter(gtf);
+        writer.write("#!genome-build GRCh38\r\n"
+            + "10\tHAVANA\tgene\t100\t400\t.\t+\t.\tgene_id \"G1\";\r\n"
+            + "10\tHAVANA\ttranscript\t100\t400\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\";\r\n"
+            + "10\tHAVANA\texon\t100\t200\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; exon_number \"1\";\r\n"
+            + "10\tHAVANA\texon\t300\t400\t.\t+\t.\tgene_id \"G1\"; transcript_id \"T1\"; exon_number \"2\";\r\n"
+            + "10\tHAVANA\tstart_codon\t150\t152\t.\t+\t0\tgene_id \"G1\"; transcript_id \"T1\"; exon_number \"1\";\r\n"
+            + "10\tHAVANA\tstop_codon\t350\t352\t.\t+\t0\tgene_id \"G1\"; transcript_id \"T1\"; exon_number \"2\";");
+        writer.close();
+        Transcriptome transcriptome = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        TranscriptInfo transcript = transcriptome.getTranscript("T1");
+        assertEquals("chr10", transcript.getChromosome());
+        assertEquals("HAVANA", transcript.getOrigin());
+        assertEquals(100, transcript.getStart());
+        assertEquals(400, transcript.getStop());
+        assertEquals(2, transcript.getAllExons().size());
+        assertEquals(150, transcript.getStartCodon().getStart());
+        assertEquals("stop_codon", transcript.getStopCodon().getType());
+        assertEquals(352, transcript.getStopCodon().getStop());
+    }
+
+    @Test(expected = TranscriptomeFileParsingException.class)
+    public void testMissingStrand() throws Exception {
+        File gtf = folder.newFile("test.gtf");
+        FileWriter writer = new FileWriter(gtf);
+        writer.write("10\tHAVANA\ttranscript\t100\t400\t.\t.\t.\ttranscript_id \"T1\";\n");
+        writer.close();
+        new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+    }
+
+    private static GtfTokenizer tokenizer(String text) throws Exception {
+        byte[] bytes = text.getBytes("UTF-8");
+        return new GtfTokenizer(bytes, 0, bytes.length);
+    }
+}
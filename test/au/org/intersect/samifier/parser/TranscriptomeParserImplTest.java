@@ -1,6 +1,7 @@
 package au.org.intersect.samifier.parser;
 
 import java.io.File;
+import java.util.Arrays;
 
 import au.org.intersect.samifier.domain.TranscriptInfo;
 import au.org.intersect.samifier.domain.Transcriptome;
@@ -10,10 +11,15 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public final class TranscriptomeParserImplTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private File f;
 
     @Before
@@ -134,4 +140,179 @@ public final class TranscriptomeParserImplTest {
         assertEquals(t.getAllCodons().size(), 0);
     }
 
+    @Test
+    public void testChunkedParsing()
+            throws Exception {
+
+        GtfFixture fixture = new GtfFixture().line("#!genome-build GRCh38");
+        for (int i = 0; i < 500; i++) {
+            int start = 1000 * i + 1;
+            String strand = i % 2 == 0 ? "+" : "-";
+            String attributes = "gene_id \"G" + i + "\"; transcript_id \"T" + i + "\";";
+            fixture.gene("1", start, start + 600, strand, "G" + i);
+            fixture.lineEnd("\r\n").transcript("1", start, start + 600, strand, attributes).lineEnd("\n");
+            fixture.exon("1", start, start + 200, strand, attributes + " exon_number \"1\";");
+            fixture.exon("1", start + 400, start + 600, strand, attributes + " exon_number \"2\";");
+            if (i % 3 != 0) {
+                fixture.startCodon("1", start + 100, strand, attributes + " exon_number \"1\";");
+            }
+            if (i % 3 == 2) {
+                fixture.stopCodon("1", start + 500, strand, attributes + " exon_number \"2\";");
+            }
+        }
+        File gtf = fixture.write(folder.newFile("chunked.gtf"));
+
+        Transcriptome whole = new TranscriptomeParserImpl(1 << 24).parseTranscriptomeFile(gtf);
+        for (int chunkSize : new int[] {64, 1000, 4096}) {
+            Transcriptome chunked = new TranscriptomeParserImpl(chunkSize).parseTranscriptomeFile(gtf);
+            assertEquals(whole.toString(), chunked.toString());
+        }
+        // Transcripts with only one of the codons are removed
+        assertEquals(333, whole.getAllTranscripts().size());
+        assertTrue(whole.hasTranscript("T0"));
+        assertTrue(!whole.hasTranscript("T1"));
+        assertEquals(0, whole.getTranscript("T2").getExon("1").getScore());
+    }
+
+    @Test
+    public void testErrorLineInLaterChunk()
+            throws Exception {
+
+        GtfFixture fixture = new GtfFixture();
+        for (int i = 0; i < 100; i++) {
+            fixture.gene("1", 1, 2, "+", "G" + i);
+        }
+        File gtf = fixture.gene("1", 1, 2, ".", "G").write(folder.newFile("error.gtf"));
+        try {
+            new TranscriptomeParserImpl(128).parseTranscriptomeFile(gtf);
+            fail("Expected a TranscriptomeFileParsingException");
+        } catch (TranscriptomeFileParsingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(">Line 101:Direction or type not specified."));
+        }
+    }
+
+    @Test
+    public void testFilteredParsing()
+            throws Exception {
+
+        GtfFixture fixture = new GtfFixture();
+        String[] chromosomes = {"1", "2", "3"};
+        String[] biotypes = {"protein_coding", "lncRNA", null};
+        for (int i = 0; i < 90; i++) {
+            int start = 1000 * i + 1;
+            String chromosome = chromosomes[i % 3];
+            String biotype = biotypes[(i / 3) % 3];
+            String attributes = "gene_id \"G" + i + "\"; transcript_id \"T" + i + "\";";
+            String exonAttributes = attributes + " exon_number \"1\";";
+            if (biotype != null) {
+                attributes += " transcript_biotype \"" + biotype + "\";";
+            }
+            // Biotypes are only on the transcript lines of some files
+            if (biotype != null && i % 2 == 0) {
+                exonAttributes += " transcript_type \"" + biotype + "\";";
+            }
+            fixture.transcript(chromosome, start, start + 600, "+", attributes);
+            fixture.exon(chromosome, start, start + 600, "+", exonAttributes);
+            fixture.startCodon(chromosome, start + 100, "+", exonAttributes);
+            fixture.stopCodon(chromosome, start + 500, "+", exonAttributes);
+        }
+        File gtf = fixture.write(folder.newFile("filtered.gtf"));
+
+        Transcriptome whole = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        TranscriptomeFilter filter = new TranscriptomeFilter();
+        filter.setCodingOnly(true);
+        TranscriptomeParserImpl parser = new TranscriptomeParserImpl(256);
+        parser.setFilter(filter);
+        Transcriptome filtered = parser.parseTranscriptomeFile(gtf);
+
+        int expected = 0;
+        for (int i = 0; i < 90; i++) {
+            boolean kept = (i / 3) % 3 != 1;
+            assertEquals("T" + i, kept, filtered.hasTranscript("T" + i));
+            if (kept) {
+                expected++;
+                assertEquals(whole.getTranscript("T" + i).toString(), filtered.getTranscript("T" + i).toString());
+                assertEquals(1, filtered.getTranscript("T" + i).getAllExons().size());
+            }
+        }
+        assertEquals(expected, filtered.getAllTranscripts().size());
+
+        filter.setCodingOnly(false);
+        filter.setBiotypes(Arrays.asList("lncRNA"));
+        assertEquals(60, parser.parseTranscriptomeFile(gtf).getAllTranscripts().size());
+    }
+
+    @Test
+    public void testExpressionThresholds()
+            throws Exception {
+
+        GtfFixture fixture = new GtfFixture("StringTie").line("# StringTie version 2.1.4");
+        for (int i = 0; i < 60; i++) {
+            int start = 1000 * i + 1;
+            String attributes = "gene_id \"STRG." + i + "\"; transcript_id \"STRG." + i + ".1\";";
+            String expression = i % 4 == 3 ? "" : " cov \"" + (i % 10) + ".5\"; FPKM \"" + i + ".000000\"; TPM \"" + (2 * i) + ".0\";";
+            fixture.feature("1", "transcript", start, start + 600, "1000", "+", ".", attributes + expression);
+            // Exons have their own coverage, which is not checked
+            fixture.feature("1", "exon", start, start + 600, "1000", "+", ".", attributes + " exon_number \"1\"; cov \"0.1\";");
+            fixture.startCodon("1", start + 100, "+", attributes + " exon_number \"1\";");
+            fixture.stopCodon("1", start + 500, "+", attributes + " exon_number \"1\";");
+        }
+        File gtf = fixture.write(folder.newFile("stringtie.gtf"));
+
+        TranscriptomeFilter filter = new TranscriptomeFilter();
+        filter.setMinimumFpkm(20);
+        filter.setMinimumCoverage(3);
+        for (int chunkSize : new int[] {200, 1 << 20}) {
+            TranscriptomeParserImpl parser = new TranscriptomeParserImpl(chunkSize);
+            parser.setFilter(filter);
+            Transcriptome filtered = parser.parseTranscriptomeFile(gtf);
+            int expected = 0;
+            for (int i = 0; i < 60; i++) {
+                // Transcripts without the attributes are kept
+                boolean kept = i % 4 == 3 || (i >= 20 && i % 10 >= 3);
+                assertEquals("STRG." + i + ".1", kept, filtered.hasTranscript("STRG." + i + ".1"));
+                if (kept) {
+                    expected++;
+                    assertEquals(1, filtered.getTranscript("STRG." + i + ".1").getAllExons().size());
+                }
+            }
+            assertEquals(expected, filtered.getAllTranscripts().size());
+        }
+
+        filter = new TranscriptomeFilter();
+        filter.setMinimumTpm(100);
+        TranscriptomeParserImpl parser = new TranscriptomeParserImpl();
+        parser.setFilter(filter);
+        // The 15 without attributes, and the 7 others with i >= 50
+        assertEquals(15 + 7, parser.parseTranscriptomeFile(gtf).getAllTranscripts().size());
+    }
+
+    @Test
+    public void testFilterKeepsOrphanExonErrors()
+            throws Exception {
+
+        File gtf = new GtfFixture()
+            .transcript("1", 1, 600, "+", "transcript_id \"T1\"; transcript_biotype \"lncRNA\";")
+            .exon("1", 1, 600, "+", "transcript_id \"T1\"; exon_number \"1\";")
+            .exon("1", 1, 600, "+", "transcript_id \"T2\"; exon_number \"1\";")
+            .write(folder.newFile("orphan.gtf"));
+
+        Class<?> unfiltered = parseFailure(gtf, null);
+        TranscriptomeFilter filter = new TranscriptomeFilter();
+        filter.setCodingOnly(true);
+        // The exon of the rejected T1 is dropped, the one of the missing T2 still fails
+        assertEquals(unfiltered, parseFailure(gtf, filter));
+    }
+
+    private static Class<?> parseFailure(File gtf, TranscriptomeFilter filter) {
+        TranscriptomeParserImpl parser = new TranscriptomeParserImpl();
+        parser.setFilter(filter);
+        try {
+            parser.parseTranscriptomeFile(gtf);
+        } catch (Exception e) {
+            return e.getClass();
+        }
+        fail("Expected the exon without a transcript to fail");
+        return null;
+    }
 }
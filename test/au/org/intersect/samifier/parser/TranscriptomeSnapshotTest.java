@@ -0,0 +1,212 @@
+package au.org.intersect.samifier.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import au.org.intersect.samifier.domain.TranscriptInfo;
+import au.org.intersect.samifier.domain.Transcriptome;
+
+public final class TranscriptomeSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotMatchesParsedTranscriptome() throws Exception {
+        File gtf = writeGtf("reference.gtf", 50);
+        Transcriptome parsed = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        TranscriptomeSnapshot.open(gtf, null, new TranscriptomeParserImpl());
+        assertTrue(TranscriptomeSnapshot.getSnapshotFile(gtf, null).exists());
+
+        CountingParser parser = new CountingParser();
+        Transcriptome loaded = TranscriptomeSnapshot.open(gtf, null, parser).getTranscriptome("chr1");
+        assertEquals(0, parser.regions + parser.files);
+        assertEquals(describe(parsed.getAllTranscripts()), describe(loaded.getAllTranscripts()));
+        assertEquals(0, loaded.getTranscript("T1").getExon("1").getScore());
+        assertEquals(1, loaded.getTranscript("T1").getExon("2").getScore());
+        assertEquals(parsed.getTranscript("T1").getExon("2").getCodingFrame(),
+            loaded.getTranscript("T1").getExon("2").getCodingFrame());
+    }
+
+    @Test
+    public void testStaleAndCorruptSnapshots() throws Exception {
+        File gtf = writeGtf("reference.gtf", 10);
+        TranscriptomeSnapshot.open(gtf, null, new TranscriptomeParserImpl());
+        File snapshot = TranscriptomeSnapshot.getSnapshotFile(gtf, null);
+
+        long modified = gtf.lastModified();
+        writeGtf("reference.gtf", 11);
+        gtf.setLastModified(modified);
+        CountingParser parser = new CountingParser();
+        assertTrue(TranscriptomeSnapshot.open(gtf, null, parser).getTranscriptome("chr1").hasTranscript("T10"));
+        assertEquals(1, parser.regions);
+        parser = new CountingParser();
+        assertTrue(TranscriptomeSnapshot.open(gtf, null, parser).getTranscriptome("chr1").hasTranscript("T10"));
+        assertEquals(0, parser.regions);
+
+        RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+        file.setLength(file.length() - 10);
+        file.close();
+        parser = new CountingParser();
+        TranscriptomeSnapshot reparsed = TranscriptomeSnapshot.open(gtf, null, parser);
+        assertEquals(11, reparsed.getTranscriptome("chr1").getAllTranscripts().size());
+        assertEquals(1, parser.regions);
+
+        // A negative chromosome name length, with the header intact
+        file = new RandomAccessFile(snapshot, "rw");
+        file.seek(file.length() - 4);
+        file.seek(file.readInt() + 4);
+        file.writeInt(-1);
+        file.close();
+        parser = new CountingParser();
+        reparsed = TranscriptomeSnapshot.open(gtf, null, parser);
+        assertEquals(11, reparsed.getTranscriptome("chr1").getAllTranscripts().size());
+        assertEquals(1, parser.regions);
+    }
+
+    @Test
+    public void testTranscriptsByChromosome() throws Exception {
+        File gtf = writeGtf("reference.gtf", 30, 3);
+        Transcriptome parsed = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        CountingParser parser = new CountingParser();
+        TranscriptomeSnapshot snapshot = TranscriptomeSnapshot.open(gtf, null, parser);
+        assertEquals(3, parser.regions);
+        assertEquals(0, parser.files);
+        assertEquals(3, snapshot.getChromosomes().size());
+        for (String chromosome : snapshot.getChromosomes()) {
+            Transcriptome loaded = snapshot.getTranscriptome(chromosome);
+            assertEquals(10, loaded.getAllTranscripts().size());
+            assertEquals(describe(parsed.getAllTranscripts(chromosome)), describe(loaded.getAllTranscripts()));
+        }
+        assertTrue(snapshot.getTranscriptome("chrY").getAllTranscripts().isEmpty());
+    }
+
+    @Test
+    public void testUngroupedTranscriptome() throws Exception {
+        File gtf = writeGtf("reference.gtf", 30, 3, false);
+        Transcriptome parsed = new TranscriptomeParserImpl().parseTranscriptomeFile(gtf);
+        CountingParser parser = new CountingParser();
+        TranscriptomeSnapshot snapshot = TranscriptomeSnapshot.open(gtf, null, parser);
+        assertEquals(1, parser.files);
+        assertEquals(3, snapshot.getChromosomes().size());
+        for (String chromosome : snapshot.getChromosomes()) {
+            assertEquals(describe(parsed.getAllTranscripts(chromosome)),
+                describe(snapshot.getTranscriptome(chromosome).getAllTranscripts()));
+        }
+    }
+
+    @Test
+    public void testSnapshotDirectoryAndUnsavedSnapshot() throws Exception {
+        File gtf = writeGtf("reference.gtf", 20, 2);
+        File directory = folder.newFolder("snapshots");
+        TranscriptomeSnapshot snapshot = TranscriptomeSnapshot.open(gtf, directory, new TranscriptomeParserImpl());
+        assertTrue(new File(directory, "reference.gtf" + TranscriptomeSnapshot.SNAPSHOT_EXTENSION).exists());
+        assertEquals(1, directory.list().length);
+        assertEquals(10, snapshot.getTranscriptome("chr2").getAllTranscripts().size());
+
+        // Chromosomes are parsed as they are read when the snapshot can't be saved
+        File missing = new File(folder.getRoot(), "missing");
+        CountingParser parser = new CountingParser();
+        snapshot = TranscriptomeSnapshot.open(gtf, missing, parser);
+        assertTrue(!missing.exists());
+        assertEquals(2, snapshot.getChromosomes().size());
+        assertEquals(10, snapshot.getTranscriptome("chr1").getAllTranscripts().size());
+        assertTrue(snapshot.getTranscriptome("chrY").getAllTranscripts().isEmpty());
+        assertEquals(1, parser.regions);
+
+        // or kept as parsed when the GTF file is not grouped by chromosome
+        File ungrouped = writeGtf("ungrouped.gtf", 20, 2, false);
+        parser = new CountingParser();
+        snapshot = TranscriptomeSnapshot.open(ungrouped, missing, parser);
+        assertEquals(10, snapshot.getTranscriptome("chr2").getAllTranscripts().size());
+        assertEquals(1, parser.files);
+        assertEquals(0, parser.regions);
+    }
+
+    @Test
+    public void testBiotypeFilterOnRead() throws Exception {
+        File gtf = writeGtf("reference.gtf", 30, 2);
+        TranscriptomeFilter filter = new TranscriptomeFilter();
+        filter.setCodingOnly(true);
+        TranscriptomeSnapshot snapshot = TranscriptomeSnapshot.open(gtf, null, new TranscriptomeParserImpl());
+        Transcriptome coding = snapshot.getTranscriptome("chr2", filter);
+        assertEquals(10, coding.getAllTranscripts().size());
+        assertTrue(!coding.hasTranscript("T15"));
+        assertEquals("protein_coding", coding.getTranscript("T16").getBiotype());
+        assertEquals(3, coding.getTranscript("T16").getAllExons().size());
+        assertEquals(15, snapshot.getTranscriptome("chr2").getAllTranscripts().size());
+
+        filter.setBiotypes(Arrays.asList("lncRNA"));
+        filter.setCodingOnly(false);
+        File missing = new File(folder.getRoot(), "missing");
+        snapshot = TranscriptomeSnapshot.open(gtf, missing, new TranscriptomeParserImpl());
+        assertEquals(5, snapshot.getTranscriptome("chr1", filter).getAllTranscripts().size());
+    }
+
+    private static final class CountingParser extends TranscriptomeParserImpl {
+        private int files;
+        private int regions;
+
+        @Override
+        public Transcriptome parseTranscriptomeFile(File transcriptomeFile) throws TranscriptomeFileParsingException {
+            files++;
+            return super.parseTranscriptomeFile(transcriptomeFile);
+        }
+
+        @Override
+        public Transcriptome parseTranscriptomeRegion(File transcriptomeFile, GtfChromosomeIndex.Entry region)
+                throws TranscriptomeFileParsingException {
+            regions++;
+            return super.parseTranscriptomeRegion(transcriptomeFile, region);
+        }
+    }
+
+    // Transcripts of a chromosome come in no particular order
+    private static List<String> describe(List<TranscriptInfo> transcripts) {
+        List<String> descriptions = new ArrayList<String>();
+        for (TranscriptInfo transcript : transcripts) {
+            descriptions.add(transcript.toString());
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    private File writeGtf(String name, int transcripts) throws Exception {
+        return writeGtf(name, transcripts, 1);
+    }
+
+    private File writeGtf(String name, int transcripts, int chromosomes) throws Exception {
+        return writeGtf(name, transcripts, chromosomes, true);
+    }
+
+    private File writeGtf(String name, int transcripts, int chromosomes, boolean grouped) throws Exception {
+        GtfFixture fixture = new GtfFixture();
+        for (int i = 0; i < transcripts; i++) {
+            int chromosomeNumber = grouped ? i * chromosomes / transcripts : i % chromosomes;
+            String chromosome = Integer.toString(1 + chromosomeNumber);
+            int start = 1000 * i + 1;
+            String strand = i % 2 == 0 ? "+" : "-";
+            String attributes = "gene_id \"G" + i + "\"; transcript_id \"T" + i + "\"; transcript_biotype \""
+                + (i % 3 == 0 ? "lncRNA" : "protein_coding") + "\";";
+            fixture.transcript(chromosome, start, start + 900, strand, attributes);
+            for (int exon = 0; exon < 3; exon++) {
+                int exonStart = start + 300 * exon;
+                fixture.exon(chromosome, exonStart, exonStart + 200, strand, attributes + " exon_number \"" + (exon + 1) + "\";");
+            }
+            fixture.startCodon(chromosome, start + 100, strand, attributes + " exon_number \"1\";");
+            fixture.stopCodon(chromosome, start + 700, strand, attributes + " exon_number \"3\";");
+        }
+        return fixture.write(new File(folder.getRoot(), name));
+    }
+}